@@ -0,0 +1,755 @@
+package com.laytonsmith.PureUtilities;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A persistance database which is kept as a log. Every change is a record appended to the
+ * end of the current segment file, so the cost of a change depends only on the size of
+ * the change, not the size of the database. Only the location of each key's latest record
+ * is kept in memory, and values are read back from the segment files when they are asked for.
+ *
+ * Each record has a checksum, so when the database is loaded, the segments are replayed in
+ * order, and a record that was only partly written when the server crashed is cut off.
+ * Once the segments hold more old records than live ones, a background thread copies the
+ * live records into a new segment, and deletes the old segments. The new segment starts with
+ * a record saying that it replaces all the segments before it, so if the server stops before
+ * they are deleted, they are ignored, rather than bringing back values that were deleted.
+ *
+ * If the database directory is empty, and a persistance.ser file from a SerializedPersistance
+ * is given, its values are copied into the log, and the file is renamed to persistance.ser.migrated.
+ * @author layton
+ */
+public class LogPersistance implements Persistance {
+
+    private static final byte PUT_STRING = 1;
+    private static final byte PUT_OBJECT = 2;
+    private static final byte DELETE = 3;
+    private static final byte PUT_BYTES = 4;
+    /**
+     * The first record of a compacted segment, which replaces all the segments before it.
+     */
+    private static final byte COMPACTED = 5;
+    //The size of the record header, that is, the payload length and the checksum
+    private static final int HEADER = 8;
+    private static final long SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+    private static final String SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final String ASIDE_SUFFIX = ".old";
+
+    /**
+     * Where a record is: which segment, how far into it, and how long it is.
+     */
+    private static final class Location {
+
+        final int segment;
+        final long offset;
+        final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File directory;
+    private final File legacy;
+    private boolean isLoaded = false;
+    private final Map<String, Location> index = new HashMap<String, Location>();
+    private NamespaceIndex namespaces = new NamespaceIndex(index.keySet());
+    private final Map<Integer, RandomAccessFile> readers = new HashMap<Integer, RandomAccessFile>();
+    private int active;
+    private FileOutputStream activeFile;
+    private DataOutputStream out;
+    private long activeSize;
+    private long liveBytes = 0;
+    private long garbageBytes = 0;
+    private ExecutorService compactor = null;
+    private boolean compacting = false;
+    /**
+     * Changes whenever the segments are thrown away, so that a compaction that was
+     * running at the time knows not to replace them.
+     */
+    private int generation = 0;
+
+    /**
+     * @param directory The directory the segment files are kept in
+     * @param legacy A SerializedPersistance database to copy the values from, if the directory is empty. May be null.
+     */
+    public LogPersistance(File directory, File legacy) {
+        this.directory = directory;
+        this.legacy = legacy;
+    }
+
+    public LogPersistance(File directory) {
+        this(directory, null);
+    }
+
+    /**
+     * Loads the database from disk. This is automatically called when setValue or getValue is called.
+     * @throws Exception
+     */
+    public synchronized void load() throws Exception {
+        if (isLoaded) {
+            return;
+        }
+        directory.mkdirs();
+        File[] leftovers = directory.listFiles();
+        if (leftovers != null) {
+            for (File f : leftovers) {
+                String name = f.getName();
+                if (name.endsWith(COMPACT_SUFFIX)) {
+                    //A compaction or migration that didn't finish
+                    f.delete();
+                } else if (name.endsWith(ASIDE_SUFFIX)) {
+                    //A segment that was moved aside to make way for its compacted copy
+                    File segment = new File(directory, name.substring(0, name.length() - ASIDE_SUFFIX.length()));
+                    if (segment.exists()) {
+                        f.delete();
+                    } else if (!f.renameTo(segment)) {
+                        throw new IOException("Could not rename " + f + " back to " + segment);
+                    }
+                }
+            }
+        }
+        List<Integer> segments = Segments(directory);
+        if (segments.isEmpty() && legacy != null && legacy.exists()) {
+            migrate();
+            segments = Segments(directory);
+        }
+        for (int i = segments.size() - 1; i > 0; i--) {
+            if (IsCompacted(file(segments.get(i)))) {
+                //The segments before it are left over from a compaction that didn't get to delete them
+                for (int segment : segments.subList(0, i)) {
+                    file(segment).delete();
+                }
+                segments = new ArrayList<Integer>(segments.subList(i, segments.size()));
+                break;
+            }
+        }
+        index.clear();
+        liveBytes = 0;
+        garbageBytes = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            replay(segments.get(i), i == segments.size() - 1);
+        }
+        namespaces = new NamespaceIndex(index.keySet());
+        for (int segment : segments) {
+            readers.put(segment, new RandomAccessFile(file(segment), "r"));
+        }
+        openActive(segments.isEmpty() ? 1 : segments.get(segments.size() - 1));
+        isLoaded = true;
+    }
+
+    /**
+     * Makes sure everything written so far is on the disk.
+     * @throws IOException
+     */
+    public synchronized void save() throws Exception {
+        if (isLoaded) {
+            out.flush();
+            activeFile.getFD().sync();
+        }
+    }
+
+    /**
+     * Writes out anything not yet on the disk, and closes the segment files. The database
+     * may still be used afterwards, in which case it is loaded again.
+     */
+    public void close() {
+        ExecutorService c;
+        synchronized (this) {
+            c = compactor;
+            compactor = null;
+        }
+        if (c != null) {
+            c.shutdown();
+            try {
+                c.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                save();
+            } catch (Exception ex) {
+                Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            closeFiles();
+        }
+    }
+
+    private void closeFiles() {
+        if (!isLoaded) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException ex) {
+            Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        for (RandomAccessFile raf : readers.values()) {
+            try {
+                raf.close();
+            } catch (IOException ex) {
+                Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        readers.clear();
+        index.clear();
+        namespaces = new NamespaceIndex(index.keySet());
+        generation++;
+        isLoaded = false;
+    }
+
+    /**
+     * Unless you're the data manager, and you <em>really</em> want to clear
+     * out the entire database, don't use this method. Unlike SerializedPersistance,
+     * the data is gone as soon as this returns.
+     */
+    public synchronized void clearAllData() {
+        closeFiles();
+        for (int segment : Segments(directory)) {
+            file(segment).delete();
+        }
+        try {
+            load();
+        } catch (Exception ex) {
+            Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private void ensureLoaded() {
+        //defer loading until we actually try and use the data structure
+        if (!isLoaded) {
+            try {
+                load();
+            } catch (Exception ex) {
+                Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    public synchronized Object setValue(String[] key, Object value) {
+        try {
+            return storeValue(key, value);
+        } catch (IOException ex) {
+            Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Does the same as setValue, except that a failure to append the change to the log
+     * is thrown. Changes are always written out straight away.
+     */
+    public synchronized Object storeValue(String[] key, Object value) throws IOException {
+        ensureLoaded();
+        String k = getNamespace(key);
+        Location old = index.get(k);
+        Object oldVal = null;
+        if (old != null) {
+            oldVal = read(old);
+        }
+        if (value == null) {
+            if (old == null) {
+                return null;
+            }
+            Location l = append(Record(DELETE, k, null));
+            index.remove(k);
+            namespaces.remove(k);
+            garbageBytes += l.length;
+        } else {
+            Location l = append(Record(TypeOf(value), k, (Serializable) value));
+            index.put(k, l);
+            namespaces.add(k);
+            liveBytes += l.length;
+        }
+        if (old != null) {
+            liveBytes -= old.length;
+            garbageBytes += old.length;
+        }
+        maybeCompact();
+        return oldVal;
+    }
+
+    public synchronized Object getValue(String[] key) {
+        ensureLoaded();
+        Location l = index.get(getNamespace(key));
+        if (l == null) {
+            return null;
+        }
+        try {
+            return read(l);
+        } catch (IOException ex) {
+            Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    public synchronized boolean isKeySet(String[] key) {
+        ensureLoaded();
+        return index.containsKey(getNamespace(key));
+    }
+
+    public synchronized boolean isNamespaceSet(String[] partialKey) {
+        ensureLoaded();
+        return namespaces.isSet(getNamespace(partialKey));
+    }
+
+    public synchronized List<Map.Entry<String, Object>> getNamespaceValues(String[] partialKey) {
+        ensureLoaded();
+        List<Map.Entry<String, Object>> matches = new ArrayList<Map.Entry<String, Object>>();
+        for (String key : namespaces.matches(getNamespace(partialKey))) {
+            try {
+                matches.add(new AbstractMap.SimpleEntry<String, Object>(key, read(index.get(key))));
+            } catch (IOException ex) {
+                Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Prints all of the stored values to the specified print stream.
+     */
+    public synchronized void printValues(PrintStream out) {
+        out.println("Printing all persisted values:");
+        ensureLoaded();
+        for (Map.Entry<String, Location> e : index.entrySet()) {
+            try {
+                out.println(e.getKey() + ": " + read(e.getValue()));
+            } catch (IOException ex) {
+                Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        out.println("Done printing persisted values");
+    }
+
+    /**
+     * Combines the String array into a single string
+     * @param key
+     * @return
+     */
+    private static String getNamespace(String[] key) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            if (i > 0) {
+                b.append(".");
+            }
+            b.append(key[i]);
+        }
+        return b.toString();
+    }
+
+    private File file(int segment) {
+        return new File(directory, String.format("%08d", segment) + SUFFIX);
+    }
+
+    /**
+     * Returns the numbers of the segments in the directory, in order.
+     */
+    private static List<Integer> Segments(File directory) {
+        List<Integer> segments = new ArrayList<Integer>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.endsWith(SUFFIX)) {
+                    try {
+                        segments.add(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        //Not one of ours
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Returns the record type for putting this value. Strings and byte arrays, which is what
+     * almost every value is, are written as they are, rather than being serialized.
+     */
+    private static byte TypeOf(Object value) {
+        if (value instanceof String) {
+            return PUT_STRING;
+        } else if (value instanceof byte[]) {
+            return PUT_BYTES;
+        } else {
+            return PUT_OBJECT;
+        }
+    }
+
+    /**
+     * Builds a record: the payload length, the payload's checksum, then the payload, which
+     * is the type, the key, and then the value, if there is one.
+     */
+    private static byte[] Record(byte type, String key, Serializable value) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream p = new DataOutputStream(payload);
+        p.writeByte(type);
+        p.writeUTF(key);
+        if (type == PUT_STRING) {
+            p.write(((String) value).getBytes("UTF-8"));
+        } else if (type == PUT_BYTES) {
+            p.write((byte[]) value);
+        } else if (type == PUT_OBJECT) {
+            ObjectOutputStream o = new ObjectOutputStream(p);
+            o.writeObject(value);
+            o.flush();
+        }
+        p.flush();
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + HEADER);
+        DataOutputStream r = new DataOutputStream(record);
+        r.writeInt(bytes.length);
+        r.writeInt((int) crc.getValue());
+        r.write(bytes);
+        r.flush();
+        return record.toByteArray();
+    }
+
+    /**
+     * Returns true if the segment starts with a COMPACTED record.
+     */
+    private static boolean IsCompacted(File f) throws IOException {
+        byte[] marker = Record(COMPACTED, "", null);
+        if (f.length() < marker.length) {
+            return false;
+        }
+        byte[] start = new byte[marker.length];
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            in.readFully(start);
+        } finally {
+            in.close();
+        }
+        return Arrays.equals(marker, start);
+    }
+
+    /**
+     * Reads the value back out of the record at the given location.
+     */
+    private Object read(Location l) throws IOException {
+        RandomAccessFile raf = readers.get(l.segment);
+        byte[] record = new byte[l.length];
+        raf.seek(l.offset);
+        raf.readFully(record);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, HEADER, record.length - HEADER));
+        byte type = in.readByte();
+        in.readUTF();
+        if (type == PUT_STRING) {
+            byte[] value = new byte[in.available()];
+            in.readFully(value);
+            return new String(value, "UTF-8");
+        } else if (type == PUT_BYTES) {
+            byte[] value = new byte[in.available()];
+            in.readFully(value);
+            return value;
+        } else {
+            try {
+                return new ObjectInputStream(in).readObject();
+            } catch (ClassNotFoundException ex) {
+                throw new IOException(ex.getMessage());
+            }
+        }
+    }
+
+    private Location append(byte[] record) throws IOException {
+        if (activeSize > 0 && activeSize + record.length > SEGMENT_SIZE) {
+            roll();
+        }
+        Location l = new Location(active, activeSize, record.length);
+        out.write(record);
+        out.flush();
+        activeSize += record.length;
+        return l;
+    }
+
+    private void openActive(int segment) throws IOException {
+        File f = file(segment);
+        activeFile = new FileOutputStream(f, true);
+        out = new DataOutputStream(new BufferedOutputStream(activeFile));
+        activeSize = f.length();
+        active = segment;
+        if (!readers.containsKey(segment)) {
+            readers.put(segment, new RandomAccessFile(f, "r"));
+        }
+    }
+
+    /**
+     * Closes the active segment, and starts a new one.
+     */
+    private void roll() throws IOException {
+        out.flush();
+        activeFile.getFD().sync();
+        out.close();
+        openActive(active + 1);
+    }
+
+    /**
+     * Reads the records in a segment into the index. A record that is cut off or fails its
+     * checksum ends the segment, and if it is the last segment, it is truncated there, since
+     * that is where the server stopped writing.
+     */
+    private void replay(int segment, boolean last) throws IOException {
+        File f = file(segment);
+        long length = f.length();
+        long offset = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            while (offset < length) {
+                if (length - offset < HEADER) {
+                    break;
+                }
+                int size = in.readInt();
+                int checksum = in.readInt();
+                if (size <= 0 || size > length - offset - HEADER) {
+                    break;
+                }
+                byte[] payload = new byte[size];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                DataInputStream p = new DataInputStream(new ByteArrayInputStream(payload));
+                byte type = p.readByte();
+                String key = p.readUTF();
+                Location l = new Location(segment, offset, size + HEADER);
+                Location old;
+                if (type == COMPACTED) {
+                    garbageBytes += l.length;
+                    offset += l.length;
+                    continue;
+                } else if (type == DELETE) {
+                    old = index.remove(key);
+                    garbageBytes += l.length;
+                } else {
+                    old = index.put(key, l);
+                    liveBytes += l.length;
+                }
+                if (old != null) {
+                    liveBytes -= old.length;
+                    garbageBytes += old.length;
+                }
+                offset += l.length;
+            }
+        } finally {
+            in.close();
+        }
+        if (offset < length) {
+            if (last) {
+                Logger.getLogger(LogPersistance.class.getName()).log(Level.WARNING,
+                        "Discarding an incomplete record at the end of " + f + ", which was probably being written when the server stopped");
+                RandomAccessFile raf = new RandomAccessFile(f, "rw");
+                try {
+                    raf.setLength(offset);
+                } finally {
+                    raf.close();
+                }
+            } else {
+                Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE,
+                        "The persistance segment " + f + " is corrupt after " + offset + " bytes, the rest of it is being ignored");
+                garbageBytes += length - offset;
+            }
+        }
+    }
+
+    /**
+     * Copies the values out of the legacy database into the first segment.
+     */
+    private void migrate() throws Exception {
+        SerializedPersistance old = new SerializedPersistance(legacy);
+        old.load();
+        File temp = new File(directory, file(1).getName() + COMPACT_SUFFIX);
+        FileOutputStream fos = new FileOutputStream(temp);
+        DataOutputStream o = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            for (Map.Entry<String, Serializable> e : old.rawData().entrySet()) {
+                Serializable value = e.getValue();
+                o.write(Record(TypeOf(value), e.getKey(), value));
+            }
+            o.flush();
+            fos.getFD().sync();
+        } finally {
+            o.close();
+        }
+        if (!temp.renameTo(file(1))) {
+            throw new IOException("Could not rename " + temp + " to " + file(1));
+        }
+        if (!legacy.renameTo(new File(legacy.getPath() + ".migrated"))) {
+            Logger.getLogger(LogPersistance.class.getName()).log(Level.WARNING,
+                    "Could not rename " + legacy + " after copying it, it will be ignored from now on");
+        }
+        Logger.getLogger(LogPersistance.class.getName()).log(Level.INFO,
+                "Copied " + old.rawData().size() + " values from " + legacy + " into " + directory);
+    }
+
+    /**
+     * Starts a compaction in the background, if there's enough garbage to make it worthwhile.
+     */
+    private void maybeCompact() {
+        if (compacting || garbageBytes < COMPACTION_THRESHOLD || garbageBytes < liveBytes) {
+            return;
+        }
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CommandHelperPersistanceCompactor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        compacting = true;
+        compactor.submit(new Runnable() {
+
+            public void run() {
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    Logger.getLogger(LogPersistance.class.getName()).log(Level.SEVERE, null, ex);
+                } finally {
+                    synchronized (LogPersistance.this) {
+                        compacting = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the live records in all the segments before the active one into a new segment,
+     * which replaces them. The old segments aren't written to any more, so they can be read
+     * without holding the lock, which is only taken to start a new active segment, and then
+     * to switch the index over to the new segment once it has been written.
+     */
+    private void compact() throws IOException {
+        int target;
+        int gen;
+        Map<String, Location> live = new HashMap<String, Location>();
+        synchronized (this) {
+            if (!isLoaded) {
+                return;
+            }
+            roll();
+            target = active - 1;
+            gen = generation;
+            for (Map.Entry<String, Location> e : index.entrySet()) {
+                if (e.getValue().segment <= target) {
+                    live.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        File temp = new File(directory, file(target).getName() + COMPACT_SUFFIX);
+        Map<String, Location> moved = new HashMap<String, Location>();
+        Map<Integer, RandomAccessFile> sources = new HashMap<Integer, RandomAccessFile>();
+        FileOutputStream fos = new FileOutputStream(temp);
+        DataOutputStream o = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            byte[] marker = Record(COMPACTED, "", null);
+            o.write(marker);
+            long offset = marker.length;
+            for (Map.Entry<String, Location> e : live.entrySet()) {
+                Location l = e.getValue();
+                RandomAccessFile raf = sources.get(l.segment);
+                if (raf == null) {
+                    raf = new RandomAccessFile(file(l.segment), "r");
+                    sources.put(l.segment, raf);
+                }
+                byte[] record = new byte[l.length];
+                raf.seek(l.offset);
+                raf.readFully(record);
+                o.write(record);
+                moved.put(e.getKey(), new Location(target, offset, l.length));
+                offset += l.length;
+            }
+            o.flush();
+            fos.getFD().sync();
+        } finally {
+            o.close();
+            for (RandomAccessFile raf : sources.values()) {
+                raf.close();
+            }
+        }
+        synchronized (this) {
+            if (!isLoaded || gen != generation) {
+                //The database was closed or cleared in the meantime
+                temp.delete();
+                return;
+            }
+            List<Integer> old = new ArrayList<Integer>();
+            for (int segment : readers.keySet()) {
+                if (segment <= target) {
+                    old.add(segment);
+                }
+            }
+            for (int segment : old) {
+                readers.remove(segment).close();
+            }
+            //Once this rename is done, the new segment replaces all the older ones, even if
+            //they aren't deleted, since it starts with a COMPACTED record
+            boolean replaced = temp.renameTo(file(target));
+            if (!replaced) {
+                //Some platforms won't rename over an existing file. The old segment is moved
+                //aside rather than deleted, so if the server stops before the new one is in
+                //place, load puts it back.
+                File aside = new File(directory, file(target).getName() + ASIDE_SUFFIX);
+                aside.delete();
+                if (file(target).renameTo(aside)) {
+                    replaced = temp.renameTo(file(target));
+                    if (replaced) {
+                        aside.delete();
+                    } else {
+                        aside.renameTo(file(target));
+                    }
+                }
+            }
+            if (!replaced) {
+                temp.delete();
+                for (int segment : old) {
+                    readers.put(segment, new RandomAccessFile(file(segment), "r"));
+                }
+                throw new IOException("Could not rename " + temp + " to " + file(target));
+            }
+            for (int segment : old) {
+                if (segment != target) {
+                    file(segment).delete();
+                }
+            }
+            readers.put(target, new RandomAccessFile(file(target), "r"));
+            for (Map.Entry<String, Location> e : moved.entrySet()) {
+                //Keys that were changed while this was running already point to a newer record
+                if (index.get(e.getKey()) == live.get(e.getKey())) {
+                    index.put(e.getKey(), e.getValue());
+                }
+            }
+            liveBytes = 0;
+            for (Location l : index.values()) {
+                liveBytes += l.length;
+            }
+            long total = 0;
+            for (int segment : readers.keySet()) {
+                total += file(segment).length();
+            }
+            garbageBytes = total - liveBytes;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The keys of a persistance database, kept sorted, so that all the keys in a namespace
+ * can be found without looking at every key. Since '.' separates the parts of a key, and
+ * '/' is the character after '.', the keys inside the namespace a.b are exactly the keys
+ * from "a.b." up to (but not including) "a.b/".
+ * @author layton
+ */
+class NamespaceIndex {
+
+    private final TreeSet<String> keys = new TreeSet<String>();
+
+    NamespaceIndex(Collection<String> keys){
+        this.keys.addAll(keys);
+    }
+
+    void add(String key){
+        keys.add(key);
+    }
+
+    void remove(String key){
+        keys.remove(key);
+    }
+
+    /**
+     * Returns the keys which are the namespace, or are inside it, in order.
+     * @param namespace
+     * @return
+     */
+    List<String> matches(String namespace){
+        List<String> matches = new ArrayList<String>();
+        if(keys.contains(namespace)){
+            matches.add(namespace);
+        }
+        matches.addAll(keys.subSet(namespace + ".", namespace + "/"));
+        return matches;
+    }
+
+    /**
+     * Returns true if the namespace is a key, or there are any keys inside it.
+     * @param namespace
+     * @return
+     */
+    boolean isSet(String namespace){
+        return keys.contains(namespace) || !keys.subSet(namespace + ".", namespace + "/").isEmpty();
+    }
+}
@@ -44,6 +44,17 @@ public interface Persistance {
      * @return The object that was in this key, or null if the value did not exist.
      */
     public Object setValue(String[] key, Object value);
+
+    /**
+     * Does the same as setValue, except that if the change is written out straight away,
+     * rather than in the background, a failure to write it out is thrown, instead of only
+     * being logged. The change is kept in memory either way.
+     * @param key
+     * @param value
+     * @return The object that was in this key, or null if the value did not exist.
+     * @throws Exception If the change could not be written out
+     */
+    public Object storeValue(String[] key, Object value) throws Exception;
     
     /**
      * Returns the value of a particular key
@@ -87,4 +98,10 @@ public interface Persistance {
      * of God, don't call this from anywhere but the data manager!
      */
     public void clearAllData();
+    
+    /**
+     * Writes out anything that hasn't been written to disk yet, and stops any background
+     * work. This should be called once the database is no longer needed.
+     */
+    public void close();
 }
@@ -0,0 +1,548 @@
+package com.laytonsmith.PureUtilities;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistance database which is kept in a SQL database, normally an SQLite file, so
+ * nothing is loaded into memory up front, and each value is only read when it is asked for.
+ * Each key is a row, which also holds the key's namespace (the key without its last part),
+ * and the namespace column is indexed, so the values in a namespace can be found without
+ * looking at every row.
+ *
+ * Changes are written as they are made, unless a flush interval is set, in which case they
+ * are kept in memory, and a background thread writes all the changes made during the interval
+ * in one transaction. Either way, reads see the changes straight away. If a flush interval is
+ * used, close() must be called when the database is no longer needed, so that any unsaved
+ * changes are written out.
+ *
+ * If the table is empty, and a persistance.ser file from a SerializedPersistance is given,
+ * its values are copied into the table, and the file is renamed to persistance.ser.migrated.
+ * @author layton
+ */
+public class SQLPersistance implements Persistance {
+
+    private static final int STRING = 1;
+    private static final int OBJECT = 2;
+    private static final int BYTES = 4;
+    /**
+     * Stands in for a key that has been removed, but not yet removed from the table.
+     */
+    private static final Object DELETED = new Object();
+
+    private final String driver;
+    private final String url;
+    private final File legacy;
+    private Connection connection = null;
+    /**
+     * The changes that haven't been written to the table yet, in the order they were made.
+     */
+    private final Map<String, Object> pending = new LinkedHashMap<String, Object>();
+    private long flushInterval = 0;
+    private ScheduledExecutorService writer = null;
+    private boolean flushScheduled = false;
+
+    /**
+     * @param driver The class name of the JDBC driver, which is loaded so that it can be found
+     * by DriverManager. May be null, if the driver is already loaded.
+     * @param url The JDBC url of the database, for instance jdbc:sqlite:persistance.db
+     * @param legacy A SerializedPersistance database to copy the values from, if the table is empty. May be null.
+     */
+    public SQLPersistance(String driver, String url, File legacy) {
+        this.driver = driver;
+        this.url = url;
+        this.legacy = legacy;
+    }
+
+    /**
+     * Creates a database kept in an SQLite file.
+     * @param database
+     * @param legacy A SerializedPersistance database to copy the values from, if the table is empty. May be null.
+     */
+    public SQLPersistance(File database, File legacy) {
+        this("org.sqlite.JDBC", "jdbc:sqlite:" + database.getPath(), legacy);
+    }
+
+    /**
+     * Connects to the database, and creates the table if it doesn't exist yet. This is
+     * automatically called when the database is first used.
+     * @throws Exception
+     */
+    public synchronized void load() throws Exception {
+        if (connection != null) {
+            return;
+        }
+        if (driver != null) {
+            Class.forName(driver);
+        }
+        Connection c = DriverManager.getConnection(url);
+        try {
+            Statement s = c.createStatement();
+            try {
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS persistance ("
+                        + "name VARCHAR(255) NOT NULL PRIMARY KEY,"
+                        + " namespace VARCHAR(255) NOT NULL,"
+                        + " type SMALLINT NOT NULL,"
+                        + " data BLOB NOT NULL)");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS persistance_namespace ON persistance (namespace)");
+            } finally {
+                s.close();
+            }
+            if (legacy != null && legacy.exists() && isEmpty(c)) {
+                migrate(c);
+            }
+        } catch (Exception ex) {
+            c.close();
+            throw ex;
+        }
+        connection = c;
+    }
+
+    /**
+     * Writes out any changes that haven't been written yet.
+     * @throws Exception
+     */
+    public synchronized void save() throws Exception {
+        if (pending.isEmpty()) {
+            return;
+        }
+        ensureLoaded();
+        if (connection == null) {
+            throw new SQLException("Could not connect to " + url);
+        }
+        write(connection, pending);
+        pending.clear();
+    }
+
+    /**
+     * Writes the changes in one transaction.
+     */
+    private static void write(Connection c, Map<String, ?> changes) throws SQLException, IOException {
+        boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            PreparedStatement delete = c.prepareStatement("DELETE FROM persistance WHERE name = ?");
+            PreparedStatement insert = c.prepareStatement("INSERT INTO persistance (name, namespace, type, data) VALUES (?, ?, ?, ?)");
+            try {
+                for (Map.Entry<String, ?> e : changes.entrySet()) {
+                    delete.setString(1, e.getKey());
+                    delete.addBatch();
+                    if (e.getValue() != DELETED) {
+                        insert.setString(1, e.getKey());
+                        insert.setString(2, Parent(e.getKey()));
+                        insert.setInt(3, TypeOf(e.getValue()));
+                        insert.setBytes(4, Encode(e.getValue()));
+                        insert.addBatch();
+                    }
+                }
+                delete.executeBatch();
+                insert.executeBatch();
+            } finally {
+                delete.close();
+                insert.close();
+            }
+            c.commit();
+        } catch (SQLException ex) {
+            c.rollback();
+            throw ex;
+        } catch (IOException ex) {
+            c.rollback();
+            throw ex;
+        } finally {
+            c.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Sets how long changes may be kept in memory before they are written out, in
+     * milliseconds. If this is 0 (the default), every change is written out straight away.
+     * @param milliseconds
+     */
+    public synchronized void setFlushInterval(long milliseconds) {
+        flushInterval = milliseconds;
+        if (flushInterval > 0 && writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CommandHelperPersistanceWriter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        if (!pending.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Writes out any unsaved changes, stops the background writer, and disconnects from
+     * the database. The database may still be used afterwards, in which case it connects
+     * again, and changes are then written out straight away.
+     */
+    public void close() {
+        ScheduledExecutorService w;
+        synchronized (this) {
+            w = writer;
+            writer = null;
+            flushInterval = 0;
+            flushScheduled = false;
+        }
+        if (w != null) {
+            w.shutdownNow();
+        }
+        synchronized (this) {
+            flush();
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    Logger.getLogger(SQLPersistance.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                connection = null;
+            }
+        }
+    }
+
+    /**
+     * Writes out any unsaved changes, logging any failure.
+     */
+    private synchronized void flush() {
+        flushScheduled = false;
+        try {
+            save();
+        } catch (Exception ex) {
+            Logger.getLogger(SQLPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            //Try again later
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Makes sure the background writer will write out the changes. Must be called while
+     * holding this object's lock.
+     */
+    private void scheduleFlush() {
+        if (writer == null || flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        writer.schedule(new Runnable() {
+
+            public void run() {
+                flush();
+            }
+        }, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Unless you're the data manager, and you <em>really</em> want to clear
+     * out the entire database, don't use this method. Unlike SerializedPersistance,
+     * the data is gone as soon as this returns.
+     */
+    public synchronized void clearAllData() {
+        pending.clear();
+        ensureLoaded();
+        if (connection == null) {
+            return;
+        }
+        try {
+            Statement s = connection.createStatement();
+            try {
+                s.executeUpdate("DELETE FROM persistance");
+            } finally {
+                s.close();
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(SQLPersistance.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private void ensureLoaded() {
+        //defer connecting until we actually try and use the database
+        if (connection == null) {
+            try {
+                load();
+            } catch (Exception ex) {
+                Logger.getLogger(SQLPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    public synchronized Object setValue(String[] key, Object value) {
+        String k = getNamespace(key);
+        Object oldVal = get(k);
+        pending.put(k, value == null ? DELETED : value);
+        if (writer == null) {
+            flush();
+        } else {
+            scheduleFlush();
+        }
+        return oldVal;
+    }
+
+    /**
+     * Does the same as setValue, except that if there is no flush interval, a failure to
+     * write the change out is thrown.
+     */
+    public synchronized Object storeValue(String[] key, Object value) throws Exception {
+        String k = getNamespace(key);
+        Object oldVal = get(k);
+        pending.put(k, value == null ? DELETED : value);
+        if (writer == null) {
+            save();
+        } else {
+            scheduleFlush();
+        }
+        return oldVal;
+    }
+
+    public synchronized Object getValue(String[] key) {
+        return get(getNamespace(key));
+    }
+
+    public synchronized boolean isKeySet(String[] key) {
+        return get(getNamespace(key)) != null;
+    }
+
+    /**
+     * Returns the value of the key, including changes that haven't been written out yet.
+     */
+    private Object get(String key) {
+        if (pending.containsKey(key)) {
+            Object value = pending.get(key);
+            return value == DELETED ? null : value;
+        }
+        ensureLoaded();
+        if (connection == null) {
+            return null;
+        }
+        try {
+            PreparedStatement s = connection.prepareStatement("SELECT type, data FROM persistance WHERE name = ?");
+            try {
+                s.setString(1, key);
+                ResultSet rs = s.executeQuery();
+                try {
+                    return rs.next() ? Decode(rs.getInt(1), rs.getBytes(2)) : null;
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                s.close();
+            }
+        } catch (Exception ex) {
+            Logger.getLogger(SQLPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    public synchronized boolean isNamespaceSet(String[] partialKey) {
+        return !namespaceValues(getNamespace(partialKey), true).isEmpty();
+    }
+
+    public synchronized List<Map.Entry<String, Object>> getNamespaceValues(String[] partialKey) {
+        return namespaceValues(getNamespace(partialKey), false);
+    }
+
+    /**
+     * Returns the values which are the namespace, or are inside it, in key order. The keys
+     * inside the namespace a.b are the ones whose own namespace is a.b, or is from "a.b."
+     * up to (but not including) "a.b/", since '/' is the character after '.'.
+     * @param namespace
+     * @param first If true, only the first match is returned
+     */
+    private List<Map.Entry<String, Object>> namespaceValues(String namespace, boolean first) {
+        ensureLoaded();
+        SortedMap<String, Object> matches = new TreeMap<String, Object>();
+        if (connection != null) {
+            try {
+                PreparedStatement s = connection.prepareStatement("SELECT name, type, data FROM persistance"
+                        + " WHERE name = ? OR namespace = ? OR (namespace >= ? AND namespace < ?) ORDER BY name");
+                try {
+                    //A change that hasn't been written yet may remove the first row
+                    if (first && pending.isEmpty()) {
+                        s.setMaxRows(1);
+                    }
+                    s.setString(1, namespace);
+                    s.setString(2, namespace);
+                    s.setString(3, namespace + ".");
+                    s.setString(4, namespace + "/");
+                    ResultSet rs = s.executeQuery();
+                    try {
+                        while (rs.next()) {
+                            matches.put(rs.getString(1), Decode(rs.getInt(2), rs.getBytes(3)));
+                        }
+                    } finally {
+                        rs.close();
+                    }
+                } finally {
+                    s.close();
+                }
+            } catch (Exception ex) {
+                Logger.getLogger(SQLPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        //The query can't see changes which haven't been written yet
+        for (Map.Entry<String, Object> e : pending.entrySet()) {
+            String parent = Parent(e.getKey());
+            if (e.getKey().equals(namespace) || parent.equals(namespace) || parent.startsWith(namespace + ".")) {
+                if (e.getValue() == DELETED) {
+                    matches.remove(e.getKey());
+                } else {
+                    matches.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        List<Map.Entry<String, Object>> list = new ArrayList<Map.Entry<String, Object>>();
+        for (Map.Entry<String, Object> e : matches.entrySet()) {
+            list.add(new AbstractMap.SimpleEntry<String, Object>(e));
+            if (first) {
+                break;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Prints all of the stored values to the specified print stream.
+     */
+    public synchronized void printValues(PrintStream out) {
+        out.println("Printing all persisted values:");
+        ensureLoaded();
+        SortedMap<String, Object> values = new TreeMap<String, Object>();
+        if (connection != null) {
+            try {
+                Statement s = connection.createStatement();
+                try {
+                    ResultSet rs = s.executeQuery("SELECT name, type, data FROM persistance");
+                    try {
+                        while (rs.next()) {
+                            values.put(rs.getString(1), Decode(rs.getInt(2), rs.getBytes(3)));
+                        }
+                    } finally {
+                        rs.close();
+                    }
+                } finally {
+                    s.close();
+                }
+            } catch (Exception ex) {
+                Logger.getLogger(SQLPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        for (Map.Entry<String, Object> e : pending.entrySet()) {
+            if (e.getValue() == DELETED) {
+                values.remove(e.getKey());
+            } else {
+                values.put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, Object> e : values.entrySet()) {
+            out.println(e.getKey() + ": " + e.getValue());
+        }
+        out.println("Done printing persisted values");
+    }
+
+    /**
+     * Combines the String array into a single string
+     * @param key
+     * @return
+     */
+    private static String getNamespace(String[] key) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            if (i > 0) {
+                b.append(".");
+            }
+            b.append(key[i]);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Returns the namespace the key is in, that is, the key without its last part, or
+     * an empty string if the key only has one part.
+     */
+    private static String Parent(String key) {
+        int i = key.lastIndexOf('.');
+        return i == -1 ? "" : key.substring(0, i);
+    }
+
+    /**
+     * Returns the type a value is stored as. Strings and byte arrays, which is what
+     * almost every value is, are stored as they are, rather than being serialized.
+     */
+    private static int TypeOf(Object value) {
+        if (value instanceof String) {
+            return STRING;
+        } else if (value instanceof byte[]) {
+            return BYTES;
+        } else {
+            return OBJECT;
+        }
+    }
+
+    private static byte[] Encode(Object value) throws IOException {
+        if (value instanceof String) {
+            return ((String) value).getBytes("UTF-8");
+        } else if (value instanceof byte[]) {
+            return (byte[]) value;
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream o = new ObjectOutputStream(bytes);
+            o.writeObject(value);
+            o.close();
+            return bytes.toByteArray();
+        }
+    }
+
+    private static Object Decode(int type, byte[] data) throws IOException {
+        if (type == STRING) {
+            return new String(data, "UTF-8");
+        } else if (type == BYTES) {
+            return data;
+        } else {
+            try {
+                return new ObjectInputStream(new ByteArrayInputStream(data)).readObject();
+            } catch (ClassNotFoundException ex) {
+                throw new IOException(ex.getMessage());
+            }
+        }
+    }
+
+    private static boolean isEmpty(Connection c) throws SQLException {
+        Statement s = c.createStatement();
+        try {
+            s.setMaxRows(1);
+            ResultSet rs = s.executeQuery("SELECT name FROM persistance");
+            try {
+                return !rs.next();
+            } finally {
+                rs.close();
+            }
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * Copies the values out of the legacy database into the table.
+     */
+    private void migrate(Connection c) throws Exception {
+        SerializedPersistance old = new SerializedPersistance(legacy);
+        old.load();
+        write(c, old.rawData());
+        if (!legacy.renameTo(new File(legacy.getPath() + ".migrated"))) {
+            Logger.getLogger(SQLPersistance.class.getName()).log(Level.WARNING,
+                    "Could not rename " + legacy + " after copying it, it will be ignored from now on");
+        }
+        Logger.getLogger(SQLPersistance.class.getName()).log(Level.INFO,
+                "Copied " + old.rawData().size() + " values from " + legacy + " into " + url);
+    }
+}
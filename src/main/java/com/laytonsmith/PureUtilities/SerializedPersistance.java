@@ -2,13 +2,25 @@ package com.laytonsmith.PureUtilities;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This file allows for simple data storage across many different data sources. In general, the
  * most common methods used are getValue and setValue. Note that getValue, setValue, save, and
- * load are synchronized.
+ * load are thread safe.
+ *
+ * By default, every change is written out to disk straight away. If a flush interval is set,
+ * changes are only made in memory, and a background thread writes the database out once the
+ * interval has passed since the first unsaved change, so a burst of changes only causes one
+ * write. Either way, the database is written to a temporary file, which is then renamed over
+ * the real one, so a crash part way through a write doesn't lose the old database. If a flush
+ * interval is used, close() must be called when the database is no longer needed, so that
+ * any unsaved changes are written out.
  * @author layton
  */
 public class SerializedPersistance implements Persistance{
@@ -17,7 +29,25 @@ public class SerializedPersistance implements Persistance{
      * This is the data structure that the registry is stored in
      */
     private HashMap<String, Serializable> data = new HashMap<String, Serializable>();
+    /**
+     * The keys of data, sorted so namespaces can be looked up quickly. It is built the first
+     * time it is needed, and thrown away whenever data is replaced, or handed out.
+     */
+    private NamespaceIndex namespaces = null;
     private boolean isLoaded = false;
+    /**
+     * Whether or not there are changes that haven't been written out yet
+     */
+    private boolean dirty = false;
+    private long flushInterval = 0;
+    private ScheduledExecutorService writer = null;
+    private boolean flushScheduled = false;
+    /**
+     * Held while the database is being written out, so that writes happen one at a
+     * time, in the order their snapshots were taken. If both locks are needed, this one
+     * must be taken first.
+     */
+    private final Object fileLock = new Object();
     /**
      * The storage location of the persistance database. 
      */
@@ -40,7 +70,9 @@ public class SerializedPersistance implements Persistance{
      * Unless you're the data manager, don't use this method.
      * @return 
      */
-    public HashMap<String, Serializable> rawData(){
+    public synchronized HashMap<String, Serializable> rawData(){
+        //The caller may change it behind our back
+        namespaces = null;
         return data;
     }
     
@@ -51,6 +83,7 @@ public class SerializedPersistance implements Persistance{
      */
     public void clearAllData(){
         data = new HashMap<String, Serializable>();
+        namespaces = null;
     }
 
     /**
@@ -65,6 +98,7 @@ public class SerializedPersistance implements Persistance{
                 fis = new FileInputStream(storageLocation);
                 in = new ObjectInputStream(fis);
                 data = (HashMap<String, Serializable>) in.readObject();
+                namespaces = null;
                 in.close();
                 isLoaded = true;
             }            
@@ -76,48 +110,197 @@ public class SerializedPersistance implements Persistance{
     }
 
     /**
-     * Causes the database to be saved to disk
+     * Causes the database to be saved to disk now, on this thread.
      * @throws IOException
      */
-    public synchronized void save() throws Exception {
-        try {            
-            FileOutputStream fos = null;
-            ObjectOutputStream out = null;
-            storageLocation.getParentFile().mkdirs();
-            if(!storageLocation.exists())
-                storageLocation.createNewFile();
-            fos = new FileOutputStream(storageLocation);
-            out = new ObjectOutputStream(fos);
-            out.writeObject(data);
-            out.close();
+    public void save() throws Exception {
+        synchronized(fileLock){
+            HashMap<String, Serializable> snapshot;
+            synchronized(this){
+                snapshot = new HashMap<String, Serializable>(data);
+                dirty = false;
+            }
+            try{
+                write(snapshot);
+            } catch(Exception ex){
+                synchronized(this){
+                    dirty = true;
+                }
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Writes the given data to a temporary file, then renames it over the database.
+     */
+    private void write(HashMap<String, Serializable> snapshot) throws IOException {
+        File parent = storageLocation.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File temp = new File(parent, storageLocation.getName() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(temp);
+        try{
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fos));
+            out.writeObject(snapshot);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if(!temp.renameTo(storageLocation)){
+            //Some platforms won't rename over an existing file
+            storageLocation.delete();
+            if(!temp.renameTo(storageLocation)){
+                throw new IOException("Could not rename " + temp + " to " + storageLocation);
+            }
+        }
+    }
+
+    /**
+     * Sets how long changes may be kept in memory before they are written out to disk, in
+     * milliseconds. If this is 0 (the default), every change is written out straight away.
+     * @param milliseconds
+     */
+    public synchronized void setFlushInterval(long milliseconds){
+        flushInterval = milliseconds;
+        if(flushInterval > 0 && writer == null){
+            writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CommandHelperPersistanceWriter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        if(dirty){
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Writes out any unsaved changes, and stops the background writer. The database may
+     * still be used afterwards, but changes are then written out straight away.
+     */
+    public void close() {
+        ScheduledExecutorService w;
+        synchronized(this){
+            w = writer;
+            writer = null;
+            flushInterval = 0;
+            flushScheduled = false;
+        }
+        if(w != null){
+            w.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Writes out the database if there are unsaved changes, logging any failure.
+     */
+    private void flush(){
+        synchronized(this){
+            flushScheduled = false;
+            if(!dirty){
+                return;
+            }
+        }
+        try {
+            save();
         } catch (Exception ex) {
-            throw ex;
+            Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            synchronized(this){
+                //Try again later
+                if(writer != null){
+                    scheduleFlush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure the background writer will write out the database. Must be called while
+     * holding this object's lock.
+     */
+    private void scheduleFlush(){
+        if(writer == null || flushScheduled){
+            return;
         }
+        flushScheduled = true;
+        writer.schedule(new Runnable() {
+
+            public void run() {
+                flush();
+            }
+        }, flushInterval, TimeUnit.MILLISECONDS);
     }
 
 
     /**
      * You should not usually use this method. Please see <code>setValue(String[] key, Serializable value)</code>
      */
-    private synchronized Object setValue(String key, Serializable value) {
-        //defer loading until we actually try and use the data structure
-        if (isLoaded == false) {
+    private Object setValue(String key, Serializable value) {
+        Object oldVal = put(key, value);
+        if(writesThrough()){
             try {
-                load();
+                save();
             } catch (Exception ex) {
-                Logger.getLogger("Minecraft").log(Level.SEVERE, null, ex);
+                Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        Serializable oldVal = data.get(key);
-        if(value == null){
-            data.remove(key);
-        } else {
-            data.put(key, value);
-        }
-        try {
+        return oldVal;
+    }
+
+    /**
+     * Does the same as setValue, except that if there is no flush interval, a failure to
+     * write the database out is thrown.
+     */
+    public Object storeValue(String[] key, Object value) throws Exception {
+        Object oldVal = put(getNamespace(key), (Serializable) value);
+        if(writesThrough()){
             save();
-        } catch (Exception ex) {
-            Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return oldVal;
+    }
+
+    /**
+     * Returns true if there is no background writer, so changes must be written out
+     * straight away. The file lock can't be taken while holding this object's lock, so
+     * the caller writes them out.
+     */
+    private synchronized boolean writesThrough(){
+        return writer == null;
+    }
+
+    /**
+     * Makes the change in memory, and has the background writer, if there is one, write it out.
+     */
+    private Serializable put(String key, Serializable value) {
+        Serializable oldVal;
+        synchronized(this){
+            //defer loading until we actually try and use the data structure
+            if (isLoaded == false) {
+                try {
+                    load();
+                } catch (Exception ex) {
+                    Logger.getLogger("Minecraft").log(Level.SEVERE, null, ex);
+                }
+            }
+            oldVal = data.get(key);
+            if(value == null){
+                data.remove(key);
+                if(namespaces != null){
+                    namespaces.remove(key);
+                }
+            } else {
+                data.put(key, value);
+                if(namespaces != null){
+                    namespaces.add(key);
+                }
+            }
+            dirty = true;
+            scheduleFlush();
         }
         return oldVal;
     }
@@ -156,7 +339,7 @@ public class SerializedPersistance implements Persistance{
      * @param value The value to store. If value is null, the key is simply removed.
      * @return The object that was in this key, or null if the value did not exist.
      */
-    public synchronized Object setValue(String[] key, Object value) {
+    public Object setValue(String[] key, Object value) {
         return setValue(getNamespace(key), (Serializable) value);
     }
 
@@ -190,28 +373,8 @@ public class SerializedPersistance implements Persistance{
      * @return
      */
     public synchronized boolean isNamespaceSet(String[] partialKey) {
-        String m = getNamespace(partialKey);
-        partialKey = m.split("\\.");
-        Iterator i = data.entrySet().iterator();
-        while (i.hasNext()) {
-            String key = ((Map.Entry)i.next()).getKey().toString();
-            String[] namespace = key.split("\\.");
-            boolean match = true;
-            for (int k = 0; k < partialKey.length; k++) {
-                if (namespace.length < k) {
-                    match = false;
-                    continue;
-                }
-                if (!namespace[k].equals(partialKey[k])) {
-                    match = false;
-                    continue;
-                }
-            }
-            if (match) {
-                return true;
-            }
-        }
-        return false;
+        ensureLoaded();
+        return namespaces().isSet(getNamespace(partialKey));
     }
 
     /**
@@ -220,10 +383,23 @@ public class SerializedPersistance implements Persistance{
      * @return An ArrayList of Map.Entries.
      */
     public synchronized List<Map.Entry<String, Object>> getNamespaceValues(String[] partialKey){
-
+        ensureLoaded();
         List<Map.Entry<String, Object>> matches = new ArrayList<Map.Entry<String, Object>>();
-        String m = getNamespace(partialKey);
-        partialKey = m.split("\\.");
+        for(String key : namespaces().matches(getNamespace(partialKey))){
+            matches.add(new AbstractMap.SimpleEntry<String, Object>(key, data.get(key)));
+        }
+        return matches;
+    }
+
+    private NamespaceIndex namespaces(){
+        if(namespaces == null){
+            namespaces = new NamespaceIndex(data.keySet());
+        }
+        return namespaces;
+    }
+
+    private void ensureLoaded(){
+        //defer loading until we actually try and use the data structure
         if(!isLoaded){
             try {
                 load();
@@ -231,27 +407,6 @@ public class SerializedPersistance implements Persistance{
                 Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        Iterator i = data.entrySet().iterator();
-        while (i.hasNext()) {
-            Map.Entry entry = (Map.Entry)i.next();
-            String key = entry.getKey().toString();
-            String[] namespace = key.split("\\.");
-            boolean match = true;
-            for (int k = 0; k < partialKey.length; k++) {
-                if (namespace.length < partialKey.length) {
-                    match = false;
-                    continue;
-                }
-                if (!namespace[k].equals(partialKey[k])) {
-                    match = false;
-                    continue;
-                }
-            }
-            if (match) {
-                matches.add(entry);
-            }
-        }
-        return matches;
     }
 
     /**
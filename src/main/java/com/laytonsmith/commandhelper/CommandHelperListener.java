@@ -148,12 +148,14 @@ public class CommandHelperListener implements Listener {
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
         UserManager.ClearUser(player.getName());
+        PermissionCache.Clear(player.getName());
     }
 
     @EventHandler(priority= EventPriority.NORMAL)
     public void onPlayerJoin(PlayerJoinEvent event) {
+        PermissionCache.Clear(event.getPlayer().getName());
         Static.HostnameCache(new BukkitMCPlayer(event.getPlayer()));
     }
     
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -19,7 +19,10 @@
 
 package com.laytonsmith.commandhelper;
 
+import com.laytonsmith.PureUtilities.LogPersistance;
+import com.laytonsmith.PureUtilities.Persistance;
 import com.laytonsmith.PureUtilities.Preferences;
+import com.laytonsmith.PureUtilities.SQLPersistance;
 import com.laytonsmith.PureUtilities.SerializedPersistance;
 import com.laytonsmith.PureUtilities.TermColors;
 import com.laytonsmith.abstraction.MCChatColor;
@@ -63,7 +66,7 @@ public class CommandHelperPlugin extends JavaPlugin {
     //Do not rename this field, it is changed reflectively in unit tests.
     private static AliasCore ac;
     public static MCServer myServer;
-    public static SerializedPersistance persist;
+    public static Persistance persist;
     public static PermissionsResolverManager perms;
     public static Version version;
     public static Preferences prefs;
@@ -102,7 +105,8 @@ public class CommandHelperPlugin extends JavaPlugin {
     public void onEnable() {       
         self = this;
         myServer = StaticLayer.GetServer();
-        persist = new SerializedPersistance(new File("plugins/CommandHelper/persistance.ser"), this);
+        SerializedPersistance serialized = new SerializedPersistance(new File("plugins/CommandHelper/persistance.ser"), this);
+        persist = serialized;
         logger.info("CommandHelper/CommandHelper " + getDescription().getVersion() + " enabled");
         version = new Version(getDescription().getVersion());
         PermissionsResolverManager.initialize(this);
@@ -114,6 +118,17 @@ public class CommandHelperPlugin extends JavaPlugin {
         try {
             File prefsFile = new File("plugins/CommandHelper/preferences.txt");
             Static.getPreferences().init(prefsFile);
+            if(Prefs.PersistanceEngine().equalsIgnoreCase("log")){
+                //Copies persistance.ser over the first time it is used
+                persist = new LogPersistance(new File("plugins/CommandHelper/persistance"), new File("plugins/CommandHelper/persistance.ser"));
+            } else if(Prefs.PersistanceEngine().equalsIgnoreCase("sqlite")){
+                //Copies persistance.ser over the first time it is used
+                SQLPersistance sql = new SQLPersistance(new File("plugins/CommandHelper/persistance.db"), new File("plugins/CommandHelper/persistance.ser"));
+                sql.setFlushInterval(Prefs.PersistanceFlushInterval());
+                persist = sql;
+            } else {
+                serialized.setFlushInterval(Prefs.PersistanceFlushInterval());
+            }
             if(Prefs.UseColors()){
                 TermColors.EnableColors();
             } else {
@@ -175,6 +190,10 @@ public class CommandHelperPlugin extends JavaPlugin {
      */
     @Override
     public void onDisable() {
+        //Write out anything the background writer hasn't got to yet
+        persist.close();
+        //The database may be edited before the plugin is enabled again
+        PersistanceCache.ClearAll();
         //free up some memory
         ac = null;
         wep = null;
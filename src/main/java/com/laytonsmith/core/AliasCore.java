@@ -235,6 +235,7 @@ public class AliasCore {
             Scheduling.ClearScheduledRunners();
             EventUtils.UnregisterAll();            
             IncludeCache.clearCache(); //Clear the include cache, so it re-pulls files
+            PermissionCache.ClearAll(); //Permissions may have been changed since
             if (!aliasConfig.exists()) {
                 aliasConfig.getParentFile().mkdirs();
                 aliasConfig.createNewFile();
@@ -280,6 +281,7 @@ public class AliasCore {
             GetAuxAliases(auxAliases, localPackages);
             
             autoIncludes = localPackages.getAutoIncludes();
+            MethodScriptCompiler.compileAutoIncludes(autoIncludes);
 
             localPackages.compileMS(player);
             localPackages.compileMSA(scripts, player);
@@ -13,6 +13,10 @@ import java.util.Map;
 
 /**
  * The Env class contains the operating environment for a particular function.
+ * Environments are cloned often, for every procedure call, closure and event
+ * trigger, so cloning doesn't copy anything. Instead, the clone shares the maps
+ * with the original, and whichever of the two changes a shared map first gets
+ * its own copy of it at that point.
  * @author Layton
  */
 public final class Env implements Cloneable{
@@ -20,15 +24,20 @@ public final class Env implements Cloneable{
     /**
      * This is the underlying map of variables
      */
-    private Map<String, Object> custom = new HashMap<String, Object>();   
-    private Map<String, Boolean> flags = new HashMap<String, Boolean>();
+    private Map<String, Object> custom = null;
+    private boolean customShared = false;
+    private Map<String, Boolean> flags = null;
+    private boolean flagsShared = false;
     private MCCommandSender commandSender = null;
     private IVariableList iVariableList = null;
     private Map<String, Procedure> procs = null;
+    private boolean procsShared = false;
     private String label = null;
     private Script script = null;
     private BoundEvent.ActiveEvent event = null;
     private String command = null;
+    private ExecutionBudget budget = null;
+    private FlowControl flowControl = new FlowControl();
     
     /*
      * The constructor has relatively little to do, most things are lazy
@@ -45,6 +54,12 @@ public final class Env implements Cloneable{
      * @param value 
      */
     public void SetFlag(String name, boolean value){
+        if(flags == null){
+            flags = new HashMap<String, Boolean>();
+        } else if(flagsShared){
+            flags = new HashMap<String, Boolean>(flags);
+            flagsShared = false;
+        }
         flags.put(name, value);
     }
     
@@ -54,7 +69,7 @@ public final class Env implements Cloneable{
      * @return 
      */
     public Boolean GetFlag(String name){
-        if(!flags.containsKey(name)){
+        if(flags == null){
             return null;
         } else {
             return flags.get(name);
@@ -66,6 +81,13 @@ public final class Env implements Cloneable{
      * @param name 
      */
     public void ClearFlag(String name){
+        if(flags == null || !flags.containsKey(name)){
+            return;
+        }
+        if(flagsShared){
+            flags = new HashMap<String, Boolean>(flags);
+            flagsShared = false;
+        }
         flags.remove(name);
     }
     
@@ -77,10 +99,13 @@ public final class Env implements Cloneable{
      * @param var 
      */
     public void SetCustom(String name, Object var){
-        if(!custom.containsKey("custom")){
-            custom.put("custom", new HashMap<String, Object>());
+        if(custom == null){
+            custom = new HashMap<String, Object>();
+        } else if(customShared){
+            custom = new HashMap<String, Object>(custom);
+            customShared = false;
         }
-        ((Map<String, Object>)custom.get("custom")).put(name, var);        
+        custom.put(name, var);
     }
     
     /**
@@ -89,10 +114,10 @@ public final class Env implements Cloneable{
      * @return 
      */
     public Object GetCustom(String name){
-        if(!custom.containsKey("custom")){
-            custom.put("custom", new HashMap<String, Object>());
+        if(custom == null){
+            return null;
         }
-        return ((Map<String, Object>)custom.get("custom")).get(name);
+        return custom.get(name);
     }
     /**
      * Given the environment, this function returns the CommandSender in the
@@ -157,19 +182,56 @@ public final class Env implements Cloneable{
     /**
      * Returns the Map of known procedures in this environment. If the list
      * of procedures is currently empty, a new one is created and stored in
-     * the environment.
+     * the environment. Since the map returned may be modified, this makes
+     * this environment's own copy of the map if it is shared, so use GetProc
+     * to simply look up a procedure.
      * @param env
      * @return 
      */
     public Map<String, Procedure> GetProcs(){
         if(procs == null){
             procs = new HashMap<String, Procedure>();
+        } else if(procsShared){
+            procs = new HashMap<String, Procedure>(procs);
+            procsShared = false;
         }
         return procs;
     }
     
+    /**
+     * Returns the procedure with the given name, or null if there isn't one.
+     * @param name
+     * @return 
+     */
+    public Procedure GetProc(String name){
+        if(procs == null){
+            return null;
+        }
+        return procs.get(name);
+    }
+    
+    /**
+     * Adds all the given procedures to this environment, replacing any existing ones
+     * with the same name. The map isn't copied unless it has to be, so it must not be
+     * modified afterwards.
+     * @param table 
+     */
+    public void AddProcs(Map<String, Procedure> table){
+        if(procs == null || procs == table){
+            procs = table;
+            procsShared = true;
+            return;
+        }
+        for(Map.Entry<String, Procedure> entry : table.entrySet()){
+            if(procs.get(entry.getKey()) != entry.getValue()){
+                GetProcs().put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
     public void SetProcs(Map<String, Procedure> procs){
         this.procs = procs;
+        this.procsShared = false;
     }
     
     public String GetLabel(){
@@ -203,25 +265,31 @@ public final class Env implements Cloneable{
     @Override
     public Env clone() throws CloneNotSupportedException{
         Env clone = new Env();
-        clone.custom = new HashMap<String, Object>(this.custom);
+        if(custom != null){
+            customShared = true;
+            clone.custom = custom;
+            clone.customShared = true;
+        }
         clone.commandSender = commandSender;
         clone.event = event;
         if(flags != null){
-            clone.flags = new HashMap<String, Boolean>(flags);
-        } else {
-            clone.flags = new HashMap<String, Boolean>();
+            flagsShared = true;
+            clone.flags = flags;
+            clone.flagsShared = true;
         }
         clone.label = label;
         if(procs != null){
-            clone.procs = new HashMap<String, Procedure>(procs);
-        } else {
-            clone.procs = new HashMap<String, Procedure>();
+            procsShared = true;
+            clone.procs = procs;
+            clone.procsShared = true;
         }
         clone.script = script;
         if(iVariableList != null){
             clone.iVariableList = (IVariableList) iVariableList.clone();
         }
         clone.command = command;
+        clone.budget = budget;
+        clone.flowControl = flowControl;
         return clone;
     }
 
@@ -232,4 +300,30 @@ public final class Env implements Cloneable{
     public String GetCommand(){
         return this.command;
     }
+    
+    /**
+     * Returns the pending break, continue or return, if any. This is shared with
+     * all clones of this environment.
+     * @return 
+     */
+    public FlowControl GetFlowControl(){
+        return flowControl;
+    }
+    
+    public void SetFlowControl(FlowControl flowControl){
+        this.flowControl = flowControl;
+    }
+    
+    public void SetExecutionBudget(ExecutionBudget budget){
+        this.budget = budget;
+    }
+    
+    /**
+     * Returns the budget of the script currently running in this environment, or
+     * null if it isn't budgeted.
+     * @return 
+     */
+    public ExecutionBudget GetExecutionBudget(){
+        return budget;
+    }
 }
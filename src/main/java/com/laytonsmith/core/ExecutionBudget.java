@@ -0,0 +1,201 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core;
+
+import com.laytonsmith.abstraction.StaticLayer;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+/**
+ * Limits how long a single alias may run before the server gets
+ * its thread back. A budgeted script is run on a separate thread, but only ever
+ * while the server thread is waiting for it, so it is still effectively run
+ * synchronously. Each time a loop comes back around, the script checks in with
+ * its budget, and if it has used up its time for this tick, it hands control
+ * back to the server, and is resumed on the next tick.
+ *
+ * The budget is set in milliseconds with the execution-budget preference. If it is
+ * 0 or less, scripts run straight through, as they always have. A budgeted script may
+ * also use sleep(), which pauses it without holding up the server. Event handlers are
+ * never budgeted, since the event has to be finished with by the time the handler returns.
+ * @author Layton
+ */
+public class ExecutionBudget {
+
+    private static final ExecutorService threads = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "CommandHelper script thread");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private static final ThreadLocal<ExecutionBudget> current = new ThreadLocal<ExecutionBudget>();
+
+    /**
+     * Returns the budget from the execution-budget preference, in nanoseconds, or 0 if
+     * the preferences aren't loaded, which is the case when running outside of the server.
+     * @return
+     */
+    public static long DefaultBudget(){
+        try{
+            return Prefs.ExecutionBudget() * 1000000L;
+        } catch(RuntimeException e){
+            return 0;
+        }
+    }
+
+    /**
+     * Returns true if the current thread is running a budgeted script.
+     * @return
+     */
+    public static boolean IsScriptThread(){
+        return current.get() != null;
+    }
+
+    /**
+     * Runs the given code with the given budget. If the budget runs out, this returns
+     * before the code is done, and the rest of it is run over the following ticks.
+     * If this is called from a script that is already budgeted, the code shares that
+     * script's budget instead.
+     * @param nanos The budget per tick, in nanoseconds. If 0 or less, the code is simply
+     * run to completion, even if it is called from a budgeted script.
+     * @param env The environment the code will run in
+     * @param code
+     */
+    public static void Run(long nanos, Env env, Runnable code){
+        if(nanos <= 0){
+            env.SetExecutionBudget(null);
+            code.run();
+            return;
+        }
+        ExecutionBudget b = current.get();
+        if(b != null){
+            env.SetExecutionBudget(b);
+            code.run();
+            return;
+        }
+        b = new ExecutionBudget(nanos);
+        env.SetExecutionBudget(b);
+        b.start(code);
+    }
+
+    /**
+     * If the script running in this environment is budgeted, pauses it for the given
+     * number of milliseconds, and lets the server carry on in the meantime.
+     * @param env
+     * @param ms
+     * @return false if the script isn't budgeted, in which case nothing happened
+     */
+    public static boolean Sleep(Env env, long ms){
+        ExecutionBudget b = env.GetExecutionBudget();
+        if(b == null || Thread.currentThread() != b.thread){
+            return false;
+        }
+        b.pause(ms);
+        return true;
+    }
+
+    /**
+     * Should be called by the loops each time they go back around.
+     * @param env
+     */
+    public static void Checkpoint(Env env){
+        ExecutionBudget b = env.GetExecutionBudget();
+        if(b != null){
+            b.checkpoint();
+        }
+    }
+
+    private final long budget;
+    private long sliceStart;
+    private final Semaphore toScript = new Semaphore(0);
+    private final Semaphore toServer = new Semaphore(0);
+    private Thread thread = null;
+    private boolean finished = false;
+    private Throwable error = null;
+    private long wakeDelay = 0;
+
+    private ExecutionBudget(long budget){
+        this.budget = budget;
+    }
+
+    private void start(final Runnable code){
+        threads.execute(new Runnable() {
+
+            public void run() {
+                sliceStart = System.nanoTime();
+                thread = Thread.currentThread();
+                current.set(ExecutionBudget.this);
+                try{
+                    code.run();
+                } catch(Throwable t){
+                    error = t;
+                } finally {
+                    current.remove();
+                    thread = null;
+                    finished = true;
+                    toServer.release();
+                }
+            }
+        });
+        toServer.acquireUninterruptibly();
+        if(finished){
+            //It finished within the first slice, so the caller can handle any errors,
+            //same as if it had been run directly.
+            if(error instanceof RuntimeException){
+                throw (RuntimeException)error;
+            } else if(error instanceof Error){
+                throw (Error)error;
+            }
+        } else {
+            resumeLater(wakeDelay);
+        }
+    }
+
+    private void resumeLater(long ms){
+        StaticLayer.SetFutureRunnable(ms, new Runnable() {
+
+            public void run() {
+                toScript.release();
+                toServer.acquireUninterruptibly();
+                if(!finished){
+                    resumeLater(wakeDelay);
+                } else if(error instanceof ConfigRuntimeException){
+                    ConfigRuntimeException.React((ConfigRuntimeException)error);
+                } else if(error != null){
+                    Static.getLogger().log(Level.SEVERE, "An unexpected exception occured during the execution of a script.", error);
+                }
+            }
+        });
+    }
+
+    private void checkpoint(){
+        if(Thread.currentThread() != thread){
+            //This budget has finished (a closure can outlive the script that made it),
+            //or this isn't the thread it was started on.
+            return;
+        }
+        if(System.nanoTime() - sliceStart < budget){
+            return;
+        }
+        pause(0);
+    }
+
+    /**
+     * Hands control back to the server, and waits until the server resumes this script,
+     * which it will do after the given number of milliseconds, or on the next tick.
+     */
+    private void pause(long ms){
+        wakeDelay = ms;
+        toServer.release();
+        toScript.acquireUninterruptibly();
+        sliceStart = System.nanoTime();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.Construct;
+
+/**
+ * break(), continue() and return() don't throw exceptions, they record what they
+ * want to happen here instead. While something is pending, Script.eval doesn't
+ * evaluate anything else, so the code unwinds back up to the loop or procedure
+ * that the request is meant for, which picks it up and clears it. The same
+ * FlowControl is shared by an environment and all its clones, so that, for instance,
+ * a break can still make its way out of a procedure, the same way it always has.
+ * @author Layton
+ */
+public final class FlowControl {
+
+    public enum Type {
+        BREAK,
+        CONTINUE,
+        RETURN
+    }
+
+    private Type type = null;
+    private int times;
+    private Construct ret;
+
+    /**
+     * Returns true if a break, continue or return is waiting to be handled.
+     * @return
+     */
+    public boolean isPending(){
+        return type != null;
+    }
+
+    /**
+     * Returns what is waiting to be handled, or null if nothing is.
+     * @return
+     */
+    public Type getType(){
+        return type;
+    }
+
+    /**
+     * The number of loops that are left to break out of, or iterations left to skip.
+     * @return
+     */
+    public int getTimes(){
+        return times;
+    }
+
+    public void setTimes(int times){
+        this.times = times;
+    }
+
+    public Construct getReturn(){
+        return ret;
+    }
+
+    public void doBreak(int times){
+        this.type = Type.BREAK;
+        this.times = times;
+    }
+
+    public void doContinue(int times){
+        this.type = Type.CONTINUE;
+        this.times = times;
+    }
+
+    public void doReturn(Construct ret){
+        this.type = Type.RETURN;
+        this.ret = ret;
+    }
+
+    /**
+     * Called by a loop when it stops because something is pending. If it is a break,
+     * one loop has now been broken out of, and if that was the last one, the break
+     * has been handled. A return is left for the procedure to handle.
+     */
+    public void exitLoop(){
+        if(type == Type.BREAK){
+            if(times > 1){
+                times--;
+            } else {
+                clear();
+            }
+        }
+    }
+
+    /**
+     * Called once whatever was pending has been handled.
+     */
+    public void clear(){
+        type = null;
+        ret = null;
+    }
+}
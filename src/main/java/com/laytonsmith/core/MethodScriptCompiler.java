@@ -7,8 +7,13 @@ package com.laytonsmith.core;
 import com.laytonsmith.core.constructs.Token.TType;
 import com.laytonsmith.core.constructs.*;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.BasicLogic;
+import com.laytonsmith.core.functions.Function;
 import com.laytonsmith.core.functions.FunctionList;
 import com.laytonsmith.core.functions.IncludeCache;
+import com.laytonsmith.core.functions.Sandbox;
+import com.laytonsmith.core.functions.SlotTable;
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -783,9 +788,7 @@ public class MethodScriptCompiler {
             } else if (t.type.equals(TType.FUNC_NAME)) {
                 CFunction func = new CFunction(t.val(), t.target);
                 //This will throw an exception for us if the function doesn't exist
-                if (!func.val().matches("^_[^_].*")) {
-                    FunctionList.getFunction(func);
-                }
+                func.bind();
                 GenericTreeNode<Construct> f = new GenericTreeNode<Construct>(func);
                 tree.addChild(f);
                 constructCount.push(new AtomicInteger(0));
@@ -825,7 +828,7 @@ public class MethodScriptCompiler {
                 }
                 //Check argument number now
                 if (tree.getData().val() != null) {
-                    if (!tree.getData().val().matches("^_[^_].*")) {
+                    if (!CFunction.IsProcedureName(tree.getData().val())) {
                         Integer[] numArgs = FunctionList.getFunction(tree.getData()).numArgs();
                         if (!Arrays.asList(numArgs).contains(Integer.MAX_VALUE) && !Arrays.asList(numArgs).contains(tree.getChildren().size())) {
                             throw new ConfigCompileException("Incorrect number of arguments passed to " + tree.getData().val(), tree.getData().getTarget());
@@ -874,9 +877,240 @@ public class MethodScriptCompiler {
         if (parens != 0) {
             throw new ConfigCompileException("Mismatched parenthesis", t.target);
         }
+        rewriteAutoconcats(tree);
+        bindUnit(Arrays.asList(tree), new SlotTable());
+        optimize(tree);
         return tree;
     }
 
+    /**
+     * Resolves the operator precedence of all the __autoconcat__ nodes in the tree, so that
+     * this doesn't have to happen each time the code is run. An __autoconcat__ that reduces
+     * to a single node is replaced by that node, and one that doesn't is replaced by an
+     * sconcat. The children of cc are left alone, since cc flattens __autoconcat__ nodes
+     * itself, and needs the original symbols.
+     * @param node 
+     */
+    private static void rewriteAutoconcats(GenericTreeNode<Construct> node) {
+        boolean isCC = node.getData() instanceof CFunction && node.getData().val().equals("cc");
+        for (int i = 0; i < node.getNumberOfChildren(); i++) {
+            GenericTreeNode<Construct> child = node.getChildAt(i);
+            rewriteAutoconcats(child);
+            if (isCC || !(child.getData() instanceof CFunction) || !child.getData().val().equals("__autoconcat__")) {
+                continue;
+            }
+            List<GenericTreeNode<Construct>> list;
+            try {
+                list = Sandbox.__autoconcat__.rewrite(new ArrayList<GenericTreeNode<Construct>>(child.getChildren()), child.getData().getTarget());
+            } catch (IndexOutOfBoundsException e) {
+                //A dangling operator. Leave it as is, and let it fail at runtime, as it always has.
+                continue;
+            }
+            if (list.size() == 1) {
+                node.getChildren().set(i, list.get(0));
+            } else {
+                GenericTreeNode<Construct> sconcat = new GenericTreeNode<Construct>(new CFunction("sconcat", child.getData().getTarget()));
+                sconcat.setChildren(list);
+                node.getChildren().set(i, sconcat);
+            }
+        }
+    }
+
+    /**
+     * Binds all the function nodes in one compilation unit that haven't been bound yet,
+     * which is the case for the nodes the compiler itself generates, such as __autoconcat__,
+     * and gives each variable its slot in the unit's table. After this, the interpreter
+     * never needs to look a function or variable up by name.
+     * 
+     * The bodies of procedures and event handlers are units of their own, with their own
+     * tables. Their parameters are set by name when they are called. Closures
+     * are too, but a closure runs in a copy of the frame it was created in, so its table
+     * extends the table of the unit around it, and is only made once that table is complete.
+     * @param nodes
+     * @param slots
+     * @throws ConfigCompileException 
+     */
+    private static void bindUnit(List<GenericTreeNode<Construct>> nodes, SlotTable slots) throws ConfigCompileException {
+        List<GenericTreeNode<Construct>> closures = new ArrayList<GenericTreeNode<Construct>>();
+        for (GenericTreeNode<Construct> node : nodes) {
+            bind(node, slots, closures);
+        }
+        for (GenericTreeNode<Construct> closure : closures) {
+            bindUnit(closure.getChildren(), new SlotTable(slots));
+        }
+    }
+
+    private static void bind(GenericTreeNode<Construct> node, SlotTable slots, List<GenericTreeNode<Construct>> closures) throws ConfigCompileException {
+        if (node.getData() instanceof CFunction) {
+            ((CFunction) node.getData()).bind();
+            String name = node.getData().val();
+            if (name.equals("closure")) {
+                closures.add(node);
+                return;
+            } else if ((name.equals("proc") || name.equals("bind")) && node.getNumberOfChildren() > 0) {
+                //Everything but the body is run where the proc or bind is
+                int last = node.getNumberOfChildren() - 1;
+                for (int i = 0; i < last; i++) {
+                    bind(node.getChildAt(i), slots, closures);
+                }
+                bindUnit(Arrays.asList(node.getChildAt(last)), new SlotTable());
+                return;
+            }
+        } else if (node.getData() instanceof IVariable) {
+            ((IVariable) node.getData()).bind(slots);
+        }
+        for (GenericTreeNode<Construct> child : node.getChildren()) {
+            bind(child, slots, closures);
+        }
+    }
+
+    /**
+     * Runs the functions that can be optimized, and whose arguments are all constants,
+     * replacing the call with the result, and removes the branches of if and ifelse that
+     * can never be run. This works from the bottom up, so optimized arguments may in turn
+     * allow the calls they are passed to to be optimized.
+     * @param node 
+     */
+    private static void optimize(GenericTreeNode<Construct> node) {
+        for (int i = 0; i < node.getNumberOfChildren(); i++) {
+            GenericTreeNode<Construct> child = node.getChildAt(i);
+            optimize(child);
+            if (child.getData() instanceof CFunction) {
+                GenericTreeNode<Construct> replacement = optimizeFunction(child);
+                if (replacement != child) {
+                    node.getChildren().set(i, replacement);
+                }
+            }
+        }
+    }
+
+    private static GenericTreeNode<Construct> optimizeFunction(GenericTreeNode<Construct> node) {
+        CFunction cf = (CFunction) node.getData();
+        Function f = cf.getFunction();
+        if (f == null) {
+            //A procedure
+            return node;
+        }
+        if (f instanceof BasicLogic._if) {
+            return pruneIf(node);
+        }
+        if (f instanceof BasicLogic.ifelse) {
+            return pruneIfelse(node);
+        }
+        if (!f.canOptimize()) {
+            return node;
+        }
+        Construct[] args = new Construct[node.getNumberOfChildren()];
+        for (int i = 0; i < args.length; i++) {
+            if (!isConstant(node.getChildAt(i))) {
+                return node;
+            }
+            args[i] = node.getChildAt(i).getData();
+        }
+        try {
+            Construct ret = f.optimize(cf.getTarget(), args);
+            if (ret != null && isConstant(ret)) {
+                return new GenericTreeNode<Construct>(ret);
+            }
+        } catch (ConfigRuntimeException e) {
+            //It will fail at runtime too, but that's where the error belongs.
+        }
+        return node;
+    }
+
+    private static GenericTreeNode<Construct> pruneIf(GenericTreeNode<Construct> node) {
+        if (!isConstant(node.getChildAt(0))) {
+            return node;
+        }
+        boolean condition;
+        try {
+            condition = Static.getBoolean(node.getChildAt(0).getData());
+        } catch (ConfigRuntimeException e) {
+            return node;
+        }
+        GenericTreeNode<Construct> branch;
+        if (condition) {
+            branch = node.getChildAt(1);
+        } else if (node.getNumberOfChildren() == 3) {
+            branch = node.getChildAt(2);
+        } else {
+            branch = new GenericTreeNode<Construct>(new CVoid(node.getData().getTarget()));
+        }
+        return unwrapBranch(node, branch);
+    }
+
+    private static GenericTreeNode<Construct> pruneIfelse(GenericTreeNode<Construct> node) {
+        if (node.getNumberOfChildren() < 2) {
+            //Let it fail at runtime
+            return node;
+        }
+        List<GenericTreeNode<Construct>> children = new ArrayList<GenericTreeNode<Construct>>();
+        int i = 0;
+        for (; i <= node.getNumberOfChildren() - 2; i += 2) {
+            GenericTreeNode<Construct> statement = node.getChildAt(i);
+            GenericTreeNode<Construct> code = node.getChildAt(i + 1);
+            if (isConstant(statement)) {
+                boolean condition;
+                try {
+                    condition = Static.getBoolean(statement.getData());
+                } catch (ConfigRuntimeException e) {
+                    return node;
+                }
+                if (!condition) {
+                    //This branch can never run
+                    continue;
+                }
+                if (children.isEmpty()) {
+                    //This is the first branch that can run, and it always will
+                    return unwrapBranch(node, code);
+                }
+                if (code.getData() instanceof IVariable) {
+                    //The else is resolved differently than the other branches
+                    return node;
+                }
+                //Everything after this is unreachable, so this becomes the else
+                children.add(code);
+                break;
+            }
+            children.add(statement);
+            children.add(code);
+        }
+        if (i > node.getNumberOfChildren() - 2 && node.getNumberOfChildren() % 2 == 1) {
+            children.add(node.getChildAt(node.getNumberOfChildren() - 1));
+        }
+        if (children.isEmpty()) {
+            return new GenericTreeNode<Construct>(new CVoid(node.getData().getTarget()));
+        }
+        if (children.size() == 1) {
+            return unwrapBranch(node, children.get(0));
+        }
+        node.setChildren(children);
+        return node;
+    }
+
+    /**
+     * Returns the branch that should replace the given if node. Variables must stay wrapped,
+     * since the if resolves them, but the function it is passed to may not.
+     */
+    private static GenericTreeNode<Construct> unwrapBranch(GenericTreeNode<Construct> node, GenericTreeNode<Construct> branch) {
+        if (branch.getData() instanceof IVariable) {
+            return node;
+        }
+        return branch;
+    }
+
+    /**
+     * Returns true if this node is an atomic, immutable value that is known at compile time.
+     */
+    private static boolean isConstant(GenericTreeNode<Construct> node) {
+        return !node.hasChildren() && isConstant(node.getData());
+    }
+
+    private static boolean isConstant(Construct c) {
+        return c instanceof CString || c instanceof CInt || c instanceof CDouble
+                || c instanceof CBoolean || c instanceof CNull;
+    }
+
     /**
      * Executes a pre-compiled MethodScript, given the specified Script
      * environment. Both done and script may be null, and if so, reasonable
@@ -895,6 +1129,10 @@ public class MethodScriptCompiler {
         Construct returnable = null;
         for (GenericTreeNode<Construct> gg : root.getChildren()) {
             Construct retc = script.eval(gg, env);
+            if (env.GetFlowControl().isPending()) {
+                //Leave it for whatever is above us to handle
+                return new CVoid(Target.UNKNOWN);
+            }
             if (root.getNumberOfChildren() == 1) {
                 returnable = retc;
             }
@@ -912,14 +1150,45 @@ public class MethodScriptCompiler {
         return Static.resolveConstruct(b.toString().trim(), Target.UNKNOWN);
     }
 
-    public static void registerAutoIncludes(Env env, Script s) {
+    private static volatile Map<String, Procedure> autoIncludeProcs = null;
+
+    /**
+     * Runs the auto includes, and keeps the procedures they define, so that
+     * registerAutoIncludes doesn't have to run them again for every script. This
+     * should be called each time the aliases are reloaded.
+     * @param autoIncludes The auto includes found in the local packages. auto_include.ms
+     * is always included first, if it exists.
+     */
+    public static void compileAutoIncludes(List<File> autoIncludes) {
+        Env env = new Env();
+        List<File> files = new ArrayList<File>();
         File auto_include = new File("plugins/CommandHelper/auto_include.ms");
         if (auto_include.exists()) {
-            MethodScriptCompiler.execute(IncludeCache.get(auto_include, new Target(0, auto_include, 0)), env, null, s);
+            files.add(auto_include);
+        }
+        if (autoIncludes != null) {
+            files.addAll(autoIncludes);
+        }
+        for (File f : files) {
+            try {
+                MethodScriptCompiler.execute(IncludeCache.get(f, new Target(0, f, 0)), env, null, null);
+            } catch (ConfigRuntimeException e) {
+                ConfigRuntimeException.React(e);
+            }
         }
+        autoIncludeProcs = Collections.unmodifiableMap(new HashMap<String, Procedure>(env.GetProcs()));
+    }
 
-        for (File f : Static.getAliasCore().autoIncludes) {
-            MethodScriptCompiler.execute(IncludeCache.get(f, new Target(0, f, 0)), env, null, s);
+    /**
+     * Makes the procedures defined in the auto includes available in the given
+     * environment. The auto includes are only run once, by compileAutoIncludes.
+     * @param env
+     * @param s 
+     */
+    public static void registerAutoIncludes(Env env, Script s) {
+        if (autoIncludeProcs == null) {
+            compileAutoIncludes(Static.getAliasCore().autoIncludes);
         }
+        env.AddProcs(autoIncludeProcs);
     }    
 }
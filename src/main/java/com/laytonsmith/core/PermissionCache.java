@@ -0,0 +1,105 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the permission decisions made for each player, so that the permissions
+ * plugin only has to be asked once per player for each function and label. A player's
+ * decisions are forgotten when they join or quit, and all decisions are forgotten when
+ * the aliases are reloaded, or clear_permission_cache() is run.
+ * @author Layton
+ */
+public class PermissionCache {
+
+    /**
+     * The "function" name under which the label group checks in Script.run are stored.
+     * It can't clash with a real function, since function names can't contain spaces.
+     */
+    public static final String ALIAS = "alias label";
+
+    //player -> label -> function -> decision
+    private static final Map<String, Map<String, Map<String, Boolean>>> cache
+            = new ConcurrentHashMap<String, Map<String, Map<String, Boolean>>>();
+    private static final AtomicLong hits = new AtomicLong(0);
+    private static final AtomicLong misses = new AtomicLong(0);
+
+    private PermissionCache(){}
+
+    /**
+     * Returns the cached decision for this player, function and label, or null if
+     * there isn't one yet.
+     * @param player
+     * @param function
+     * @param label May be null
+     * @return
+     */
+    public static Boolean Get(String player, String function, String label){
+        Boolean decision = null;
+        Map<String, Map<String, Boolean>> labels = cache.get(player);
+        if(labels != null){
+            Map<String, Boolean> functions = labels.get(label == null ? "" : label);
+            if(functions != null){
+                decision = functions.get(function);
+            }
+        }
+        if(decision == null){
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return decision;
+    }
+
+    public static void Put(String player, String function, String label, boolean decision){
+        Map<String, Map<String, Boolean>> labels = cache.get(player);
+        if(labels == null){
+            labels = new ConcurrentHashMap<String, Map<String, Boolean>>();
+            cache.put(player, labels);
+        }
+        String l = label == null ? "" : label;
+        Map<String, Boolean> functions = labels.get(l);
+        if(functions == null){
+            functions = new ConcurrentHashMap<String, Boolean>();
+            labels.put(l, functions);
+        }
+        functions.put(function, decision);
+    }
+
+    /**
+     * Forgets all the decisions made for the given player.
+     * @param player
+     */
+    public static void Clear(String player){
+        cache.remove(player);
+    }
+
+    /**
+     * Forgets all the decisions made for all players.
+     */
+    public static void ClearAll(){
+        cache.clear();
+    }
+
+    /**
+     * The number of times a decision was found in the cache.
+     * @return
+     */
+    public static long Hits(){
+        return hits.get();
+    }
+
+    /**
+     * The number of times a decision wasn't found in the cache, and had to be
+     * worked out.
+     * @return
+     */
+    public static long Misses(){
+        return misses.get();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CDeque;
+import com.laytonsmith.core.constructs.CRankedMap;
+import com.laytonsmith.core.constructs.CSet;
+import com.laytonsmith.core.constructs.Construct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the values most recently read from the persistance database, already decoded,
+ * so that values which are read over and over don't have to be decoded every time. A key
+ * is forgotten whenever a value is stored under it, and the least recently used key is
+ * forgotten once there are more than SIZE of them.
+ *
+ * Since scripts may change the values they get back, the cache never hands out the value
+ * it holds, only a copy of it. For arrays without arrays inside them, that's cheap, since
+ * the copy shares its storage with the original until one of them is changed.
+ * @author Layton
+ */
+public class PersistanceCache {
+
+    private static final int SIZE = 512;
+
+    private static final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true){
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > SIZE;
+        }
+
+    };
+    /**
+     * Counts the keys that have been forgotten, so that a value that was read from the database
+     * before its key was written to isn't put in the cache after the write.
+     */
+    private static long generation = 0;
+
+    private PersistanceCache(){}
+
+    /**
+     * Returns a copy of the cached value for this key, or null if it isn't cached.
+     * @param key
+     * @return
+     */
+    public static Construct Get(String key){
+        Entry e;
+        synchronized(cache){
+            e = cache.get(key);
+        }
+        if(e == null){
+            return null;
+        }
+        if(e.flat){
+            try {
+                return ((CArray) e.value).clone();
+            } catch (CloneNotSupportedException ex) {
+                throw new Error(ex);
+            }
+        }
+        return Copy(e.value);
+    }
+
+    /**
+     * Returns the current generation, which should be got before a value is read from the
+     * database, and then passed to Put.
+     * @return
+     */
+    public static long Generation(){
+        synchronized(cache){
+            return generation;
+        }
+    }
+
+    /**
+     * Caches a copy of the value, unless a key has been forgotten since the given generation,
+     * in which case the value may be out of date already.
+     * @param key
+     * @param c
+     * @param generation
+     */
+    public static void Put(String key, Construct c, long generation){
+        Entry e = new Entry(Copy(c), IsFlat(c));
+        synchronized(cache){
+            if(PersistanceCache.generation == generation){
+                cache.put(key, e);
+            }
+        }
+    }
+
+    /**
+     * Forgets the value for this key. This must be called whenever the value is changed.
+     * @param key
+     */
+    public static void Invalidate(String key){
+        synchronized(cache){
+            cache.remove(key);
+            generation++;
+        }
+    }
+
+    /**
+     * Forgets all the values.
+     */
+    public static void ClearAll(){
+        synchronized(cache){
+            cache.clear();
+            generation++;
+        }
+    }
+
+    /**
+     * Returns true if the value is an array with no containers inside it, in which case
+     * cloning it is enough to copy it.
+     * @param c
+     * @return
+     */
+    private static boolean IsFlat(Construct c){
+        if(!(c instanceof CArray)){
+            return false;
+        }
+        CArray.Cursor cursor = ((CArray) c).cursor(c.getTarget());
+        while(cursor.next()){
+            if(IsContainer(cursor.value())){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean IsContainer(Construct c){
+        return c instanceof CArray || c instanceof CDeque || c instanceof CSet || c instanceof CRankedMap;
+    }
+
+    /**
+     * Copies the value deeply enough that changing the copy, or anything inside it, can't
+     * change the original.
+     * @param c
+     * @return
+     */
+    private static Construct Copy(Construct c){
+        try {
+            if(c instanceof CArray){
+                CArray original = (CArray) c;
+                CArray copy = original.clone();
+                CArray.Cursor cursor = original.cursor(c.getTarget());
+                while(cursor.next()){
+                    if(IsContainer(cursor.value())){
+                        if(original.inAssociativeMode()){
+                            copy.set(cursor.key(), Copy(cursor.value()));
+                        } else {
+                            copy.set(cursor.index(), Copy(cursor.value()));
+                        }
+                    }
+                }
+                return copy;
+            } else if(c instanceof CDeque){
+                CDeque original = (CDeque) c;
+                CDeque copy = new CDeque(original.capacity(), c.getTarget());
+                for(Construct value : original){
+                    copy.pushBack(Copy(value));
+                }
+                return copy;
+            } else if(c instanceof CSet || c instanceof CRankedMap){
+                //These can only hold scalars
+                return c.clone();
+            }
+            //Everything else can't be changed
+            return c;
+        } catch (CloneNotSupportedException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    private static class Entry {
+
+        private final Construct value;
+        private final boolean flat;
+
+        Entry(Construct value, boolean flat){
+            this.value = value;
+            this.flat = flat;
+        }
+    }
+}
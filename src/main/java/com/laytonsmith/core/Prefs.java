@@ -29,7 +29,11 @@ public class Prefs {
         PROFILING_FILE("profiling-file"),
         SHOW_SPLASH_SCREEN("show-splash-screen"),
         USE_COLORS("use-colors"),
-        HALT_ON_FAILURE("halt-on-failure");
+        HALT_ON_FAILURE("halt-on-failure"),
+        BYTECODE_COMPILE_THRESHOLD("bytecode-compile-threshold"),
+        EXECUTION_BUDGET("execution-budget"),
+        PERSISTANCE_FLUSH_INTERVAL("persistance-flush-interval"),
+        PERSISTANCE_ENGINE("persistance-engine");
         String name;
         private PNames(String name){
             this.name = name;
@@ -62,6 +66,10 @@ public class Prefs {
         a.add(new Preference(PNames.SHOW_SPLASH_SCREEN.config(), "true", Preferences.Type.BOOLEAN, "Whether or not to show the splash screen at server startup"));
         a.add(new Preference(PNames.USE_COLORS.config(), (TermColors.SYSTEM == TermColors.SYS.WINDOWS ? "false" : "true"), Preferences.Type.BOOLEAN, "Whether or not to use console colors. If this is a Windows machine, defaults to false, however, it can be toggled manually, and will then respect your setting."));
         a.add(new Preference(PNames.HALT_ON_FAILURE.config(), "false", Preferences.Type.BOOLEAN, "Whether or not to halt compilation of pure mscript files if a compilation failure occurs in any one of the files."));
+        a.add(new Preference(PNames.BYTECODE_COMPILE_THRESHOLD.config(), "0", Preferences.Type.INT, "(Experimental) Once a procedure, alias or event handler has been run this many times, it is compiled to java bytecode, which runs faster than the interpreter. If this is 0, nothing is ever compiled."));
+        a.add(new Preference(PNames.EXECUTION_BUDGET.config(), "0", Preferences.Type.INT, "The number of milliseconds an alias may run per server tick. Once a script's loops have run for longer than this, the script is paused, and picks up where it left off on the next tick, so that long running scripts don't lag the server. Event handlers always run to completion, since the event can't be changed once the handler returns. If this is 0, scripts always run to completion immediately."));
+        a.add(new Preference(PNames.PERSISTANCE_FLUSH_INTERVAL.config(), "5000", Preferences.Type.INT, "The number of milliseconds that changes made with store_value and clear_value are held in memory before the persistance database is written out to disk. All the changes made in that time are written out together, in the background, so storing values doesn't lag the server. The database is always written out when the server shuts down, but changes made in the last few seconds before a crash may be lost. Failures to write in the background are only logged to the console. If this is 0, the database is written out every time a value is stored, and store_value reports any failure to the script. Used by the serialization and sqlite engines."));
+        a.add(new Preference(PNames.PERSISTANCE_ENGINE.config(), "serialization", Preferences.Type.STRING, "How the persistance database is stored. \"serialization\" keeps everything in persistance.ser, which is rewritten in full whenever it is written out. \"log\" appends each change to the files in the persistance folder, so storing a value costs the same no matter how big the database is, and the files are tidied up in the background. \"sqlite\" keeps the values in the SQLite database persistance.db, and only reads values when they are asked for, so very large databases don't have to fit in memory; the changes made during each flush interval are written in one transaction. The first time the log or sqlite engine is used, the values in persistance.ser are copied into it, and persistance.ser is renamed to persistance.ser.migrated."));
         CommandHelperPlugin.prefs = new Preferences("CommandHelper", Static.getLogger(), a);
     }
     
@@ -132,4 +140,20 @@ public class Prefs {
     public static Boolean HaltOnFailure() {
         return (Boolean)pref(PNames.HALT_ON_FAILURE);
     }
+    
+    public static Integer BytecodeCompileThreshold() {
+        return (Integer)pref(PNames.BYTECODE_COMPILE_THRESHOLD);
+    }
+    
+    public static Integer ExecutionBudget() {
+        return (Integer)pref(PNames.EXECUTION_BUDGET);
+    }
+    
+    public static Integer PersistanceFlushInterval() {
+        return (Integer)pref(PNames.PERSISTANCE_FLUSH_INTERVAL);
+    }
+    
+    public static String PersistanceEngine() {
+        return (String)pref(PNames.PERSISTANCE_ENGINE);
+    }
 }
@@ -4,9 +4,9 @@
  */
 package com.laytonsmith.core;
 
+import com.laytonsmith.core.bytecode.HotTree;
 import com.laytonsmith.core.constructs.*;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
-import com.laytonsmith.core.exceptions.FunctionReturnException;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import com.laytonsmith.core.functions.IVariableList;
 import com.sk89q.util.StringUtil;
@@ -24,7 +24,11 @@ public class Procedure implements Cloneable {
     private Map<String, IVariable> varList;
     private Map<String, Construct> originals = new HashMap<String, Construct>();
     private List<IVariable> varIndex = new ArrayList<IVariable>();
+    private List<IVariable> originalVars = new ArrayList<IVariable>();
+    private List<Construct> originalValues = new ArrayList<Construct>();
+    private static final IVariable ARGUMENTS = new IVariable("@arguments", Target.UNKNOWN);
     private GenericTreeNode<Construct> tree;
+    private HotTree hot;
 
     
     public Procedure(String name, List<IVariable> varList, GenericTreeNode<Construct> tree, Target t){
@@ -35,7 +39,12 @@ public class Procedure implements Cloneable {
             this.varIndex.add(var);
             this.originals.put(var.getName(), var.ival());
         }        
+        for(String key : originals.keySet()){
+            originalVars.add(this.varList.get(key));
+            originalValues.add(originals.get(key));
+        }
         this.tree = tree;
+        this.hot = new HotTree(tree);
         if(!this.name.matches("^_[^_].*")){
             throw new ConfigRuntimeException("Procedure names must start with an underscore", ExceptionType.FormatException, t);
         }
@@ -55,14 +64,19 @@ public class Procedure implements Cloneable {
         for(GenericTreeNode<Construct> arg : args){
             list.add(env.GetScript().seval(arg, env));
         }
+        if(env.GetFlowControl().isPending()){
+            return new CVoid(Target.UNKNOWN);
+        }
         return execute(list, env);
     }
     public Construct execute(List<Construct> args, Env env){
+        //The parameters are set by name, since they belong to the code around the proc,
+        //and the frame should take on the slots of the proc's body
         env.SetVarList(new IVariableList());
         CArray array = new CArray(Target.UNKNOWN);        
-        for(String key : originals.keySet()){
-            Construct c = originals.get(key);
-            env.GetVarList().set(new IVariable(key, c, Target.UNKNOWN));
+        for(int i = 0; i < originalVars.size(); i++){
+            Construct c = originalValues.get(i);
+            env.GetVarList().set(new IVariable(originalVars.get(i).getName(), c, Target.UNKNOWN));
             array.push(c);
         }
         GenericTree<Construct> root = new GenericTree<Construct>();
@@ -72,16 +86,18 @@ public class Procedure implements Cloneable {
             Construct c = args.get(i);
             array.set(i, c);
             if(varIndex.size() > i){
-                String varname = varIndex.get(i).getName();
-                env.GetVarList().set(new IVariable(varname, c, c.getTarget()));
+                env.GetVarList().set(new IVariable(varIndex.get(i).getName(), c, Target.UNKNOWN));
             }
         }
-        env.GetVarList().set(new IVariable("@arguments", array, Target.UNKNOWN));
+        env.GetVarList().setValue(ARGUMENTS, array);
         
-        try{
-            fakeScript.eval(tree, env);
-        } catch(FunctionReturnException e){
-            return e.getReturn();
+        hot.invoked();
+        fakeScript.eval(tree, env);
+        FlowControl flow = env.GetFlowControl();
+        if(flow.getType() == FlowControl.Type.RETURN){
+            Construct ret = flow.getReturn();
+            flow.clear();
+            return ret;
         }
         return new CVoid(Target.UNKNOWN);
     }
@@ -91,6 +107,7 @@ public class Procedure implements Cloneable {
         Procedure clone = (Procedure) super.clone();
         if(this.varList != null) clone.varList = new HashMap<String, IVariable>(this.varList);
         if(this.tree != null) clone.tree = this.tree.clone();
+        clone.hot = new HotTree(clone.tree);
         return clone;
     }
 }
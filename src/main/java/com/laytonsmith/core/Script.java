@@ -6,6 +6,8 @@ package com.laytonsmith.core;
 
 import com.laytonsmith.abstraction.MCCommandSender;
 import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.core.bytecode.CompiledCode;
+import com.laytonsmith.core.bytecode.HotTree;
 import com.laytonsmith.core.constructs.Construct.ConstructType;
 import com.laytonsmith.core.constructs.Token.TType;
 import com.laytonsmith.core.constructs.*;
@@ -38,12 +40,14 @@ public class Script {
     private List<Token> fullRight;
     private List<Construct> cleft;
     private List<GenericTreeNode<Construct>> cright;
+    private List<HotTree> hot;
     //This should be null if we are running in non-alias mode
     private Map<String, Variable> left_vars;
     boolean hasBeenCompiled = false;
     boolean compilerError = false;
     private String label;
     private Env CurrentEnv;
+    private boolean unbudgeted = false;
 
     @Override
     public String toString() {
@@ -56,7 +60,7 @@ public class Script {
     }
 
     private Procedure getProc(String name) {
-        return CurrentEnv.GetProcs().get(name);
+        return CurrentEnv.GetProc(name);
     }
     
     public Env getCurrentEnv(){
@@ -67,6 +71,14 @@ public class Script {
         return label;
     }
     
+    /**
+     * Makes this script always run to completion, instead of being limited by the
+     * execution-budget preference.
+     */
+    public void setUnbudgeted(){
+        this.unbudgeted = true;
+    }
+    
     public Script(List<Token> left, List<Token> right) {
         this.left = left;
         this.fullRight = right;
@@ -100,7 +112,7 @@ public class Script {
         return compilerError;
     }
 
-    public void run(final List<Variable> vars, Env myEnv, final MethodScriptComplete done) {
+    public void run(final List<Variable> vars, final Env myEnv, final MethodScriptComplete done) {
         //Some things, such as the label are determined at compile time
         this.CurrentEnv = myEnv;
         this.CurrentEnv.SetLabel(this.label);
@@ -120,23 +132,50 @@ public class Script {
         }
         if (p instanceof MCPlayer) {
             if (CurrentEnv.GetLabel() != null) {
-                PermissionsResolverManager perms = Static.getPermissionsResolverManager();
-                String[] groups = CurrentEnv.GetLabel().substring(1).split("/");
-                for (String group : groups) {
-                    if (group.startsWith("-") && perms.inGroup(((MCPlayer)p).getName(), group.substring(1))) {
-                        //negative permission
-                        throw new ConfigRuntimeException("You do not have permission to use that command", ExceptionType.InsufficientPermissionException,
-                                Target.UNKNOWN);
-                    } else if (perms.inGroup(((MCPlayer)p).getName(), group)) {
-                        //They do have permission.
-                        break;
+                String player = ((MCPlayer)p).getName();
+                Boolean allowed = PermissionCache.Get(player, PermissionCache.ALIAS, CurrentEnv.GetLabel());
+                if (allowed == null) {
+                    allowed = true;
+                    PermissionsResolverManager perms = Static.getPermissionsResolverManager();
+                    String[] groups = CurrentEnv.GetLabel().substring(1).split("/");
+                    for (String group : groups) {
+                        if (group.startsWith("-") && perms.inGroup(player, group.substring(1))) {
+                            //negative permission
+                            allowed = false;
+                            break;
+                        } else if (perms.inGroup(player, group)) {
+                            //They do have permission.
+                            break;
+                        }
                     }
+                    PermissionCache.Put(player, PermissionCache.ALIAS, CurrentEnv.GetLabel(), allowed);
+                }
+                if (!allowed) {
+                    throw new ConfigRuntimeException("You do not have permission to use that command", ExceptionType.InsufficientPermissionException,
+                            Target.UNKNOWN);
                 }
             }
         }
 
+        ExecutionBudget.Run(unbudgeted ? 0 : ExecutionBudget.DefaultBudget(), myEnv, new Runnable() {
+
+            public void run() {
+                runCode(vars, myEnv, done);
+            }
+        });
+    }
+    
+    private void runCode(List<Variable> vars, Env myEnv, MethodScriptComplete done){
+        MCCommandSender p = myEnv.GetCommandSender();
+        FlowControl flow = new FlowControl();
+        myEnv.SetFlowControl(flow);
         try {
-            for (GenericTreeNode<Construct> rootNode : cright) {
+            MethodScriptCompiler.registerAutoIncludes(myEnv, this);
+            for (int i = 0; i < cright.size() && !flow.isPending(); i++) {
+                GenericTreeNode<Construct> rootNode = cright.get(i);
+                if (hot != null) {
+                    hot.get(i).invoked();
+                }
                 GenericTree<Construct> tree = new GenericTree<Construct>();
                 tree.setRoot(rootNode);
                 for (GenericTreeNode<Construct> tempNode : tree.build(GenericTreeTraversalOrderEnum.PRE_ORDER)) {
@@ -150,34 +189,32 @@ public class Script {
                     }
                 }
                 
-                MethodScriptCompiler.registerAutoIncludes(CurrentEnv, this);
-                MethodScriptCompiler.execute(tree.getRoot(), CurrentEnv, done, this);
+                MethodScriptCompiler.execute(tree.getRoot(), myEnv, done, this);
             }
+            if (flow.getType() == FlowControl.Type.BREAK) {
+                if(p != null){
+                    p.sendMessage("The break() function must be used inside a for() or foreach() loop");
+                }
+                System.out.println("The break() function must be used inside a for() or foreach() loop");
+            } else if (flow.getType() == FlowControl.Type.CONTINUE) {
+                if(p != null){
+                    p.sendMessage("The continue() function must be used inside a for() or foreach() loop");
+                }
+                System.out.println("The continue() function must be used inside a for() or foreach() loop");
+            } else if (flow.getType() == FlowControl.Type.RETURN && myEnv.GetEvent() == null) {
+                //Event handlers are allowed to return early
+                if(p != null){
+                    p.sendMessage("The return() function must be used inside a procedure.");
+                }
+                System.out.println("The return() function must be used inside a procedure.");
+            }
+            flow.clear();
         } catch (ConfigRuntimeException ex) {
             //We don't know how to handle this really, so let's pass it up the chain.
             throw ex;
         } catch (CancelCommandException e) {
             //p.sendMessage(e.getMessage());
             //The message in the exception is actually empty
-        } catch (LoopBreakException e) {            
-            if(p != null){
-                p.sendMessage("The break() function must be used inside a for() or foreach() loop");
-            }
-            System.out.println("The break() function must be used inside a for() or foreach() loop");
-        } catch (LoopContinueException e) {
-            if(p != null){
-                p.sendMessage("The continue() function must be used inside a for() or foreach() loop");
-            }
-            System.out.println("The continue() function must be used inside a for() or foreach() loop");
-        } catch (FunctionReturnException e) {
-            if(myEnv.GetEvent() != null){
-                //Oh, we're running in an event handler. Those know how to catch it too.
-                throw e;
-            }
-            if(p != null){
-                p.sendMessage("The return() function must be used inside a procedure.");
-            }
-            System.out.println("The return() function must be used inside a procedure.");
         } catch (Throwable t) {
             System.out.println("An unexpected exception occured during the execution of a script.");
             t.printStackTrace();
@@ -200,18 +237,35 @@ public class Script {
         Construct ret = eval(c, env);
         if(ret instanceof IVariable){
             IVariable cur = (IVariable)ret;
-            return env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+            return env.GetVarList().getValue(cur);
         }
         return ret;
     }
 
     public Construct eval(GenericTreeNode<Construct> c, final Env env) throws CancelCommandException {
         final Construct m = c.getData();
+        if (env.GetFlowControl().isPending()) {
+            //Skip everything until the break, continue or return is handled
+            return new CVoid(m.getTarget());
+        }
         CurrentEnv = env;
         CurrentEnv.SetLabel(this.label);
         if (m.getCType() == ConstructType.FUNCTION) {
                 env.SetScript(this);
-                if (m.val().matches("^_[^_].*")) {
+                CFunction cf = (CFunction) m;
+                if (!cf.isBound()) {
+                    try{
+                        cf.bind();
+                    } catch(ConfigCompileException e){
+                        //Turn it into a config runtime exception. This shouldn't ever happen though.
+                        throw new ConfigRuntimeException("Unable to find function " + m.val(), m.getTarget());
+                    }
+                }
+                CompiledCode compiled = cf.getCompiled();
+                if (compiled != null) {
+                    return compiled.eval(cf.getCompiledUnit(), this, env);
+                }
+                if (cf.isProcedure()) {
                     //Not really a function, so we can't put it in Function.
                     Procedure p = getProc(m.val());
                     if (p == null) {
@@ -223,13 +277,7 @@ public class Script {
                     } catch(Exception e){}
                     return p.cexecute(c.getChildren(), newEnv);
                 }
-                final Function f;
-                try{
-                    f = FunctionList.getFunction(m);
-                } catch(ConfigCompileException e){
-                    //Turn it into a config runtime exception. This shouldn't ever happen though.
-                    throw new ConfigRuntimeException("Unable to find function " + m.val(), m.getTarget());
-                }
+                final Function f = cf.getFunction();
                 //We have special handling for loop and other control flow functions
                 if(f instanceof assign){
                     if(c.getChildAt(0).getData() instanceof CFunction){
@@ -243,46 +291,18 @@ public class Script {
                     }
                 }
                 
-                if(f.useSpecialExec()){
-                    return f.execs(m.getTarget(), env, this, c.getChildren().toArray(new GenericTreeNode[]{}));
+                if(cf.useSpecialExec()){
+                    return f.execs(m.getTarget(), env, this, c.getChildren().toArray(new GenericTreeNode[c.getNumberOfChildren()]));
                 }
 
-                ArrayList<Construct> args = new ArrayList<Construct>();
-                for (GenericTreeNode<Construct> c2 : c.getChildren()) {
-                    args.add(eval(c2, env));
-                }
-                if (f.isRestricted()) {
-                    boolean perm = Static.hasCHPermission(f.getName(), env);
-                    if (!perm) {
-                        throw new ConfigRuntimeException("You do not have permission to use the " + f.getName() + " function.",
-                                ExceptionType.InsufficientPermissionException, m.getTarget());
-                    }
+                Construct[] ca = new Construct[c.getNumberOfChildren()];
+                for (int i = 0; i < ca.length; i++) {
+                    ca[i] = eval(c.getChildAt(i), env);
                 }
-                Object[] a = args.toArray();
-                Construct[] ca = new Construct[a.length];
-                for (int i = 0; i < a.length; i++) {
-                    ca[i] = (Construct) a[i];
-                    //CArray, CBoolean, CDouble, CInt, CNull, CString, CVoid, CEntry, CLabel (only to sconcat).
-                    if (!(ca[i] instanceof CArray || ca[i] instanceof CBoolean || ca[i] instanceof CDouble
-                            || ca[i] instanceof CInt || ca[i] instanceof CNull
-                            || ca[i] instanceof CString || ca[i] instanceof CVoid 
-                            || ca[i] instanceof IVariable || ca[i] instanceof CEntry)
-                            && (!f.getName().equals("__autoconcat__") && (ca[i] instanceof CLabel))) {
-                        throw new ConfigRuntimeException("Invalid Construct (" 
-                                + ca[i].getClass() + ") being passed as an argument to a function (" 
-                                + f.getName() + ")", null, m.getTarget());
-                    }
-                    if(env.GetFlag("array_get_alt_mode") == Boolean.TRUE && i == 0){
-                        continue;
-                    }
-                    if(f.preResolveVariables() && ca[i] instanceof IVariable){
-                        IVariable cur = (IVariable)ca[i];
-                        ca[i] = env.GetVarList().get(cur.getName(), cur.getTarget()).ival();                        
-                    }
+                if (env.GetFlowControl().isPending()) {
+                    return new CVoid(m.getTarget());
                 }
-
-                Construct ret = f.exec(m.getTarget(), env, ca);
-                return ret;
+                return exec(cf, env, ca);
 
         } else if (m.getCType() == ConstructType.VARIABLE) {
             return Static.resolveConstruct(m.val(), m.getTarget());
@@ -291,6 +311,46 @@ public class Script {
         }
     }
 
+    /**
+     * Runs a function that doesn't use execs, given its already evaluated arguments.
+     * @param cf
+     * @param env
+     * @param ca
+     * @return 
+     */
+    private Construct exec(CFunction cf, Env env, Construct[] ca){
+        final Function f = cf.getFunction();
+        if (cf.isRestricted()) {
+            boolean perm = Static.hasCHPermission(f.getName(), env);
+            if (!perm) {
+                throw new ConfigRuntimeException("You do not have permission to use the " + f.getName() + " function.",
+                        ExceptionType.InsufficientPermissionException, cf.getTarget());
+            }
+        }
+        boolean arrayGetAltMode = env.GetFlag("array_get_alt_mode") == Boolean.TRUE;
+        for (int i = 0; i < ca.length; i++) {
+            //CArray, CBoolean, CDouble, CInt, CNull, CString, CVoid, CEntry, CLabel (only to sconcat).
+            if (!(ca[i] instanceof CArray || ca[i] instanceof CBoolean || ca[i] instanceof CDouble
+                    || ca[i] instanceof CInt || ca[i] instanceof CNull
+                    || ca[i] instanceof CString || ca[i] instanceof CVoid 
+                    || ca[i] instanceof IVariable || ca[i] instanceof CEntry)
+                    && (!cf.isAutoconcat() && (ca[i] instanceof CLabel))) {
+                throw new ConfigRuntimeException("Invalid Construct (" 
+                        + ca[i].getClass() + ") being passed as an argument to a function (" 
+                        + f.getName() + ")", null, cf.getTarget());
+            }
+            if(arrayGetAltMode && i == 0){
+                continue;
+            }
+            if(cf.preResolveVariables() && ca[i] instanceof IVariable){
+                IVariable cur = (IVariable)ca[i];
+                ca[i] = env.GetVarList().getValue(cur);                        
+            }
+        }
+
+        return f.exec(cf.getTarget(), env, ca);
+    }
+
     public boolean match(String command) {
         if(cleft == null){
             //The compilation error happened during the signature declaration, so 
@@ -588,8 +648,11 @@ public class Script {
         }
         right.add(temp);
         cright = new ArrayList<GenericTreeNode<Construct>>();
+        hot = new ArrayList<HotTree>();
         for (List<Token> l : right) {
-            cright.add(MethodScriptCompiler.compile(l));
+            GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(l);
+            cright.add(tree);
+            hot.add(new HotTree(tree));
         }
     }
 
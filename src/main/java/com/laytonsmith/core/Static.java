@@ -223,8 +223,8 @@ public class Static {
      * @return
      * @throws NotInitializedYetException 
      */
-    public static SerializedPersistance getPersistance() throws NotInitializedYetException {
-        SerializedPersistance p = com.laytonsmith.commandhelper.CommandHelperPlugin.persist;
+    public static Persistance getPersistance() throws NotInitializedYetException {
+        Persistance p = com.laytonsmith.commandhelper.CommandHelperPlugin.persist;
         if (p == null) {
             throw new NotInitializedYetException("The persistance framework has not been initialized yet");
         }
@@ -703,51 +703,65 @@ public class Static {
         } //else play nice :(
     }
 
+    /**
+     * Returns true if the player in this environment may use the given function. Decisions
+     * for players are cached in the PermissionCache.
+     * @param functionName
+     * @param env
+     * @return 
+     */
     public static boolean hasCHPermission(String functionName, Env env) {
         //The * label completely overrides everything
         if("*".equals(env.GetLabel())){
             return true;
         }
-        boolean perm = false;
+        if (env.GetCommandSender() == null
+                || env.GetCommandSender().isOp()) {
+            return true;
+        }
         PermissionsResolverManager perms = Static.getPermissionsResolverManager();
-        if (perms != null) {
-            if (env.GetCommandSender() instanceof MCPlayer) {
-                perm = perms.hasPermission(env.GetPlayer().getName(), "ch.func.use." + functionName)
-                        || perms.hasPermission(env.GetPlayer().getName(), "commandhelper.func.use." + functionName);
-                if (env.GetLabel() != null && env.GetLabel().startsWith("~")) {
-                    String[] groups = env.GetLabel().substring(1).split("/");
-                    for (String group : groups) {
-                        if (perms.inGroup(env.GetPlayer().getName(), group)) {
-                            perm = true;
-                            break;
-                        }
-                    }
-                } else {
-                    if (env.GetLabel() != null){
-                        if(env.GetLabel().contains(".")){
-                            //We are using a non-standard permission. Don't automatically
-                            //add CH's prefix
-                            if(perms.hasPermission(env.GetPlayer().getName(), env.GetLabel())){
-                                perm = true;
-                            }
-                        } else if((perms.hasPermission(env.GetPlayer().getName(), "ch.alias." + env.GetLabel()))
-                            || perms.hasPermission(env.GetPlayer().getName(), "commandhelper.alias." + env.GetLabel())) {
-                            perm = true;
-                        }
-                    }
+        if (perms == null) {
+            return true;
+        }
+        if (env.GetCommandSender() instanceof MCPlayer) {
+            String player = env.GetPlayer().getName();
+            Boolean cached = PermissionCache.Get(player, functionName, env.GetLabel());
+            if (cached != null) {
+                return cached;
+            }
+            boolean perm = hasCHPermission(perms, player, functionName, env.GetLabel());
+            PermissionCache.Put(player, functionName, env.GetLabel(), perm);
+            return perm;
+        } else if (env.GetCommandSender() instanceof MCConsoleCommandSender) {
+            return true;
+        }
+        return false;
+    }
+    
+    private static boolean hasCHPermission(PermissionsResolverManager perms, String player, String functionName, String label){
+        boolean perm = perms.hasPermission(player, "ch.func.use." + functionName)
+                || perms.hasPermission(player, "commandhelper.func.use." + functionName);
+        if (label != null && label.startsWith("~")) {
+            String[] groups = label.substring(1).split("/");
+            for (String group : groups) {
+                if (perms.inGroup(player, group)) {
+                    perm = true;
+                    break;
                 }
-            } else if (env.GetCommandSender() instanceof MCConsoleCommandSender) {
-                perm = true;
             }
         } else {
-            perm = true;
-        }
-        if (env.GetLabel() != null && env.GetLabel().equals("*")) {
-            perm = true;
-        }
-        if (env.GetCommandSender() == null
-                || env.GetCommandSender().isOp()) {
-            perm = true;
+            if (label != null){
+                if(label.contains(".")){
+                    //We are using a non-standard permission. Don't automatically
+                    //add CH's prefix
+                    if(perms.hasPermission(player, label)){
+                        perm = true;
+                    }
+                } else if((perms.hasPermission(player, "ch.alias." + label))
+                    || perms.hasPermission(player, "commandhelper.alias." + label)) {
+                    perm = true;
+                }
+            }
         }
         return perm;
     }
@@ -0,0 +1,247 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.bytecode;
+
+import com.laytonsmith.core.Env;
+import com.laytonsmith.core.GenericTreeNode;
+import com.laytonsmith.core.Script;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.CLabel;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Construct.ConstructType;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.functions.DataHandling;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+
+/**
+ * Turns a compiled tree into a java class, using javassist. Calls to normal functions
+ * (the ones that don't use execs) are compiled into direct calls to the function's exec,
+ * with the argument arrays built in place. The checks the interpreter makes before each
+ * call are decided here instead, so the generated code only checks permissions for
+ * restricted functions, only resolves the arguments that can be variables, and only
+ * checks for a pending break, continue or return if an argument could have caused one.
+ * Everything else, procedure calls and functions that need the code tree, such as the
+ * loops, are still run by the interpreter, but any normal function calls in their
+ * arguments are compiled separately, as their own units.
+ *
+ * Each compiled tree's class is defined in a class loader of its own, so the class can be
+ * unloaded once the tree is no longer used, for instance after the aliases are reloaded.
+ * @author Layton
+ */
+public class BytecodeCompiler {
+
+    private static final String CONSTRUCT = Construct.class.getName();
+    private static final AtomicInteger classCount = new AtomicInteger(0);
+    private static ClassPool pool = null;
+
+    private BytecodeCompiler(){}
+
+    private static synchronized ClassPool GetPool(){
+        if(pool == null){
+            pool = new ClassPool(true);
+            pool.insertClassPath(new ClassClassPath(CompiledCode.class));
+        }
+        return pool;
+    }
+
+    /**
+     * Compiles the given tree, and points the nodes at the top of each unit to the
+     * compiled code. If anything goes wrong, the tree is left as is, and will continue
+     * to be interpreted.
+     * @param root
+     * @return true if the tree was compiled
+     */
+    public static boolean Compile(GenericTreeNode<Construct> root){
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        List<GenericTreeNode<Construct>> units = new ArrayList<GenericTreeNode<Construct>>();
+        compiler.findUnits(root, false, units);
+        if(units.isEmpty()){
+            return false;
+        }
+        try{
+            CompiledCode code = compiler.generate(units);
+            for(int i = 0; i < units.size(); i++){
+                ((CFunction)units.get(i).getData()).setCompiled(code, i);
+            }
+            return true;
+        } catch(CannotCompileException e){
+            return false;
+        } catch(NotFoundException e){
+            return false;
+        } catch(IOException e){
+            return false;
+        } catch(InstantiationException e){
+            return false;
+        } catch(IllegalAccessException e){
+            return false;
+        } catch(LinkageError e){
+            //javassist isn't available, or the class couldn't be defined
+            return false;
+        }
+    }
+
+    private final List<GenericTreeNode<Construct>> nodes = new ArrayList<GenericTreeNode<Construct>>();
+
+    /**
+     * Returns true if this node is a call to a normal function, which can be compiled.
+     */
+    private static boolean isCompilable(GenericTreeNode<Construct> node){
+        if(!(node.getData() instanceof CFunction)){
+            return false;
+        }
+        CFunction cf = (CFunction)node.getData();
+        if(!cf.isBound() || cf.isProcedure() || cf.useSpecialExec() || cf.getCompiled() != null){
+            return false;
+        }
+        if(isArrayAssign(node)){
+            return false;
+        }
+        for(GenericTreeNode<Construct> child : node.getChildren()){
+            if(child.getData() instanceof CLabel){
+                //The interpreter refuses these, so let it
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if this is an assignment to an array element, which the interpreter
+     * handles specially: the array_get is run in a mode where it returns the array and
+     * index instead of the value, so nothing inside it can be compiled either.
+     */
+    private static boolean isArrayAssign(GenericTreeNode<Construct> node){
+        return ((CFunction)node.getData()).getFunction() instanceof DataHandling.assign && node.getNumberOfChildren() > 0
+                && node.getChildAt(0).getData() instanceof CFunction
+                && node.getChildAt(0).getData().val().equals("array_get");
+    }
+
+    private void findUnits(GenericTreeNode<Construct> node, boolean parentCompilable, List<GenericTreeNode<Construct>> units){
+        boolean compilable = isCompilable(node);
+        if(compilable && !parentCompilable){
+            units.add(node);
+        }
+        int first = 0;
+        if(node.getData() instanceof CFunction && isArrayAssign(node)){
+            first = 1;
+        }
+        for(int i = first; i < node.getNumberOfChildren(); i++){
+            findUnits(node.getChildAt(i), compilable, units);
+        }
+    }
+
+    private int index(GenericTreeNode<Construct> node){
+        nodes.add(node);
+        return nodes.size() - 1;
+    }
+
+    /**
+     * Returns the java expression that evaluates the given node.
+     */
+    private String expression(GenericTreeNode<Construct> node){
+        int i = index(node);
+        if(isCompilable(node)){
+            CFunction cf = (CFunction)node.getData();
+            StringBuilder args = new StringBuilder();
+            //If all the arguments are constants, none of them can be a break, continue or return
+            boolean constant = true;
+            if(node.hasChildren()){
+                args.append("new ").append(CONSTRUCT).append("[]{");
+                for(int j = 0; j < node.getNumberOfChildren(); j++){
+                    GenericTreeNode<Construct> child = node.getChildAt(j);
+                    if(j > 0){
+                        args.append(", ");
+                    }
+                    String arg = expression(child);
+                    if(child.getData() instanceof IVariable){
+                        if(cf.preResolveVariables()){
+                            arg = "value(" + (nodes.size() - 1) + ", $2)";
+                        }
+                    } else if(isDynamic(child)){
+                        constant = false;
+                        if(cf.preResolveVariables()){
+                            //The function might return a variable, as assign does
+                            arg = "resolve(" + arg + ", $2)";
+                        }
+                    }
+                    args.append(arg);
+                }
+                args.append("}");
+            } else {
+                args.append("new ").append(CONSTRUCT).append("[0]");
+            }
+            if(cf.isRestricted()){
+                return "restricted(" + i + ", $2, " + args + ")";
+            } else if(!constant){
+                return "call(" + i + ", $2, " + args + ")";
+            } else {
+                return "functions[" + i + "].exec(targets[" + i + "], $2, " + args + ")";
+            }
+        } else if(node.getData().getCType() == ConstructType.FUNCTION || node.getData().getCType() == ConstructType.VARIABLE){
+            return "interpret(" + i + ", $1, $2)";
+        } else {
+            //Everything else evaluates to itself
+            return "data[" + i + "]";
+        }
+    }
+
+    /**
+     * Returns true if the node isn't a constant, that is, it is a function call.
+     */
+    private static boolean isDynamic(GenericTreeNode<Construct> node){
+        return node.getData().getCType() == ConstructType.FUNCTION || node.getData().getCType() == ConstructType.VARIABLE;
+    }
+
+    private CompiledCode generate(List<GenericTreeNode<Construct>> units) throws CannotCompileException, NotFoundException, IOException, InstantiationException, IllegalAccessException{
+        ClassPool cp = GetPool();
+        Class<?> cls;
+        synchronized(cp){
+            CtClass c = cp.makeClass(CompiledCode.class.getName() + "$" + classCount.incrementAndGet());
+            c.setSuperclass(cp.get(CompiledCode.class.getName()));
+            String params = "(" + Script.class.getName() + " parent, " + Env.class.getName() + " env)";
+            StringBuilder dispatch = new StringBuilder();
+            dispatch.append("public ").append(CONSTRUCT).append(" eval(int unit, ")
+                    .append(Script.class.getName()).append(" parent, ")
+                    .append(Env.class.getName()).append(" env){");
+            for(int i = 0; i < units.size(); i++){
+                String body = "private " + CONSTRUCT + " unit" + i + params + "{ return " + expression(units.get(i)) + "; }";
+                c.addMethod(CtNewMethod.make(body, c));
+                dispatch.append("if($1 == ").append(i).append("){ return unit").append(i).append("($2, $3); }");
+            }
+            dispatch.append("return null; }");
+            c.addMethod(CtNewMethod.make(dispatch.toString(), c));
+            byte[] b = c.toBytecode();
+            c.detach();
+            cls = new CodeLoader().define(c.getName(), b);
+        }
+        CompiledCode code = (CompiledCode)cls.newInstance();
+        code.init(nodes.toArray(new GenericTreeNode[nodes.size()]));
+        return code;
+    }
+
+    /**
+     * The class loader of one compiled tree. It holds nothing but the tree's class, so the
+     * class goes away with the tree.
+     */
+    private static class CodeLoader extends ClassLoader {
+
+        CodeLoader(){
+            super(CompiledCode.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] b){
+            return defineClass(name, b, 0, b.length, CompiledCode.class.getProtectionDomain());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.bytecode;
+
+import com.laytonsmith.core.Env;
+import com.laytonsmith.core.GenericTreeNode;
+import com.laytonsmith.core.Script;
+import com.laytonsmith.core.Static;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.CVoid;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+import com.laytonsmith.core.functions.Function;
+
+/**
+ * The superclass of the classes generated by the BytecodeCompiler. A generated class
+ * contains one unit for each part of a tree that could be compiled, and the CFunction
+ * at the top of each unit points back to it, so that the interpreter runs the unit
+ * instead of walking that part of the tree.
+ * @author Layton
+ */
+public abstract class CompiledCode {
+
+    /**
+     * All the nodes in the tree, in the order the compiler numbered them.
+     */
+    protected GenericTreeNode<Construct>[] nodes;
+    /**
+     * The data of each node, so the generated code doesn't have to call getData().
+     */
+    protected Construct[] data;
+    /**
+     * The function and target of each node that is a function call, so the generated code
+     * can call the function directly.
+     */
+    protected Function[] functions;
+    protected Target[] targets;
+
+    void init(GenericTreeNode<Construct>[] nodes){
+        this.nodes = nodes;
+        this.data = new Construct[nodes.length];
+        this.functions = new Function[nodes.length];
+        this.targets = new Target[nodes.length];
+        for(int i = 0; i < nodes.length; i++){
+            this.data[i] = nodes[i].getData();
+            this.targets[i] = data[i].getTarget();
+            if(data[i] instanceof CFunction){
+                this.functions[i] = ((CFunction) data[i]).getFunction();
+            }
+        }
+    }
+
+    /**
+     * Runs the given unit.
+     * @param unit
+     * @param parent
+     * @param env
+     * @return
+     */
+    public abstract Construct eval(int unit, Script parent, Env env);
+
+    /**
+     * Called by the generated code to run a function whose arguments may have been a
+     * break, continue or return, once the arguments are evaluated.
+     * @param node
+     * @param env
+     * @param args
+     * @return
+     */
+    protected final Construct call(int node, Env env, Construct[] args){
+        if(env.GetFlowControl().isPending()){
+            return new CVoid(targets[node]);
+        }
+        return functions[node].exec(targets[node], env, args);
+    }
+
+    /**
+     * Called by the generated code to run a restricted function, which the user needs
+     * permission for.
+     * @param node
+     * @param env
+     * @param args
+     * @return
+     */
+    protected final Construct restricted(int node, Env env, Construct[] args){
+        if(env.GetFlowControl().isPending()){
+            return new CVoid(targets[node]);
+        }
+        if(!Static.hasCHPermission(functions[node].getName(), env)){
+            throw new ConfigRuntimeException("You do not have permission to use the " + functions[node].getName() + " function.",
+                    ExceptionType.InsufficientPermissionException, targets[node]);
+        }
+        return functions[node].exec(targets[node], env, args);
+    }
+
+    /**
+     * Returns the value of the variable at the given node.
+     * @param node
+     * @param env
+     * @return
+     */
+    protected final Construct value(int node, Env env){
+        return env.GetVarList().getValue((IVariable) data[node]);
+    }
+
+    /**
+     * Returns the value of c if it is a variable, or c itself otherwise.
+     * @param c
+     * @param env
+     * @return
+     */
+    protected final Construct resolve(Construct c, Env env){
+        if(c instanceof IVariable){
+            return env.GetVarList().getValue((IVariable) c);
+        }
+        return c;
+    }
+
+    /**
+     * Called by the generated code for the nodes that it can't handle, so they are
+     * interpreted as usual.
+     * @param node
+     * @param parent
+     * @param env
+     * @return
+     */
+    protected final Construct interpret(int node, Script parent, Env env){
+        Construct c = parent.eval(nodes[node], env);
+        //The generated code calls functions directly, so put back what the interpreter
+        //would have set up before each call, in case the node ran another script
+        env.SetScript(parent);
+        env.SetLabel(parent.getLabel());
+        return c;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.bytecode;
+
+import com.laytonsmith.core.GenericTreeNode;
+import com.laytonsmith.core.Prefs;
+import com.laytonsmith.core.constructs.Construct;
+
+/**
+ * Keeps track of how many times a tree (a procedure, alias or event handler) has been run,
+ * and once it has been run often enough, compiles it with the BytecodeCompiler. The
+ * threshold is set with the bytecode-compile-threshold preference; if it is 0 or less,
+ * trees are never compiled.
+ * @author Layton
+ */
+public class HotTree {
+
+    private final GenericTreeNode<Construct> tree;
+    private int invocations = 0;
+    private int threshold;
+    private boolean done = false;
+
+    public HotTree(GenericTreeNode<Construct> tree){
+        this.tree = tree;
+    }
+
+    /**
+     * Should be called each time the tree is about to be run.
+     */
+    public void invoked(){
+        if(done){
+            return;
+        }
+        if(invocations == 0){
+            threshold = Threshold();
+            if(threshold <= 0){
+                done = true;
+                return;
+            }
+        }
+        if(++invocations >= threshold){
+            done = true;
+            BytecodeCompiler.Compile(tree);
+        }
+    }
+
+    private static int Threshold(){
+        try{
+            return Prefs.BytecodeCompileThreshold();
+        } catch(RuntimeException e){
+            //Preferences aren't loaded, which is the case when running outside of the server
+            return 0;
+        }
+    }
+}
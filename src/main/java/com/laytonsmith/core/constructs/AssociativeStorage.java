@@ -0,0 +1,209 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.constructs;
+
+import java.util.*;
+
+/**
+ * The storage behind an associative CArray. Lookups are hashed, and the entries are
+ * kept in the order they were inserted. The order that scripts see (integer keys in
+ * numeric order, then everything else) is a sort, which is only done when the keys
+ * are actually walked, and is then remembered until a key is added or removed.
+ * The largest integer key is tracked as keys are added, so that pushing a value
+ * doesn't have to look through all the keys.
+ *
+ * Copies share the same map until one of them is changed, at which point that one
+ * makes its own copy of the map.
+ * @author layton
+ */
+final class AssociativeStorage {
+
+    private LinkedHashMap<String, Construct> map;
+    private boolean shared = false;
+    private int maxIntKey = Integer.MIN_VALUE;
+    private boolean maxIntKeyStale = false;
+    private Set<String> sorted = null;
+
+    AssociativeStorage(){
+        map = new LinkedHashMap<String, Construct>();
+    }
+
+    private AssociativeStorage(AssociativeStorage copy){
+        map = copy.map;
+        shared = true;
+        copy.shared = true;
+        maxIntKey = copy.maxIntKey;
+        maxIntKeyStale = copy.maxIntKeyStale;
+        sorted = copy.sorted;
+    }
+
+    Construct get(String key){
+        return map.get(key);
+    }
+
+    boolean containsKey(String key){
+        return map.containsKey(key);
+    }
+
+    boolean containsValue(Construct c){
+        return map.containsValue(c);
+    }
+
+    int size(){
+        return map.size();
+    }
+
+    void put(String key, Construct c){
+        own();
+        int size = map.size();
+        map.put(key, c);
+        if(map.size() != size){
+            //Only a new key changes the order
+            sorted = null;
+        }
+        Integer i = IntKey(key);
+        if(i != null && i > maxIntKey){
+            maxIntKey = i;
+        }
+    }
+
+    Construct remove(String key){
+        if(!map.containsKey(key)){
+            return null;
+        }
+        own();
+        Construct ret = map.remove(key);
+        sorted = null;
+        Integer i = IntKey(key);
+        if(i != null && i == maxIntKey){
+            maxIntKeyStale = true;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the largest integer key, or Integer.MIN_VALUE if there are no integer keys.
+     * @return
+     */
+    int maxIntKey(){
+        if(maxIntKeyStale){
+            maxIntKey = Integer.MIN_VALUE;
+            for(String key : map.keySet()){
+                Integer i = IntKey(key);
+                if(i != null && i > maxIntKey){
+                    maxIntKey = i;
+                }
+            }
+            maxIntKeyStale = false;
+        }
+        return maxIntKey;
+    }
+
+    /**
+     * Returns the keys, sorted. The returned set is a snapshot, and can't be modified.
+     * @return
+     */
+    Set<String> keySet(){
+        if(sorted == null){
+            sort();
+        }
+        return sorted;
+    }
+
+    /**
+     * Sorts the keys into the order scripts see them in.
+     */
+    void sort(){
+        //The comparator isn't transitive for some mixes of keys, which a TreeSet copes with,
+        //where Collections.sort may not.
+        TreeSet<String> keys = new TreeSet<String>(comparator);
+        keys.addAll(map.keySet());
+        sorted = Collections.unmodifiableSet(new LinkedHashSet<String>(keys));
+    }
+
+    /**
+     * Returns a copy of this storage. Nothing is actually copied until one of the two is changed.
+     * @return
+     */
+    AssociativeStorage copy(){
+        return new AssociativeStorage(this);
+    }
+
+    private void own(){
+        if(shared){
+            map = new LinkedHashMap<String, Construct>(map);
+            shared = false;
+        }
+    }
+
+    /**
+     * Returns the key as an int, if it is one, or null otherwise. Most keys aren't,
+     * so the characters are checked first, rather than leaving it to parseInt to throw.
+     * @param key
+     * @return
+     */
+    private static Integer IntKey(String key){
+        int length = key.length();
+        if(length == 0 || length > 11){
+            return null;
+        }
+        for(int i = 0; i < length; i++){
+            char c = key.charAt(i);
+            if(!(c >= '0' && c <= '9') && !(i == 0 && (c == '-' || c == '+') && length > 1)){
+                return null;
+            }
+        }
+        try{
+            return Integer.parseInt(key);
+        } catch(NumberFormatException e){
+            return null;
+        }
+    }
+
+    private static boolean IsNumeric(String s){
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if(!(c >= '0' && c <= '9') && c != '.'){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final Comparator<String> comparator = new Comparator<String>(){
+
+        public int compare(String o1, String o2) {
+            int c = compareKeys(o1, o2);
+            //Keys like "1" and "1.0" are equal as numbers, but they are still different keys
+            return c != 0 ? c : o1.compareTo(o2);
+        }
+
+        private int compareKeys(String o1, String o2) {
+            //Due to a dumb behavior in Double.parseDouble,
+            //we need to check to see if there are non-digit characters in
+            //the keys, and if so, do a string comparison.
+            if(!IsNumeric(o1) || !IsNumeric(o2)){
+                return o1.compareTo(o2);
+            }
+            try{
+                int i1 = Integer.parseInt(o1);
+                int i2 = Integer.parseInt(o2);
+                //They're both integers, do an integer comparison
+                return new Integer(i1).compareTo(new Integer(i2));
+            } catch(NumberFormatException e){
+                try{
+                    double d1 = Double.parseDouble(o1);
+                    double d2 = Double.parseDouble(o2);
+                    //They're both doubles, do a double comparison
+                    return new Double(d1).compareTo(new Double(d2));
+                } catch(NumberFormatException ee){
+                    //Just do a string comparison
+                    return o1.compareTo(o2);
+                }
+            }
+        }
+
+    };
+}
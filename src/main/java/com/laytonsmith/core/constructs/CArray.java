@@ -17,9 +17,19 @@ public class CArray extends Construct {
 
     private boolean associative_mode = false;
     private long next_index = 0;
-    private List<Construct> array;
-    private SortedMap<String, Construct> associative_array;
+    private PackedList array;
+    private AssociativeStorage associative_array;
+    /**
+     * The string form of this array, which is only built when it is asked for. It is
+     * null if the array has changed since it was last built.
+     */
     private String mutVal;
+    /**
+     * Set while building the string form. If this array holds an array that it isn't
+     * the parent of (because the other array was cloned, or put in more than one array),
+     * it won't be told when that array changes, so it can't hold on to its string form.
+     */
+    private boolean cacheable;
     CArray parent = null;
     
     
@@ -38,28 +48,21 @@ public class CArray extends Construct {
                 }
             }
         }
-        associative_array = new TreeMap<String, Construct>(comparator);
-        array = new ArrayList<Construct>();
+        associative_array = new AssociativeStorage();
+        array = new PackedList();
         if(associative_mode){
             if(items != null){
                 for(Construct item : items){
                     if(item instanceof CEntry){
                         associative_array.put(normalizeConstruct(((CEntry)item).ckey), ((CEntry)item).construct);
+                        adopt(((CEntry)item).construct);
                     } else {
-                        int max = Integer.MIN_VALUE;            
-                        for (String key : associative_array.keySet()) {
-                            try{
-                                int i = Integer.parseInt(key);
-                                max = java.lang.Math.max(max, i);
-                            } catch(NumberFormatException e){}
-                        }
+                        int max = associative_array.maxIntKey();
                         if(max == Integer.MIN_VALUE){
                             max = -1; //Special case, there are no integer indexes in here yet.
                         }
                         associative_array.put(Integer.toString(max + 1), item);
-                        if(item instanceof CArray){
-                            ((CArray)item).parent = this;
-                        }
+                        adopt(item);
                     }
                 }
             }
@@ -67,14 +70,29 @@ public class CArray extends Construct {
             if(items != null){
                 for(Construct item : items){
                     array.add(item);
-                    if(item instanceof CArray){
-                        ((CArray)item).parent = this;
-                    }
+                    adopt(item);
                 }
             }
             this.next_index = array.size();
         }
-        regenValue();
+    }
+
+    /**
+     * Creates a read only view of a range of integers, starting at start, and going up by
+     * step each time. The elements are worked out when they are read, so this takes
+     * the same amount of memory no matter how big it is. If anything is written to the
+     * array, the elements are filled in first, and from then on it's a normal array.
+     * @param start
+     * @param step
+     * @param size
+     * @param t
+     * @return
+     */
+    public static CArray Range(long start, long step, int size, Target t){
+        CArray ca = new CArray(t);
+        ca.array = PackedList.Range(start, step, size);
+        ca.next_index = size;
+        return ca;
     }
 
     /**
@@ -83,6 +101,22 @@ public class CArray extends Construct {
     public boolean inAssociativeMode() {
         return associative_mode;
     }
+
+    /**
+     * @return Whether or not this array is currently storing its elements as plain numbers,
+     * in which case getInt and getNumber can read them without creating any constructs.
+     */
+    public boolean isPacked() {
+        return !associative_mode && (array.isLongs() || array.isDoubles());
+    }
+
+    /**
+     * @return Whether or not this array is a range created with {@link #Range}, which
+     * hasn't been written to yet.
+     */
+    public boolean isVirtual() {
+        return !associative_mode && array.isVirtual();
+    }
     
     /**
      * This should only be used when copying an array that is already known to be associative, so integer keys will
@@ -90,21 +124,37 @@ public class CArray extends Construct {
      */
     public void forceAssociativeMode(){
         if(associative_array == null){
-            associative_array = new TreeMap<String, Construct>();
+            associative_array = new AssociativeStorage();
         }
         associative_mode = true;
     }
 
+    /**
+     * Marks the string form of this array, and of the arrays it is in, as needing to
+     * be rebuilt. If an array's string form is already out of date, so are its parents',
+     * so there is no need to go any further up.
+     */
     private void regenValue() {
+        for(CArray a = this; a != null && a.mutVal != null; a = a.parent){
+            a.mutVal = null;
+        }
+    }
+
+    private String getString() {
+        cacheable = true;
         StringBuilder b = new StringBuilder();
         b.append("{");
         if (!associative_mode) {
             for (int i = 0; i < array.size(); i++) {
                 if (i > 0) {
                     b.append(", ");
-                    b.append(array.get(i).val());
+                }
+                if(array.isLongs()){
+                    b.append(array.getLong(i));
+                } else if(array.isDoubles()){
+                    b.append(array.getDouble(i));
                 } else {
-                    b.append(array.get(i).val());
+                    b.append(valOf(array.get(i)));
                 }
             }
         } else {
@@ -114,16 +164,40 @@ public class CArray extends Construct {
                     b.append(", ");
                 }
                 first = false;
-                b.append(key).append(": ").append(associative_array.get(key).val());
+                b.append(key).append(": ").append(valOf(associative_array.get(key)));
             }
         }
         b.append("}");
-        mutVal = b.toString();
-        if(parent != null){
-            parent.regenValue();
+        return b.toString();
+    }
+
+    /**
+     * Called when c is put into this array. If c is an array, this array becomes its parent,
+     * and its old parent, which will no longer hear about its changes, is told to rebuild its string.
+     */
+    private void adopt(Construct c){
+        if(c instanceof CArray){
+            CArray ca = (CArray)c;
+            if(ca.parent != null && ca.parent != this){
+                ca.parent.regenValue();
+            }
+            ca.parent = this;
         }
     }
 
+    private String valOf(Construct c){
+        String v = c.val();
+        if(c instanceof CArray){
+            if(((CArray)c).parent != this || ((CArray)c).mutVal == null){
+                cacheable = false;
+            }
+        } else if(c instanceof Iterable){
+            //Sets, ranked maps and deques can be changed in place, and don't tell us
+            cacheable = false;
+        }
+        return v;
+    }
+
     /**
      * Pushes a new Construct onto the array
      * @param c 
@@ -133,29 +207,114 @@ public class CArray extends Construct {
             array.add(c);
             next_index++;
         } else {
-            int max = 0;            
-            for (String key : associative_array.keySet()) {
-                try{
-                    int i = Integer.parseInt(key);
-                    max = java.lang.Math.max(max, i);
-                } catch(NumberFormatException e){}
-            }
+            int max = java.lang.Math.max(0, associative_array.maxIntKey());
             if(c instanceof CEntry){
                 associative_array.put(Integer.toString(max + 1), ((CEntry)c).construct());
             } else {
                 associative_array.put(Integer.toString(max + 1), c);
             }
         }
-        if(c instanceof CArray){
-            ((CArray)c).parent = this;
-        }
+        adopt(c);
         regenValue();
     }
     
     /**
-     * Returns the key set for this array. If it's an associative array, it simply returns
-     * the key set of the map, otherwise it generates a set real quick from 0 - size-1, and
-     * returns that.
+     * Returns a cursor that walks through the elements of this array, in the same order
+     * as keySet(). See {@link Cursor} for what happens if the array is changed while
+     * the cursor is in use.
+     * @param t The target given to any constructs the cursor has to create
+     * @return
+     */
+    public Cursor cursor(Target t){
+        return new Cursor(t);
+    }
+
+    /**
+     * Walks through the keys and values of an array, without copying anything. For
+     * instance:
+     * <pre>
+     * CArray.Cursor c = array.cursor(t);
+     * while(c.next()){
+     *     doSomething(c.key(), c.value());
+     * }
+     * </pre>
+     * If the array is changed while it is being walked through, a normal array is walked
+     * by index, up to however big the array is at the time, so elements that are pushed
+     * are also visited. An associative array is walked through the keys it had when the
+     * cursor was created; values are read as the cursor gets to them, and keys that have
+     * been removed by then are skipped.
+     */
+    public final class Cursor {
+
+        private final Target t;
+        private final Iterator<String> keys;
+        private int index = -1;
+        private String key = null;
+
+        private Cursor(Target t){
+            this.t = t;
+            //The key set is already a snapshot, so holding on to it is safe
+            this.keys = associative_mode ? associative_array.keySet().iterator() : null;
+        }
+
+        /**
+         * Moves on to the next element.
+         * @return false if there are no more elements
+         */
+        public boolean next(){
+            if(keys == null){
+                index++;
+                if(associative_mode){
+                    //It was changed to an associative array along the way
+                    return associative_array.containsKey(Integer.toString(index));
+                }
+                return index < array.size();
+            }
+            while(keys.hasNext()){
+                key = keys.next();
+                if(associative_array.containsKey(key)){
+                    return true;
+                }
+            }
+            key = null;
+            return false;
+        }
+
+        /**
+         * Returns the index of the current element, which is only meaningful for normal arrays.
+         * @return
+         */
+        public int index(){
+            return index;
+        }
+
+        /**
+         * Returns the key of the current element. For normal arrays, this is the index.
+         * @return
+         */
+        public String key(){
+            if(keys == null){
+                return Integer.toString(index);
+            }
+            return key;
+        }
+
+        /**
+         * Returns the value of the current element.
+         * @return
+         */
+        public Construct value(){
+            if(keys == null){
+                return get(index, t);
+            }
+            return getAssociative(key);
+        }
+    }
+
+    /**
+     * Returns the key set for this array. If it's an associative array, it returns
+     * the sorted keys of the map, which can't be modified, otherwise it generates a set
+     * real quick from 0 - size-1, and returns that.
      * @return 
      */
     public Set<String> keySet(){
@@ -189,7 +348,7 @@ public class CArray extends Construct {
                 }
             } catch (ConfigRuntimeException e) {
                 //Not a number. Convert to associative.
-                associative_array = new TreeMap<String, Construct>(comparator);
+                associative_array = new AssociativeStorage();
                 for (int i = 0; i < array.size(); i++) {
                     associative_array.put(Integer.toString(i), array.get(i));
                 }
@@ -200,9 +359,7 @@ public class CArray extends Construct {
         if (associative_mode) {
             associative_array.put(normalizeConstruct(index), c);
         }
-        if(c instanceof CArray){
-            ((CArray)c).parent = this;
-        }
+        adopt(c);
         regenValue();
     }
     
@@ -226,28 +383,122 @@ public class CArray extends Construct {
     public Construct get(Construct index, Target t) {
         if(!associative_mode){
             try {
-                return array.get((int)Static.getInt(index));
+                return array.get((int)Static.getInt(index), t);
             } catch (IndexOutOfBoundsException e) {
                 throw new ConfigRuntimeException("The element at index \"" + index.val() + "\" does not exist", ExceptionType.IndexOverflowException, t);
             }
         } else {
-            if(associative_array.containsKey(normalizeConstruct(index))){
-                Construct val = associative_array.get(normalizeConstruct(index));
-                if(val instanceof CEntry){
-                    return ((CEntry)val).construct();
-                }
-                return val;
-            } else {
+            Construct val = getAssociative(normalizeConstruct(index));
+            if(val == null){
                 throw new ConfigRuntimeException("The element at index \"" + index.val() + "\" does not exist", ExceptionType.IndexOverflowException, t);
             }
+            return val;
+        }
+    }
+
+    /**
+     * Returns the value at this key of an associative array, or null if there isn't one.
+     */
+    private Construct getAssociative(String key){
+        Construct val = associative_array.get(key);
+        if(val instanceof CEntry){
+            return ((CEntry)val).construct();
         }
+        return val;
     }
     
+    /**
+     * Returns a new array with the elements from index start to finish, inclusive. Each
+     * element is cloned. Unless there are arrays, closures or other containers among the elements, the new array is
+     * a view of this one, and nothing is copied until one of the two is changed. If
+     * this array is virtual, so is the returned array. This may only be used on normal arrays.
+     * @param start
+     * @param finish
+     * @param t
+     * @return
+     */
+    public CArray slice(int start, int finish, Target t){
+        CArray na = new CArray(t);
+        if(finish < start){
+            return na;
+        }
+        if(start < 0 || start >= size()){
+            throw new ConfigRuntimeException("The element at index \"" + start + "\" does not exist", ExceptionType.IndexOverflowException, t);
+        } else if(finish >= size()){
+            throw new ConfigRuntimeException("The element at index \"" + size() + "\" does not exist", ExceptionType.IndexOverflowException, t);
+        }
+        if(!array.needsCloning(start, finish)){
+            //Everything else is immutable, so there's no need to clone the elements
+            na.array = array.view(start, finish);
+            na.next_index = na.array.size();
+            return na;
+        }
+        for(int i = start; i <= finish; i++){
+            try{
+                na.push(get(i, t).clone());
+            } catch(CloneNotSupportedException e){
+                na.push(get(i, t));
+            }
+        }
+        return na;
+    }
+
     public Construct get(int index, Target t){
-        return this.get(new CInt(index, t), t);
+        if(!associative_mode){
+            try {
+                return array.get(index, t);
+            } catch (IndexOutOfBoundsException e) {
+                throw new ConfigRuntimeException("The element at index \"" + index + "\" does not exist", ExceptionType.IndexOverflowException, t);
+            }
+        } else {
+            return this.get(new CInt(index, t), t);
+        }
+    }
+
+    /**
+     * Returns the element at this index as an integer, the same as Static.getInt(get(index, t))
+     * would, but without creating a construct for the element if the array is packed.
+     * @param index
+     * @param t
+     * @return
+     */
+    public long getInt(int index, Target t){
+        if(!associative_mode && array.isLongs()){
+            try {
+                return array.getLong(index);
+            } catch (IndexOutOfBoundsException e) {
+                throw new ConfigRuntimeException("The element at index \"" + index + "\" does not exist", ExceptionType.IndexOverflowException, t);
+            }
+        }
+        return Static.getInt(get(index, t));
+    }
+
+    /**
+     * Returns the element at this index as a number, the same as Static.getNumber(get(index, t))
+     * would, but without creating a construct for the element if the array is packed.
+     * @param index
+     * @param t
+     * @return
+     */
+    public double getNumber(int index, Target t){
+        if(isPacked()){
+            try {
+                return array.isLongs() ? array.getLong(index) : array.getDouble(index);
+            } catch (IndexOutOfBoundsException e) {
+                throw new ConfigRuntimeException("The element at index \"" + index + "\" does not exist", ExceptionType.IndexOverflowException, t);
+            }
+        }
+        return Static.getNumber(get(index, t));
     }
     
     public Construct get(String index, Target t){
+        if(associative_mode){
+            Construct val = getAssociative(index);
+            if(val == null){
+                throw new ConfigRuntimeException("The element at index \"" + index + "\" does not exist", ExceptionType.IndexOverflowException, t);
+            }
+            return val;
+        }
         return this.get(new CString(index, t), t);
     }
     
@@ -299,12 +550,24 @@ public class CArray extends Construct {
 
     @Override
     public String val() {
-        return mutVal;
+        String v = mutVal;
+        if(v == null){
+            v = getString();
+            if(cacheable){
+                mutVal = v;
+            }
+        }
+        return v;
     }
 
     @Override
     public String toString() {
-        return mutVal;
+        return val();
+    }
+
+    @Override
+    public String getValue() {
+        return val();
     }
 
     public int size() {
@@ -319,16 +582,19 @@ public class CArray extends Construct {
     public CArray clone() throws CloneNotSupportedException {
         CArray clone = (CArray) super.clone();
         clone.associative_mode = associative_mode;
-        if(associative_mode){
+        //The clone isn't in any other array, and the arrays inside it still belong to this one
+        clone.parent = null;
+        clone.mutVal = null;
+        //The storage is shared, and only copied once one of the two arrays is changed
+        if(!associative_mode){
             if (array != null) {
-                clone.array = new ArrayList<Construct>(this.array);
+                clone.array = array.share();
             }
         } else {
             if(associative_array != null){
-                clone.associative_array = new TreeMap<String, Construct>(this.associative_array);
+                clone.associative_array = associative_array.copy();
             }
         }
-        clone.regenValue();
         return clone;
     }
     
@@ -367,33 +633,4 @@ public class CArray extends Construct {
         regenValue();
         return ret;
     }
-    
-    private Comparator<String> comparator = new Comparator<String>(){
-
-        public int compare(String o1, String o2) {
-            //Due to a dumb behavior in Double.parseDouble, 
-            //we need to check to see if there are non-digit characters in
-            //the keys, and if so, do a string comparison.
-            if(o1.matches(".*[^0-9\\.]+.*") || o2.matches(".*[^0-9\\.]+.*")){
-                return o1.compareTo(o2);
-            }
-            try{
-                int i1 = Integer.parseInt(o1);
-                int i2 = Integer.parseInt(o2);
-                //They're both integers, do an integer comparison
-                return new Integer(i1).compareTo(new Integer(i2));
-            } catch(NumberFormatException e){
-                try{                    
-                    double d1 = Double.parseDouble(o1);
-                    double d2 = Double.parseDouble(o2);
-                    //They're both doubles, do a double comparison
-                    return new Double(d1).compareTo(new Double(d2));
-                } catch(NumberFormatException ee){
-                    //Just do a string comparison
-                    return o1.compareTo(o2);
-                }
-            }
-        }
-        
-    };
 }
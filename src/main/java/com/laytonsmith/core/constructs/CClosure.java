@@ -5,6 +5,7 @@
 package com.laytonsmith.core.constructs;
 
 import com.laytonsmith.core.Env;
+import com.laytonsmith.core.FlowControl;
 import com.laytonsmith.core.GenericTreeNode;
 import com.laytonsmith.core.MethodScriptCompiler;
 import com.laytonsmith.core.exceptions.CancelCommandException;
@@ -100,6 +101,8 @@ public class CClosure extends Construct {
             synchronized(this){
                 environment = env.clone();
             }
+            FlowControl flow = new FlowControl();
+            environment.SetFlowControl(flow);
             if(values != null){
                 for(int i = 0; i < names.length; i++){
                     String name = names[i];
@@ -128,6 +131,10 @@ public class CClosure extends Construct {
             } catch(ConfigRuntimeException e){
                 ConfigRuntimeException.React(e);
             }
+            if(flow.getType() == FlowControl.Type.BREAK || flow.getType() == FlowControl.Type.CONTINUE){
+                ConfigRuntimeException.DoWarning("Using a program flow manipulation construct improperly! " + flow.getType().name().toLowerCase() + "() was used outside of a loop");
+            }
+            //A return simply ends the closure
         } catch (CloneNotSupportedException ex) {
             Logger.getLogger(CClosure.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -0,0 +1,194 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.constructs;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A double ended queue, which values can be added to and removed from at either end
+ * in constant time. The values are kept in a ring buffer, so removing from the front
+ * doesn't move anything. A deque may have a capacity, in which case adding a value to
+ * a full deque drops the value at the other end, which makes it a window of the most
+ * recent values.
+ * @author layton
+ */
+public class CDeque extends Construct implements Iterable<Construct> {
+
+    public static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 10;
+    private Construct[] buffer;
+    private int head = 0;
+    private int size = 0;
+    private final int capacity;
+
+    /**
+     * Creates a new deque.
+     * @param capacity The most values the deque can hold, or 0 if there is no limit
+     * @param t
+     */
+    public CDeque(int capacity, Target t){
+        super(null, ConstructType.DEQUE, t);
+        this.capacity = capacity;
+        buffer = new Construct[capacity > 0 ? capacity : INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the most values this deque can hold, or 0 if there is no limit.
+     * @return
+     */
+    public int capacity(){
+        return capacity;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Adds the value to the back of the deque.
+     * @param c
+     * @return The value that was dropped from the front to make room, or null if none was
+     */
+    public Construct pushBack(Construct c){
+        Construct dropped = null;
+        if(capacity > 0 && size == capacity){
+            dropped = popFront();
+        } else if(size == buffer.length){
+            grow();
+        }
+        buffer[index(size)] = c;
+        size++;
+        return dropped;
+    }
+
+    /**
+     * Adds the value to the front of the deque.
+     * @param c
+     * @return The value that was dropped from the back to make room, or null if none was
+     */
+    public Construct pushFront(Construct c){
+        Construct dropped = null;
+        if(capacity > 0 && size == capacity){
+            dropped = popBack();
+        } else if(size == buffer.length){
+            grow();
+        }
+        head = (head - 1 + buffer.length) % buffer.length;
+        buffer[head] = c;
+        size++;
+        return dropped;
+    }
+
+    /**
+     * Removes and returns the value at the front of the deque, or returns null if it is empty.
+     * @return
+     */
+    public Construct popFront(){
+        if(size == 0){
+            return null;
+        }
+        Construct c = buffer[head];
+        buffer[head] = null;
+        head = (head + 1) % buffer.length;
+        size--;
+        return c;
+    }
+
+    /**
+     * Removes and returns the value at the back of the deque, or returns null if it is empty.
+     * @return
+     */
+    public Construct popBack(){
+        if(size == 0){
+            return null;
+        }
+        int i = index(size - 1);
+        Construct c = buffer[i];
+        buffer[i] = null;
+        size--;
+        return c;
+    }
+
+    /**
+     * Returns the value at the given index, counting from the front, which must be from
+     * 0 to size() - 1.
+     * @param index
+     * @return
+     */
+    public Construct get(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return buffer[index(index)];
+    }
+
+    /**
+     * Returns the values in this deque, front first, as a normal array.
+     * @param t
+     * @return
+     */
+    public CArray toArray(Target t){
+        return new CArray(t, values());
+    }
+
+    private Construct[] values(){
+        Construct[] values = new Construct[size];
+        for(int i = 0; i < size; i++){
+            values[i] = buffer[index(i)];
+        }
+        return values;
+    }
+
+    private int index(int i){
+        return (head + i) % buffer.length;
+    }
+
+    private void grow(){
+        Construct[] values = Arrays.copyOf(values(), size + (size >> 1) + 1);
+        buffer = values;
+        head = 0;
+    }
+
+    /**
+     * Iterates over the values the deque has when this is called, front first, so the
+     * deque may be changed while it is being iterated over.
+     * @return
+     */
+    public Iterator<Construct> iterator() {
+        return Arrays.asList(values()).iterator();
+    }
+
+    @Override
+    public String val() {
+        StringBuilder b = new StringBuilder();
+        b.append("{");
+        for(int i = 0; i < size; i++){
+            if(i > 0){
+                b.append(", ");
+            }
+            b.append(buffer[index(i)].val());
+        }
+        b.append("}");
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        return val();
+    }
+
+    @Override
+    public String getValue() {
+        return val();
+    }
+
+    @Override
+    public CDeque clone() throws CloneNotSupportedException {
+        CDeque clone = (CDeque) super.clone();
+        clone.buffer = buffer.clone();
+        return clone;
+    }
+}
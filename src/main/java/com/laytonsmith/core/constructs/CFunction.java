@@ -4,14 +4,38 @@
  */
 package com.laytonsmith.core.constructs;
 
+import com.laytonsmith.core.bytecode.CompiledCode;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.functions.Function;
+import com.laytonsmith.core.functions.FunctionList;
+
 /**
  *
  * @author layton
  */
 public class CFunction extends Construct {
-    
+
     public static final long serialVersionUID = 1L;
 
+    /*
+     * The call site information. This is filled in once, by bind(), so that the
+     * interpreter doesn't have to look the function up by name every time the node
+     * is evaluated.
+     */
+    private volatile boolean bound = false;
+    private Function function = null;
+    private boolean procedure = false;
+    private boolean autoconcat = false;
+    private boolean useSpecialExec = false;
+    private boolean restricted = false;
+    private boolean preResolveVariables = false;
+    /*
+     * If this node has been compiled to bytecode, this is the code, and the unit
+     * in it that runs this node.
+     */
+    private transient volatile CompiledCode compiled = null;
+    private transient int compiledUnit = 0;
+
     public CFunction(String name, Target t) {
         super(name, ConstructType.FUNCTION, t);
     }
@@ -19,9 +43,97 @@ public class CFunction extends Construct {
     public String toString() {
         return this.value;
     }
-    
+
+    /**
+     * Returns true if the given name is the name of a procedure, that is, it starts with
+     * a single underscore.
+     * @param name
+     * @return
+     */
+    public static boolean IsProcedureName(String name){
+        return name.length() > 1 && name.charAt(0) == '_' && name.charAt(1) != '_';
+    }
+
+    /**
+     * Resolves this node to the function it calls, and caches the function, along with
+     * the function's flags. The compiler binds each node as it builds the tree; nodes
+     * that are created later are bound the first time they are evaluated. If this is
+     * a procedure call, the node is simply marked as such, since procedures are looked up
+     * in the environment. Calling this more than once has no further effect.
+     * @throws ConfigCompileException If the function does not exist
+     */
+    public void bind() throws ConfigCompileException{
+        if(bound){
+            return;
+        }
+        if(IsProcedureName(value)){
+            procedure = true;
+        } else {
+            Function f = FunctionList.getFunction(this);
+            function = f;
+            autoconcat = f.getName().equals("__autoconcat__");
+            useSpecialExec = f.useSpecialExec();
+            restricted = f.isRestricted();
+            preResolveVariables = f.preResolveVariables();
+        }
+        bound = true;
+    }
+
+    public boolean isBound(){
+        return bound;
+    }
+
+    /**
+     * Returns the function this node is bound to, or null if this is a procedure call.
+     * @return
+     */
+    public Function getFunction(){
+        return function;
+    }
+
+    public boolean isProcedure(){
+        return procedure;
+    }
+
+    public boolean isAutoconcat(){
+        return autoconcat;
+    }
+
+    public boolean useSpecialExec(){
+        return useSpecialExec;
+    }
+
+    public boolean isRestricted(){
+        return restricted;
+    }
+
+    public boolean preResolveVariables(){
+        return preResolveVariables;
+    }
+
+    /**
+     * Returns the compiled code for this node, or null if it is interpreted.
+     * @return 
+     */
+    public CompiledCode getCompiled(){
+        return compiled;
+    }
+
+    public int getCompiledUnit(){
+        return compiledUnit;
+    }
+
+    public void setCompiled(CompiledCode code, int unit){
+        compiledUnit = unit;
+        compiled = code;
+    }
+
     @Override
     public CFunction clone() throws CloneNotSupportedException{
-        return (CFunction) super.clone();
+        CFunction clone = (CFunction) super.clone();
+        //The compiled code belongs to the original tree
+        clone.compiled = null;
+        clone.compiledUnit = 0;
+        return clone;
     }
 }
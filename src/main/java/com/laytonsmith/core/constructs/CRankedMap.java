@@ -0,0 +1,141 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.constructs;
+
+import com.laytonsmith.core.Static;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A map from keys to numeric scores, which is kept sorted by score (and then by key,
+ * for keys with the same score). Setting or removing a score, finding the rank of a key,
+ * and finding the key at a rank all take logarithmic time, so a leaderboard doesn't need
+ * to be sorted every time a score changes. Ranks start at 0, for the lowest score.
+ * @author layton
+ */
+public class CRankedMap extends Construct implements Iterable<Construct> {
+
+    public static final long serialVersionUID = 1L;
+    private RankedIndex index = new RankedIndex();
+
+    public CRankedMap(Target t){
+        super(null, ConstructType.RANKEDMAP, t);
+    }
+
+    /**
+     * Sets the score of the key. The score must be a number, or something that can be
+     * turned into one.
+     * @param key
+     * @param score
+     * @return The old score, or null if the key wasn't in the map
+     */
+    public Construct put(String key, Construct score){
+        if(score instanceof CEntry){
+            score = ((CEntry)score).construct();
+        }
+        double value = Static.getNumber(score);
+        if(!(score instanceof CInt) && !(score instanceof CDouble)){
+            score = new CDouble(value, score.getTarget());
+        }
+        return index.put(key, score, value);
+    }
+
+    /**
+     * Returns the score of the key, or null if it isn't in the map.
+     * @param key
+     * @return
+     */
+    public Construct get(String key){
+        return index.get(key);
+    }
+
+    /**
+     * Removes the key from the map.
+     * @param key
+     * @return The old score, or null if the key wasn't in the map
+     */
+    public Construct remove(String key){
+        return index.remove(key);
+    }
+
+    public int size(){
+        return index.size();
+    }
+
+    /**
+     * Returns the rank of the key, or -1 if it isn't in the map.
+     * @param key
+     * @return
+     */
+    public int rank(String key){
+        return index.rank(key);
+    }
+
+    /**
+     * Returns the key with the given rank, which must be from 0 to size() - 1.
+     * @param rank
+     * @return
+     */
+    public String at(int rank){
+        return index.at(rank);
+    }
+
+    /**
+     * Returns the keys whose score is from min to max (inclusive), lowest score first.
+     * @param min
+     * @param max
+     * @return
+     */
+    public List<String> range(double min, double max){
+        return index.range(min, max);
+    }
+
+    /**
+     * Iterates over the keys, lowest score first. The keys are the ones the map has when
+     * this is called, so the map may be changed while it is being iterated over.
+     * @return
+     */
+    public Iterator<Construct> iterator() {
+        List<Construct> keys = new ArrayList<Construct>(index.size());
+        for(String key : index.keys()){
+            keys.add(new CString(key, getTarget()));
+        }
+        return keys.iterator();
+    }
+
+    @Override
+    public String val() {
+        StringBuilder b = new StringBuilder();
+        b.append("{");
+        boolean first = true;
+        for(String key : index.keys()){
+            if(!first){
+                b.append(", ");
+            }
+            first = false;
+            b.append(key).append(": ").append(index.get(key).val());
+        }
+        b.append("}");
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        return val();
+    }
+
+    @Override
+    public String getValue() {
+        return val();
+    }
+
+    @Override
+    public CRankedMap clone() throws CloneNotSupportedException {
+        CRankedMap clone = (CRankedMap) super.clone();
+        clone.index = index.copy();
+        return clone;
+    }
+}
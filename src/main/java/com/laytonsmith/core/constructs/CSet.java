@@ -0,0 +1,181 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.constructs;
+
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A set of values, with constant time membership checks. Two values are the same
+ * if equals() would say they are, so 1, '1' and 1.0 are all the same value. Booleans
+ * are only the same as other booleans, since otherwise every true value would be the same
+ * as every other. Arrays can't be put in a set, since they can change after they are
+ * put in. The values are kept in the order they were added, and the first of any values
+ * that are the same is the one that is kept.
+ * @author layton
+ */
+public class CSet extends Construct implements Iterable<Construct> {
+
+    public static final long serialVersionUID = 1L;
+    private LinkedHashMap<String, Construct> values = new LinkedHashMap<String, Construct>();
+
+    public CSet(Target t, Construct... items){
+        super(null, ConstructType.SET, t);
+        if(items != null){
+            for(Construct item : items){
+                add(item);
+            }
+        }
+    }
+
+    /**
+     * Returns the key that the construct is stored under. Values that equals() considers
+     * the same have the same key.
+     * @param c
+     * @return
+     */
+    private static String Key(Construct c){
+        if(c instanceof CArray || c instanceof Iterable){
+            throw new ConfigRuntimeException("Arrays and other containers cannot be put in a set", ExceptionType.CastException, c.getTarget());
+        } else if(c instanceof CBoolean){
+            return "b:" + ((CBoolean)c).getBoolean();
+        } else if(c instanceof CInt){
+            return Number(((CInt)c).getInt());
+        } else if(c instanceof CDouble){
+            return Number(((CDouble)c).getDouble());
+        } else if(c instanceof CString){
+            try{
+                return Number(Double.parseDouble(c.val()));
+            } catch(NumberFormatException e){
+                //Not a number
+            }
+        }
+        return "s:" + c.val();
+    }
+
+    private static String Number(double d){
+        if(d == 0){
+            //0.0 and -0.0 are equal
+            d = 0;
+        }
+        return "n:" + Double.toString(d);
+    }
+
+    /**
+     * Adds the value to the set.
+     * @param c
+     * @return false if the same value was already in the set
+     */
+    public boolean add(Construct c){
+        if(c instanceof CEntry){
+            c = ((CEntry)c).construct();
+        }
+        String key = Key(c);
+        if(values.containsKey(key)){
+            return false;
+        }
+        values.put(key, c);
+        return true;
+    }
+
+    /**
+     * Removes the value from the set.
+     * @param c
+     * @return false if the value wasn't in the set
+     */
+    public boolean remove(Construct c){
+        return values.remove(Key(c)) != null;
+    }
+
+    public boolean contains(Construct c){
+        return values.containsKey(Key(c));
+    }
+
+    public int size(){
+        return values.size();
+    }
+
+    /**
+     * Adds all the values in the other set to this one.
+     * @param other
+     */
+    public void addAll(CSet other){
+        for(String key : other.values.keySet()){
+            if(!values.containsKey(key)){
+                values.put(key, other.values.get(key));
+            }
+        }
+    }
+
+    /**
+     * Removes all the values from this set that aren't in the other set.
+     * @param other
+     */
+    public void retainAll(CSet other){
+        values.keySet().retainAll(other.values.keySet());
+    }
+
+    /**
+     * Removes all the values from this set that are in the other set.
+     * @param other
+     */
+    public void removeAll(CSet other){
+        values.keySet().removeAll(other.values.keySet());
+    }
+
+    /**
+     * Returns the values in this set, as a normal array.
+     * @param t
+     * @return
+     */
+    public CArray toArray(Target t){
+        return new CArray(t, values.values().toArray(new Construct[values.size()]));
+    }
+
+    /**
+     * Iterates over the values the set has when this is called, so the set may be changed
+     * while it is being iterated over.
+     * @return
+     */
+    public Iterator<Construct> iterator() {
+        return Arrays.asList(values.values().toArray(new Construct[values.size()])).iterator();
+    }
+
+    @Override
+    public String val() {
+        StringBuilder b = new StringBuilder();
+        b.append("{");
+        boolean first = true;
+        for(Construct c : values.values()){
+            if(!first){
+                b.append(", ");
+            }
+            first = false;
+            b.append(c.val());
+        }
+        b.append("}");
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        return val();
+    }
+
+    @Override
+    public String getValue() {
+        return val();
+    }
+
+    @Override
+    public CSet clone() throws CloneNotSupportedException {
+        CSet clone = (CSet) super.clone();
+        clone.values = new LinkedHashMap<String, Construct>(values);
+        return clone;
+    }
+}
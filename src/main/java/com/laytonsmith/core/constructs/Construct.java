@@ -7,11 +7,10 @@ package com.laytonsmith.core.constructs;
 import com.laytonsmith.core.exceptions.MarshalException;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 
 /**
@@ -24,7 +23,7 @@ public abstract class Construct implements Cloneable, Comparable<Construct> {
 
         TOKEN, COMMAND, FUNCTION, VARIABLE, LITERAL, ARRAY, MAP, ENTRY, INT, 
         DOUBLE, BOOLEAN, NULL, STRING, VOID, IVARIABLE, CLOSURE, LABEL, SLICE,
-        SYMBOL
+        SYMBOL, SET, RANKEDMAP, DEQUE
     }
     protected ConstructType ctype;
     protected String value;
@@ -99,7 +98,7 @@ public abstract class Construct implements Cloneable, Comparable<Construct> {
     /**
      * This function takes a Construct, and turns it into a JSON value. If the construct is
      * not one of the following, a MarshalException is thrown: CArray, CBoolean, CDouble, CInt, CNull, 
-     * CString, CVoid, Command. Currently unsupported, but will be in the future are: CClosure/CFunction
+     * CString, CVoid, Command, CSet, CRankedMap, CDeque. Currently unsupported, but will be in the future are: CClosure/CFunction
      * The following map is applied when encoding and decoding:
      * <table border='1'>
      * <tr><th>JSON</th><th>MethodScript</th></tr>
@@ -108,7 +107,12 @@ public abstract class Construct implements Cloneable, Comparable<Construct> {
      * <tr><td>boolean</td><td>CBoolean</td></tr>
      * <tr><td>null</td><td>CNull</td></tr>
      * <tr><td>array/object</td><td>CArray</td></tr>
+     * <tr><td>{"@type": "set", "values": [...]}</td><td>CSet</td></tr>
+     * <tr><td>{"@type": "rankedmap", "values": [[key, score], ...]}</td><td>CRankedMap</td></tr>
+     * <tr><td>{"@type": "deque", "capacity": capacity, "values": [...]}</td><td>CDeque</td></tr>
      * </table>
+     * Types that JSON has no equivalent for are encoded as an object with an "@type" key, which
+     * names the type, and a "values" key, which holds the contents, and are decoded back into the same type.
      * @param c
      * @return 
      */
@@ -147,47 +151,75 @@ public abstract class Construct implements Cloneable, Comparable<Construct> {
             return null;
         } else if (c instanceof CArray) {
             CArray ca = (CArray) c;
+            CArray.Cursor cursor = ca.cursor(t);
             if (!ca.inAssociativeMode()) {
-                List<Object> list = new ArrayList<Object>();
-                for(int i = 0; i < ca.size(); i++){
-                    list.add(json_encode0(ca.get(i, t), t));
+                List<Object> list = new ArrayList<Object>(ca.size());
+                while(cursor.next()){
+                    list.add(json_encode0(cursor.value(), t));
                 }
                 return list;
             } else {
-                Map<String, Object> map = new HashMap<String, Object>();
-                for(String key : ca.keySet()){
-                    map.put(key, json_encode0(ca.get(key, t), t));
+                //Keeps the keys in the same order as the array
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                while(cursor.next()){
+                    map.put(cursor.key(), json_encode0(cursor.value(), t));
                 }
                 return map;
             }
+        } else if (c instanceof CSet) {
+            List<Object> list = new ArrayList<Object>(((CSet) c).size());
+            for(Construct value : (CSet) c){
+                list.add(json_encode0(value, t));
+            }
+            return Typed("set", list);
+        } else if (c instanceof CRankedMap) {
+            CRankedMap map = (CRankedMap) c;
+            List<Object> list = new ArrayList<Object>(map.size());
+            for(Construct key : map){
+                List<Object> entry = new ArrayList<Object>(2);
+                entry.add(key.val());
+                entry.add(json_encode0(map.get(key.val()), t));
+                list.add(entry);
+            }
+            return Typed("rankedmap", list);
+        } else if (c instanceof CDeque) {
+            CDeque deque = (CDeque) c;
+            List<Object> list = new ArrayList<Object>(deque.size());
+            for(Construct value : deque){
+                list.add(json_encode0(value, t));
+            }
+            Map<String, Object> map = Typed("deque", list);
+            if(deque.capacity() > 0){
+                map.put("capacity", deque.capacity());
+            }
+            return map;
         } else {
             throw new MarshalException("The type of " + c.getClass().getSimpleName() + " is not currently supported", c);
         }
     }
+
+    /**
+     * Wraps the encoded contents of a type that JSON doesn't have, so that json_decode can
+     * tell what it was.
+     * @param type
+     * @param values
+     * @return
+     */
+    private static Map<String, Object> Typed(String type, Object values){
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("@type", type);
+        map.put("values", values);
+        return map;
+    }
     /**
      * Takes a string and converts it into a Construct
      * @param s
      * @return 
      */
     public static Construct json_decode(String s, Target t) throws MarshalException {
-        if (s.startsWith("{")) {
-            //Object
-            JSONObject obj = (JSONObject) JSONValue.parse(s);
-            CArray ca = new CArray(t);
-            ca.forceAssociativeMode();
-            for(Object key : obj.keySet()){
-                ca.set(convertJSON(key, t), 
-                        convertJSON(obj.get(key), t));
-            }
-            return ca;
-        } else if (s.startsWith("[")) {
-            //It's an array
-            JSONArray array = (JSONArray) JSONValue.parse(s);
-            CArray carray = new CArray(t);
-            for (int i = 0; i < array.size(); i++) {
-                carray.push(convertJSON(array.get(i), t));
-            }
-            return carray;
+        if (s.startsWith("{") || s.startsWith("[")) {
+            //Object or array
+            return convertJSON(JSONValue.parse(s), t);
         } else {
             //It's a single value, but we're gonna wrap it in an array, then deconstruct it
             s = "[" + s + "]";
@@ -221,6 +253,13 @@ public abstract class Construct implements Cloneable, Comparable<Construct> {
         } else if (o == null) {
             return new CNull();
         } else if(o instanceof java.util.Map){
+            java.util.Map m = (java.util.Map) o;
+            if(m.get("@type") instanceof String && m.get("values") instanceof java.util.List){
+                Construct typed = convertTyped((String) m.get("@type"), m, t);
+                if(typed != null){
+                    return typed;
+                }
+            }
             CArray ca = new CArray(t);
             ca.forceAssociativeMode();
             for(Object key : ((java.util.Map)o).keySet()){
@@ -233,6 +272,48 @@ public abstract class Construct implements Cloneable, Comparable<Construct> {
         }
     }
 
+    /**
+     * Decodes the contents of a type that was wrapped by json_encode. If the type isn't
+     * known, null is returned, and the object is decoded as a normal associative array.
+     * @param type
+     * @param m
+     * @param t
+     * @return
+     * @throws MarshalException
+     */
+    private static Construct convertTyped(String type, java.util.Map m, Target t) throws MarshalException {
+        java.util.List values = (java.util.List) m.get("values");
+        if("set".equals(type)){
+            CSet set = new CSet(t);
+            for(Object value : values){
+                set.add(convertJSON(value, t));
+            }
+            return set;
+        } else if("rankedmap".equals(type)){
+            CRankedMap map = new CRankedMap(t);
+            for(Object value : values){
+                if(!(value instanceof java.util.List) || ((java.util.List) value).size() != 2){
+                    throw new MarshalException("The entries of a rankedmap must be [key, score] pairs");
+                }
+                java.util.List entry = (java.util.List) value;
+                map.put(convertJSON(entry.get(0), t).val(), convertJSON(entry.get(1), t));
+            }
+            return map;
+        } else if("deque".equals(type)){
+            int capacity = 0;
+            if(m.get("capacity") instanceof Number){
+                capacity = ((Number) m.get("capacity")).intValue();
+            }
+            CDeque deque = new CDeque(capacity, t);
+            for(Object value : values){
+                deque.pushBack(convertJSON(value, t));
+            }
+            return deque;
+        } else {
+            return null;
+        }
+    }
+
     public int compareTo(Construct c) {
         if(this.value.contains(" ") || this.value.contains("\t") 
                 || c.value.contains(" ") || c.value.contains("\t")){
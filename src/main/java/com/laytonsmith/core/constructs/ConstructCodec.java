@@ -0,0 +1,293 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.constructs;
+
+import com.laytonsmith.core.exceptions.MarshalException;
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A compact binary form of constructs, which is how values are kept in the persistance
+ * database. It holds the same types that json_encode does, but numbers aren't turned into
+ * text and back, and reading a value back doesn't have to go through a JSON parser.
+ *
+ * The first byte is the format version. After that, each value is a tag byte followed by
+ * its contents. Ints are zigzag encoded variable length numbers, so small ints take one
+ * byte, doubles are their 8 raw bytes, and strings are their length followed by their
+ * UTF-8 bytes. Arrays and the other containers are their size followed by their values
+ * (and keys, for associative arrays and ranked maps).
+ *
+ * Values written before this format existed are JSON strings, so {@link #Read} accepts either.
+ * @author layton
+ */
+public final class ConstructCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte ARRAY = 6;
+    private static final byte ASSOCIATIVE_ARRAY = 7;
+    private static final byte SET = 8;
+    private static final byte RANKED_MAP = 9;
+    private static final byte DEQUE = 10;
+
+    private ConstructCodec(){}
+
+    /**
+     * Encodes the construct. CVoid and Command are encoded as strings, the same as json_encode
+     * does, and any type that json_encode doesn't support causes a MarshalException.
+     * @param c
+     * @param t
+     * @return
+     * @throws MarshalException
+     */
+    public static byte[] Encode(Construct c, Target t) throws MarshalException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VERSION);
+        Encode(out, c, t);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a value that was encoded with Encode.
+     * @param b
+     * @param t
+     * @return
+     * @throws MarshalException If the bytes aren't a value in this format
+     */
+    public static Construct Decode(byte[] b, Target t) throws MarshalException {
+        if(b.length == 0 || b[0] != VERSION){
+            throw new MarshalException("The value is not in a known format");
+        }
+        Reader in = new Reader(b);
+        Construct c = Decode(in, t);
+        if(in.pos != b.length){
+            throw new MarshalException("The value has extra data at the end");
+        }
+        return c;
+    }
+
+    /**
+     * Decodes a value as it was stored in the persistance database, which is either a value
+     * encoded with Encode, or, if it was stored before this format existed, a JSON string.
+     * @param stored
+     * @param t
+     * @return
+     * @throws MarshalException
+     */
+    public static Construct Read(Object stored, Target t) throws MarshalException {
+        if(stored instanceof byte[]){
+            return Decode((byte[]) stored, t);
+        }
+        return Construct.json_decode(stored.toString(), t);
+    }
+
+    private static void Encode(ByteArrayOutputStream out, Construct c, Target t) throws MarshalException {
+        if(c instanceof CString || c instanceof Command){
+            out.write(STRING);
+            WriteString(out, c.val());
+        } else if(c instanceof CVoid){
+            out.write(STRING);
+            WriteVarInt(out, 0);
+        } else if(c instanceof CInt){
+            out.write(INT);
+            long l = ((CInt) c).getInt();
+            WriteVarInt(out, (l << 1) ^ (l >> 63));
+        } else if(c instanceof CDouble){
+            out.write(DOUBLE);
+            long bits = Double.doubleToLongBits(((CDouble) c).getDouble());
+            for(int i = 56; i >= 0; i -= 8){
+                out.write((int) (bits >>> i));
+            }
+        } else if(c instanceof CBoolean){
+            out.write(((CBoolean) c).getBoolean() ? TRUE : FALSE);
+        } else if(c instanceof CNull){
+            out.write(NULL);
+        } else if(c instanceof CArray){
+            CArray ca = (CArray) c;
+            out.write(ca.inAssociativeMode() ? ASSOCIATIVE_ARRAY : ARRAY);
+            WriteVarInt(out, ca.size());
+            CArray.Cursor cursor = ca.cursor(t);
+            while(cursor.next()){
+                if(ca.inAssociativeMode()){
+                    WriteString(out, cursor.key());
+                }
+                Encode(out, cursor.value(), t);
+            }
+        } else if(c instanceof CSet){
+            out.write(SET);
+            WriteVarInt(out, ((CSet) c).size());
+            for(Construct value : (CSet) c){
+                Encode(out, value, t);
+            }
+        } else if(c instanceof CRankedMap){
+            CRankedMap map = (CRankedMap) c;
+            out.write(RANKED_MAP);
+            WriteVarInt(out, map.size());
+            for(Construct key : map){
+                WriteString(out, key.val());
+                Encode(out, map.get(key.val()), t);
+            }
+        } else if(c instanceof CDeque){
+            CDeque deque = (CDeque) c;
+            out.write(DEQUE);
+            WriteVarInt(out, deque.capacity());
+            WriteVarInt(out, deque.size());
+            for(Construct value : deque){
+                Encode(out, value, t);
+            }
+        } else {
+            throw new MarshalException("The type of " + c.getClass().getSimpleName() + " is not currently supported", c);
+        }
+    }
+
+    private static Construct Decode(Reader in, Target t) throws MarshalException {
+        byte tag = in.next();
+        switch(tag){
+            case NULL:
+                return new CNull(t);
+            case TRUE:
+                return new CBoolean(true, t);
+            case FALSE:
+                return new CBoolean(false, t);
+            case INT:
+                long l = in.varInt();
+                return new CInt((l >>> 1) ^ -(l & 1), t);
+            case DOUBLE:
+                long bits = 0;
+                for(int i = 0; i < 8; i++){
+                    bits = (bits << 8) | (in.next() & 0xFF);
+                }
+                return new CDouble(Double.longBitsToDouble(bits), t);
+            case STRING:
+                return new CString(in.string(), t);
+            case ARRAY: {
+                int size = in.size();
+                CArray ca = new CArray(t);
+                for(int i = 0; i < size; i++){
+                    ca.push(Decode(in, t));
+                }
+                return ca;
+            }
+            case ASSOCIATIVE_ARRAY: {
+                int size = in.size();
+                CArray ca = new CArray(t);
+                ca.forceAssociativeMode();
+                for(int i = 0; i < size; i++){
+                    String key = in.string();
+                    ca.set(key, Decode(in, t));
+                }
+                return ca;
+            }
+            case SET: {
+                int size = in.size();
+                CSet set = new CSet(t);
+                for(int i = 0; i < size; i++){
+                    set.add(Decode(in, t));
+                }
+                return set;
+            }
+            case RANKED_MAP: {
+                int size = in.size();
+                CRankedMap map = new CRankedMap(t);
+                for(int i = 0; i < size; i++){
+                    String key = in.string();
+                    map.put(key, Decode(in, t));
+                }
+                return map;
+            }
+            case DEQUE: {
+                long capacity = in.varInt();
+                if(capacity < 0 || capacity > Integer.MAX_VALUE){
+                    throw new MarshalException("The capacity of the deque is out of range");
+                }
+                int size = in.size();
+                CDeque deque = new CDeque((int) capacity, t);
+                for(int i = 0; i < size; i++){
+                    deque.pushBack(Decode(in, t));
+                }
+                return deque;
+            }
+            default:
+                throw new MarshalException("Unknown value type " + tag);
+        }
+    }
+
+    private static void WriteVarInt(ByteArrayOutputStream out, long l){
+        while((l & ~0x7FL) != 0){
+            out.write((int) ((l & 0x7F) | 0x80));
+            l >>>= 7;
+        }
+        out.write((int) l);
+    }
+
+    private static void WriteString(ByteArrayOutputStream out, String s){
+        try {
+            byte[] b = s.getBytes("UTF-8");
+            WriteVarInt(out, b.length);
+            out.write(b, 0, b.length);
+        } catch (UnsupportedEncodingException ex) {
+            //UTF-8 is always supported
+            throw new Error(ex);
+        }
+    }
+
+    private static class Reader {
+
+        private final byte[] b;
+        private int pos = 1;
+
+        Reader(byte[] b){
+            this.b = b;
+        }
+
+        byte next() throws MarshalException {
+            if(pos >= b.length){
+                throw new MarshalException("The value ends too early");
+            }
+            return b[pos++];
+        }
+
+        long varInt() throws MarshalException {
+            long l = 0;
+            for(int shift = 0; shift < 64; shift += 7){
+                byte next = next();
+                l |= (long) (next & 0x7F) << shift;
+                if((next & 0x80) == 0){
+                    return l;
+                }
+            }
+            throw new MarshalException("A number in the value is too long");
+        }
+
+        /**
+         * Reads a size, which can't be more than the number of bytes left, since every
+         * value takes at least one byte.
+         */
+        int size() throws MarshalException {
+            long size = varInt();
+            if(size < 0 || size > b.length - pos){
+                throw new MarshalException("A size in the value is out of range");
+            }
+            return (int) size;
+        }
+
+        String string() throws MarshalException {
+            int length = size();
+            try {
+                String s = new String(b, pos, length, "UTF-8");
+                pos += length;
+                return s;
+            } catch (UnsupportedEncodingException ex) {
+                throw new Error(ex);
+            }
+        }
+    }
+}
@@ -5,6 +5,8 @@
 
 package com.laytonsmith.core.constructs;
 
+import com.laytonsmith.core.functions.SlotTable;
+
 /**
  *
  * @author layton
@@ -14,6 +16,13 @@ public class IVariable extends Construct implements Cloneable{
     public static final long serialVersionUID = 1L;
     private Construct var_value;
     final private String name;
+    /**
+     * The slots of the compilation unit this variable is in, and its slot in them. These
+     * are set by the compiler; a variable created at runtime has no slot, and is looked
+     * up by name.
+     */
+    private transient SlotTable slots = null;
+    private transient int slot = -1;
 
     public IVariable(String name, Target t){
         super(name, ConstructType.IVARIABLE, t);
@@ -38,6 +47,33 @@ public class IVariable extends Construct implements Cloneable{
     public void setIval(Construct c){
         var_value = c;
     }
+    
+    /**
+     * Gives this variable its slot in the given compilation unit.
+     * @param slots
+     */
+    public void bind(SlotTable slots){
+        this.slots = slots;
+        this.slot = slots.add(name);
+    }
+
+    /**
+     * Returns the slots of the compilation unit this variable is in, or null if it wasn't
+     * compiled.
+     * @return
+     */
+    public SlotTable getSlotTable(){
+        return slots;
+    }
+
+    /**
+     * Returns the index of this variable's slot in its compilation unit's frames, or -1
+     * if it doesn't have one.
+     * @return 
+     */
+    public int getSlot(){
+        return slot;
+    }
 
     @Override
     public String toString() {
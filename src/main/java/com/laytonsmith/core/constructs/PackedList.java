@@ -0,0 +1,363 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.constructs;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The storage behind a normal (non associative) CArray. While every element is an
+ * integer, they are kept in a long[], and while every element is a double, they are kept
+ * in a double[], so a large list of numbers doesn't cost a whole CInt or CDouble per
+ * element. The first time anything else is put in, the list switches over to holding
+ * the constructs themselves, and stays that way. Elements read back out of a packed
+ * list are new constructs, so the numeric getters should be used where possible.
+ *
+ * A list may also be a virtual range of integers, in which case the elements aren't
+ * stored at all, they are worked out when they are read. The first write fills the
+ * list in, after which it is a normal packed list.
+ *
+ * A list can be a view of all or part of another list, in which case the two share the
+ * same backing array. Once a backing array is shared, neither list writes to it again;
+ * whichever list is written to first copies its part of the array out, and carries on
+ * with its own copy. This is how slices and clones of arrays avoid copying anything
+ * until they have to.
+ * @author layton
+ */
+final class PackedList extends AbstractList<Construct> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 10;
+
+    //At most one of these is set at a time, and none of them if the list is virtual
+    private long[] longs = null;
+    private double[] doubles = null;
+    private Construct[] boxed = null;
+    //Where this list starts in the backing array, which is only ever not 0 for views
+    private int offset = 0;
+    private int size = 0;
+    private boolean shared = false;
+    private boolean virtual = false;
+    private long rangeStart;
+    private long rangeStep;
+
+    PackedList(){
+    }
+
+    /**
+     * Creates a virtual list of the given number of integers, starting at start,
+     * and going up by step each time.
+     * @param start
+     * @param step
+     * @param size
+     * @return
+     */
+    static PackedList Range(long start, long step, int size){
+        PackedList list = new PackedList();
+        list.virtual = true;
+        list.rangeStart = start;
+        list.rangeStep = step;
+        list.size = size;
+        return list;
+    }
+
+    private PackedList(PackedList copy){
+        size = copy.size;
+        if(copy.virtual){
+            virtual = true;
+            rangeStart = copy.rangeStart;
+            rangeStep = copy.rangeStep;
+        } else if(copy.longs != null){
+            longs = Arrays.copyOfRange(copy.longs, copy.offset, copy.offset + Capacity(size));
+        } else if(copy.doubles != null){
+            doubles = Arrays.copyOfRange(copy.doubles, copy.offset, copy.offset + Capacity(size));
+        } else if(copy.boxed != null){
+            boxed = Arrays.copyOfRange(copy.boxed, copy.offset, copy.offset + Capacity(size));
+        }
+    }
+
+    PackedList copy(){
+        return new PackedList(this);
+    }
+
+    /**
+     * Returns a list with the same elements, which shares this list's backing array.
+     * @return
+     */
+    PackedList share(){
+        if(virtual || size == 0){
+            //Nothing to share
+            return copy();
+        }
+        return view(0, size - 1);
+    }
+
+    /**
+     * Returns a view of the elements from index start to finish (inclusive). Nothing
+     * is copied until either list is written to.
+     * @param start
+     * @param finish
+     * @return
+     */
+    PackedList view(int start, int finish){
+        rangeCheck(start);
+        rangeCheck(finish);
+        if(virtual){
+            return Range(rangeStart + start * rangeStep, rangeStep, finish - start + 1);
+        }
+        PackedList view = new PackedList();
+        view.longs = longs;
+        view.doubles = doubles;
+        view.boxed = boxed;
+        view.offset = offset + start;
+        view.size = finish - start + 1;
+        view.shared = true;
+        shared = true;
+        return view;
+    }
+
+    /**
+     * A construct can only be packed if nothing is lost when it is unpacked again, so
+     * for instance, "007" (which is an int) can't be.
+     */
+    private static boolean IsPackableInt(Construct c){
+        return c instanceof CInt && c.getClass() == CInt.class
+                && c.getValue().equals(Long.toString(((CInt)c).getInt()));
+    }
+
+    private static boolean IsPackableDouble(Construct c){
+        return c instanceof CDouble && c.getClass() == CDouble.class && c.getCType() == Construct.ConstructType.DOUBLE
+                && c.getValue().equals(Double.toString(((CDouble)c).getDouble()));
+    }
+
+    /**
+     * Returns true if the elements are all stored as integers.
+     * @return
+     */
+    boolean isLongs(){
+        return virtual || longs != null;
+    }
+
+    /**
+     * Returns true if this is a virtual range, which hasn't been filled in yet.
+     * @return
+     */
+    boolean isVirtual(){
+        return virtual;
+    }
+
+    /**
+     * Returns true if the elements are all stored as doubles.
+     * @return
+     */
+    boolean isDoubles(){
+        return doubles != null;
+    }
+
+    /**
+     * Returns true if any of the elements from index start to finish (inclusive) can't
+     * simply be shared between two lists, that is, if it's an array, a closure, or one of
+     * the other containers.
+     * @param start
+     * @param finish
+     * @return
+     */
+    boolean needsCloning(int start, int finish){
+        if(boxed == null){
+            return false;
+        }
+        for(int i = start; i <= finish; i++){
+            Construct c = boxed[offset + i];
+            if(c instanceof CArray || c instanceof CClosure || c instanceof CSet
+                    || c instanceof CDeque || c instanceof CRankedMap){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    long getLong(int index){
+        rangeCheck(index);
+        if(virtual){
+            return rangeStart + index * rangeStep;
+        }
+        return longs[offset + index];
+    }
+
+    double getDouble(int index){
+        rangeCheck(index);
+        return doubles[offset + index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Construct get(int index) {
+        return get(index, Target.UNKNOWN);
+    }
+
+    /**
+     * Returns the element at this index. If the list is packed, the construct is created
+     * now, with the given target.
+     * @param index
+     * @param t
+     * @return
+     */
+    Construct get(int index, Target t){
+        rangeCheck(index);
+        if(virtual){
+            return new CInt(rangeStart + index * rangeStep, t);
+        } else if(boxed != null){
+            return boxed[offset + index];
+        } else if(longs != null){
+            return new CInt(longs[offset + index], t);
+        } else {
+            return new CDouble(doubles[offset + index], t);
+        }
+    }
+
+    @Override
+    public Construct set(int index, Construct element) {
+        Construct old = get(index);
+        own();
+        if(longs != null && IsPackableInt(element)){
+            longs[index] = ((CInt)element).getInt();
+        } else if(doubles != null && IsPackableDouble(element)){
+            doubles[index] = ((CDouble)element).getDouble();
+        } else {
+            unpack();
+            boxed[index] = element;
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, Construct element) {
+        if(index < 0 || index > size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        own();
+        if(size == 0 && longs == null && doubles == null && boxed == null){
+            //Nothing's been put in yet, so the first element decides how the list starts out
+            if(IsPackableInt(element)){
+                longs = new long[INITIAL_CAPACITY];
+            } else if(IsPackableDouble(element)){
+                doubles = new double[INITIAL_CAPACITY];
+            }
+        }
+        if(longs != null && IsPackableInt(element)){
+            if(size == longs.length){
+                longs = Arrays.copyOf(longs, Grow(size));
+            }
+            System.arraycopy(longs, index, longs, index + 1, size - index);
+            longs[index] = ((CInt)element).getInt();
+        } else if(doubles != null && IsPackableDouble(element)){
+            if(size == doubles.length){
+                doubles = Arrays.copyOf(doubles, Grow(size));
+            }
+            System.arraycopy(doubles, index, doubles, index + 1, size - index);
+            doubles[index] = ((CDouble)element).getDouble();
+        } else {
+            unpack();
+            if(size == boxed.length){
+                boxed = Arrays.copyOf(boxed, Grow(size));
+            }
+            System.arraycopy(boxed, index, boxed, index + 1, size - index);
+            boxed[index] = element;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Construct remove(int index) {
+        Construct ret = get(index);
+        own();
+        int moved = size - index - 1;
+        if(longs != null){
+            System.arraycopy(longs, index + 1, longs, index, moved);
+        } else if(doubles != null){
+            System.arraycopy(doubles, index + 1, doubles, index, moved);
+        } else {
+            System.arraycopy(boxed, index + 1, boxed, index, moved);
+            boxed[size - 1] = null;
+        }
+        size--;
+        modCount++;
+        return ret;
+    }
+
+    @Override
+    public void clear() {
+        virtual = false;
+        shared = false;
+        longs = null;
+        doubles = null;
+        boxed = null;
+        offset = 0;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Makes sure this list has a backing array of its own that it can write to. If
+     * this is a virtual range, the elements are worked out and stored, and if the
+     * backing array is shared, this list's part of it is copied out.
+     */
+    private void own(){
+        if(virtual){
+            long[] values = new long[Capacity(size)];
+            for(int i = 0; i < size; i++){
+                values[i] = rangeStart + i * rangeStep;
+            }
+            longs = values;
+            virtual = false;
+        } else if(shared){
+            if(longs != null){
+                longs = Arrays.copyOfRange(longs, offset, offset + Capacity(size));
+            } else if(doubles != null){
+                doubles = Arrays.copyOfRange(doubles, offset, offset + Capacity(size));
+            } else if(boxed != null){
+                boxed = Arrays.copyOfRange(boxed, offset, offset + Capacity(size));
+            }
+            offset = 0;
+            shared = false;
+        }
+    }
+
+    /**
+     * Switches this list over to holding the constructs themselves. The list must
+     * already own its backing array.
+     */
+    private void unpack(){
+        if(boxed != null){
+            return;
+        }
+        Construct[] values = new Construct[Capacity(size + 1)];
+        for(int i = 0; i < size; i++){
+            values[i] = get(i);
+        }
+        longs = null;
+        doubles = null;
+        boxed = values;
+    }
+
+    private void rangeCheck(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static int Capacity(int size){
+        return java.lang.Math.max(size, INITIAL_CAPACITY);
+    }
+
+    private static int Grow(int size){
+        return size + (size >> 1) + 1;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.constructs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The storage behind a CRankedMap. The entries are kept in a treap (a binary search tree,
+ * which is kept balanced by giving each node a random priority, and keeping higher priorities
+ * nearer the root), ordered by score, and then by key for entries with the same score. Each
+ * node knows the size of its subtree, so finding the rank of a node, or the node at a rank,
+ * is a walk down the tree. Entries are also hashed by key, so that the current score of a key
+ * can be found without a search.
+ * @author layton
+ */
+final class RankedIndex {
+
+    private static final class Node {
+        final String key;
+        final Construct score;
+        final double value;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(String key, Construct score, double value, int priority){
+            this.key = key;
+            this.score = score;
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private final Map<String, Node> nodes = new HashMap<String, Node>();
+    private final Random random = new Random();
+    private Node root = null;
+
+    int size(){
+        return nodes.size();
+    }
+
+    /**
+     * Returns the score of the given key, or null if it isn't in the index.
+     * @param key
+     * @return
+     */
+    Construct get(String key){
+        Node n = nodes.get(key);
+        return n == null ? null : n.score;
+    }
+
+    /**
+     * Sets the score of the given key, moving it if it was already in the index.
+     * @param key
+     * @param score The score, as it should be given back out
+     * @param value The score, as it should be sorted
+     * @return The old score, or null if the key wasn't in the index
+     */
+    Construct put(String key, Construct score, double value){
+        Node old = nodes.get(key);
+        if(old != null){
+            root = delete(root, old);
+        }
+        Node n = new Node(key, score, value, random.nextInt());
+        nodes.put(key, n);
+        root = insert(root, n);
+        return old == null ? null : old.score;
+    }
+
+    /**
+     * Removes the key from the index.
+     * @param key
+     * @return The old score, or null if the key wasn't in the index
+     */
+    Construct remove(String key){
+        Node old = nodes.remove(key);
+        if(old == null){
+            return null;
+        }
+        root = delete(root, old);
+        return old.score;
+    }
+
+    /**
+     * Returns how many entries are ordered before the key, or -1 if it isn't in the index.
+     * @param key
+     * @return
+     */
+    int rank(String key){
+        Node n = nodes.get(key);
+        if(n == null){
+            return -1;
+        }
+        int rank = 0;
+        Node t = root;
+        while(t != n){
+            if(compare(n, t) < 0){
+                t = t.left;
+            } else {
+                rank += size(t.left) + 1;
+                t = t.right;
+            }
+        }
+        return rank + size(t.left);
+    }
+
+    /**
+     * Returns the key at the given rank, which must be from 0 to size() - 1.
+     * @param rank
+     * @return
+     */
+    String at(int rank){
+        if(rank < 0 || rank >= size()){
+            throw new IndexOutOfBoundsException("Rank: " + rank + ", Size: " + size());
+        }
+        Node t = root;
+        while(true){
+            int left = size(t.left);
+            if(rank < left){
+                t = t.left;
+            } else if(rank == left){
+                return t.key;
+            } else {
+                rank -= left + 1;
+                t = t.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the keys whose score is from min to max (inclusive), in order.
+     * @param min
+     * @param max
+     * @return
+     */
+    List<String> range(double min, double max){
+        List<String> keys = new ArrayList<String>();
+        range(root, min, max, keys);
+        return keys;
+    }
+
+    /**
+     * Returns all the keys, in order.
+     * @return
+     */
+    List<String> keys(){
+        List<String> keys = new ArrayList<String>(size());
+        keys(root, keys);
+        return keys;
+    }
+
+    RankedIndex copy(){
+        RankedIndex copy = new RankedIndex();
+        copy.root = copy.copy(root);
+        return copy;
+    }
+
+    private Node copy(Node n){
+        if(n == null){
+            return null;
+        }
+        Node c = new Node(n.key, n.score, n.value, n.priority);
+        c.size = n.size;
+        c.left = copy(n.left);
+        c.right = copy(n.right);
+        nodes.put(c.key, c);
+        return c;
+    }
+
+    private static void keys(Node t, List<String> keys){
+        if(t != null){
+            keys(t.left, keys);
+            keys.add(t.key);
+            keys(t.right, keys);
+        }
+    }
+
+    private static void range(Node t, double min, double max, List<String> keys){
+        if(t == null){
+            return;
+        }
+        //NaN scores sort after everything, so they are only in a range that ends at NaN
+        if(Double.compare(t.value, min) >= 0){
+            range(t.left, min, max, keys);
+        }
+        if(Double.compare(t.value, min) >= 0 && Double.compare(t.value, max) <= 0){
+            keys.add(t.key);
+        }
+        if(Double.compare(t.value, max) <= 0){
+            range(t.right, min, max, keys);
+        }
+    }
+
+    private static int compare(Node a, Node b){
+        int c = Double.compare(a.value, b.value);
+        return c != 0 ? c : a.key.compareTo(b.key);
+    }
+
+    private static int size(Node n){
+        return n == null ? 0 : n.size;
+    }
+
+    private static void update(Node n){
+        n.size = size(n.left) + size(n.right) + 1;
+    }
+
+    private static Node insert(Node t, Node n){
+        if(t == null){
+            return n;
+        }
+        if(n.priority > t.priority){
+            Node[] split = new Node[2];
+            split(t, n, split);
+            n.left = split[0];
+            n.right = split[1];
+            update(n);
+            return n;
+        }
+        if(compare(n, t) < 0){
+            t.left = insert(t.left, n);
+        } else {
+            t.right = insert(t.right, n);
+        }
+        update(t);
+        return t;
+    }
+
+    /**
+     * Splits t into the nodes before n (into split[0]) and the nodes after it (into split[1]).
+     */
+    private static void split(Node t, Node n, Node[] split){
+        if(t == null){
+            split[0] = null;
+            split[1] = null;
+        } else if(compare(t, n) < 0){
+            split(t.right, n, split);
+            t.right = split[0];
+            update(t);
+            split[0] = t;
+        } else {
+            split(t.left, n, split);
+            t.left = split[1];
+            update(t);
+            split[1] = t;
+        }
+    }
+
+    private static Node delete(Node t, Node n){
+        if(t == n){
+            return merge(t.left, t.right);
+        }
+        if(compare(n, t) < 0){
+            t.left = delete(t.left, n);
+        } else {
+            t.right = delete(t.right, n);
+        }
+        update(t);
+        return t;
+    }
+
+    private static Node merge(Node a, Node b){
+        if(a == null){
+            return b;
+        } else if(b == null){
+            return a;
+        } else if(a.priority > b.priority){
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+}
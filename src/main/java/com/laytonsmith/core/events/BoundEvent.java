@@ -7,6 +7,7 @@ package com.laytonsmith.core.events;
 import com.laytonsmith.PureUtilities.Pair;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.core.*;
+import com.laytonsmith.core.bytecode.HotTree;
 import com.laytonsmith.core.constructs.*;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.exceptions.EventException;
@@ -33,6 +34,7 @@ public class BoundEvent implements Comparable<BoundEvent> {
     private final String eventObjName;
     private Env originalEnv;
     private final GenericTreeNode<Construct> tree; //The code closure for this event
+    private final HotTree hot;
     private final Driver driver; //For efficiency sake, cache it here
     private static int EventID = 0;
     private final Target target;
@@ -145,6 +147,7 @@ public class BoundEvent implements Comparable<BoundEvent> {
 
         this.originalEnv = env;
         this.tree = tree;
+        this.hot = new HotTree(tree);
         
         if(EventList.getEvent(this.eventName) == null){
             throw new EventException("No event named \"" + this.eventName + "\" is registered!");
@@ -285,6 +288,10 @@ public class BoundEvent implements Comparable<BoundEvent> {
         GenericTreeNode<Construct> superRoot = new GenericTreeNode<Construct>(null);
         superRoot.addChild(tree);
         Script s = Script.GenerateScript(superRoot, "*");        
+        //Event handlers always run to completion, since the event is finished with, and
+        //can no longer be cancelled or modified, once the handler returns
+        s.setUnbudgeted();
+        hot.invoked();
         Event myDriver = this.getEventDriver();
         myDriver.execute(s, this, env, activeEvent);
     }
@@ -11,7 +11,6 @@ import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.events.BoundEvent.Priority;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.exceptions.EventException;
-import com.laytonsmith.core.exceptions.FunctionReturnException;
 import com.laytonsmith.core.exceptions.PrefilterNonMatchException;
 import java.util.*;
 
@@ -177,8 +176,6 @@ public class EventUtils {
                     activeEvent.setBoundEvent(b);
                     activeEvent.setParsedEvent(driver.evaluate(e));                    
                     b.trigger(activeEvent);
-                } catch (FunctionReturnException ex){
-                    //We also know how to deal with this
                 } catch (EventException ex) {
                     throw new ConfigRuntimeException(ex.getMessage(), null, Target.UNKNOWN);
                 } catch(ConfigRuntimeException ex){
@@ -9,4 +9,13 @@ package com.laytonsmith.core.exceptions;
  */
 public class ProgramFlowManipulationException extends RuntimeException {
     
+    /**
+     * These are used to unwind the script, not to report a problem, so there is
+     * no point in capturing the stack trace.
+     * @return 
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
 }
@@ -40,4 +40,23 @@ public abstract class AbstractFunction implements Function{
         return true;
     }            
 
+    /**
+     * By default, we return false, because functions must opt in to being run at compile time.
+     * @return 
+     */
+    public boolean canOptimize() {
+        return false;
+    }
+
+    /**
+     * By default, we simply call exec, with no environment. Functions that use
+     * execs must override this if they can be optimized.
+     * @param t
+     * @param args
+     * @return 
+     */
+    public Construct optimize(Target t, Construct... args) {
+        return exec(t, null, args);
+    }
+
 }
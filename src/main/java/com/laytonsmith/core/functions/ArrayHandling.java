@@ -119,19 +119,8 @@ public class ArrayHandling {
                         if(finish < 0){
                             finish = ca.size() + finish;
                         }
-                        CArray na = new CArray(t);
-                        if(finish < start){
-                            //return an empty array in cases where the indexes don't make sense
-                            return na;
-                        }
-                        for(long i = start; i <= finish; i++){
-                            try{
-                                na.push(ca.get((int)i, t).clone());
-                            } catch(CloneNotSupportedException e){
-                                na.push(ca.get((int)i, t));
-                            }
-                        }
-                        return na;
+                        //An empty array is returned in cases where the indexes don't make sense
+                        return ca.slice((int)start, (int)finish, t);
                     } catch(NumberFormatException e){
                         throw new ConfigRuntimeException("Ranges must be integer numbers, i.e., [0..5]", ExceptionType.CastException, t);
                     }
@@ -547,7 +536,7 @@ public class ArrayHandling {
         }
 
         public ExceptionType[] thrown() {
-            return new ExceptionType[]{ExceptionType.CastException};
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.RangeException};
         }
 
         public boolean isRestricted() {
@@ -582,14 +571,20 @@ public class ArrayHandling {
                 finish = Static.getInt(args[1]);
                 increment = Static.getInt(args[2]);
             }
-            if(start < finish && increment < 0 || start > finish && increment > 0  || increment == 0){
+            if(start < finish && increment < 0 || start > finish && increment > 0  || increment == 0 || start == finish){
                 return new CArray(t);
             }
-            CArray ret = new CArray(t);
-            for(long i = start; (increment > 0?i < finish:i > finish); i = i + increment){
-                ret.push(new CInt(i, t));
+            long size;
+            if(increment > 0){
+                size = (finish - start - 1) / increment + 1;
+            } else {
+                size = (start - finish - 1) / -increment + 1;
+            }
+            if(size > Integer.MAX_VALUE){
+                throw new ConfigRuntimeException("A range can contain at most " + Integer.MAX_VALUE + " elements", ExceptionType.RangeException, t);
             }
-            return ret;
+            //The elements are only worked out as they are used
+            return CArray.Range(start, increment, (int)size, t);
         }
         
     }
@@ -635,8 +630,9 @@ public class ArrayHandling {
             if(args[0] instanceof CArray){
                 CArray ca = (CArray)args[0];
                 CArray ca2 = new CArray(t);
-                for(String c : ca.keySet()){
-                    ca2.push(new CString(c, t));
+                CArray.Cursor c = ca.cursor(t);
+                while(c.next()){
+                    ca2.push(new CString(c.key(), t));
                 }
                 return ca2;
             } else {
@@ -742,13 +738,13 @@ public class ArrayHandling {
             for(int i = 0; i < args.length; i++){
                 if(args[i] instanceof CArray){
                     CArray cur = (CArray)args[i];
-                    if(!cur.inAssociativeMode()){
-                        for(int j = 0; j < cur.size(); j++){
-                            newArray.push(cur.get(j, t));
-                        }
-                    } else {
-                        for(String key : cur.keySet()){
-                            newArray.set(key, cur.get(key, t));
+                    CArray.Cursor c = cur.cursor(t);
+                    boolean associative = cur.inAssociativeMode();
+                    while(c.next()){
+                        if(!associative){
+                            newArray.push(c.value());
+                        } else {
+                            newArray.set(c.key(), c.value());
                         }
                     }
                 } else {
@@ -851,8 +847,9 @@ public class ArrayHandling {
                 glue = args[1].val();
             }
             boolean first = true;
-            for(String key : ca.keySet()){
-                Construct value = ca.get(key, t);
+            CArray.Cursor c = ca.cursor(t);
+            while(c.next()){
+                Construct value = c.value();
                 if(!first){
                     b.append(glue).append(value.val());
                 } else {
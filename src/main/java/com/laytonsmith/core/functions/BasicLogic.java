@@ -299,6 +299,11 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class sequals extends AbstractFunction{
@@ -339,6 +344,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             equals equals = new equals();
             if(args[1].getClass().equals(args[0].getClass())
@@ -381,6 +391,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             return new CBoolean(!((CBoolean)new sequals().exec(t, environment, args)).getBoolean(), t);
         }
@@ -426,6 +441,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             equals e = new equals();
             CBoolean b = (CBoolean) e.exec(t, env, args);
@@ -471,6 +491,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             if(args.length <= 1){
                 throw new ConfigRuntimeException("At least two arguments must be passed to equals_ic", ExceptionType.InsufficientArgumentsException, t);
@@ -553,6 +578,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             equals_ic e = new equals_ic();
             return new CBoolean(!((CBoolean)e.exec(t, environment, args)).getBoolean(), t);
@@ -599,6 +629,11 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class gt extends AbstractFunction{
@@ -641,6 +676,11 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class lte extends AbstractFunction{
@@ -682,6 +722,11 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class gte extends AbstractFunction{
@@ -723,6 +768,11 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class and extends AbstractFunction{
@@ -774,6 +824,21 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
+        @Override
+        public Construct optimize(Target t, Construct... args) {
+            for(Construct c : args){
+                if(!Static.getBoolean(c)){
+                    return new CBoolean(false, t);
+                }
+            }
+            return new CBoolean(true, t);
+        }
         
         @Override
         public boolean useSpecialExec() {
@@ -830,6 +895,21 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
+        @Override
+        public Construct optimize(Target t, Construct... args) {
+            for(Construct c : args){
+                if(Static.getBoolean(c)){
+                    return new CBoolean(true, t);
+                }
+            }
+            return new CBoolean(false, t);
+        }
         @Override
         public boolean useSpecialExec() {
             return true;
@@ -873,6 +953,11 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class xor extends AbstractFunction{
@@ -909,6 +994,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             boolean val1 = Static.getBoolean(args[0]);
             boolean val2 = Static.getBoolean(args[1]);
@@ -950,6 +1040,16 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
+        @Override
+        public Construct optimize(Target t, Construct... args) {
+            return new CBoolean(!((CBoolean)new and().optimize(t, args)).getBoolean(), t);
+        }
         public Construct exec(Target t, Env environment, Construct... args){
             return new CNull(t);
         }        
@@ -1001,6 +1101,16 @@ public class BasicLogic {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
+        @Override
+        public Construct optimize(Target t, Construct... args) {
+            return new CBoolean(!((CBoolean)new or().optimize(t, args)).getBoolean(), t);
+        }
         public Construct exec(Target t, Env environment, Construct ... args){
             return new CNull(t);
         }
@@ -1053,6 +1163,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             xor xor = new xor();
             boolean val = ((CBoolean)xor.exec(t, environment, args)).getBoolean();
@@ -1095,6 +1210,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             if(args.length < 1){
                 throw new ConfigRuntimeException("bit_and requires at least one argument", ExceptionType.InsufficientArgumentsException, t);
@@ -1142,6 +1262,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             if(args.length < 1){
                 throw new ConfigRuntimeException("bit_or requires at least one argument", ExceptionType.InsufficientArgumentsException, t);
@@ -1189,6 +1314,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             return new CInt(~Static.getInt(args[0]), t);
         }
@@ -1229,6 +1359,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             long value = Static.getInt(args[0]);
             long toShift = Static.getInt(args[1]);
@@ -1271,6 +1406,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             long value = Static.getInt(args[0]);
             long toShift = Static.getInt(args[1]);
@@ -1314,6 +1454,11 @@ public class BasicLogic {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             long value = Static.getInt(args[0]);
             long toShift = Static.getInt(args[1]);
@@ -11,6 +11,7 @@ import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -83,12 +84,12 @@ public class DataHandling {
             Construct c = args[1];
             while (c instanceof IVariable) {
                 IVariable cur = (IVariable) c;
-                c = env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+                c = env.GetVarList().getValue(cur);
             }
             if (args[0] instanceof IVariable) {
-                IVariable v = new IVariable(((IVariable) args[0]).getName(), c, t);
-                env.GetVarList().set(v);
-                return v;
+                IVariable v = (IVariable) args[0];
+                env.GetVarList().setValue(v, c);
+                return new IVariable(v.getName(), c, t);
             }
             throw new ConfigRuntimeException("assign only accepts an ivariable or array reference as the first argument", ExceptionType.CastException, t);
         }
@@ -111,7 +112,7 @@ public class DataHandling {
             Construct ival = toSet;
             while (ival instanceof IVariable) {
                 IVariable cur = (IVariable) ival;
-                ival = env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+                ival = env.GetVarList().getValue(cur);
             }
             Chain c = new Chain();
             prepare((CArrayReference) arrayAndIndex, c);
@@ -139,8 +140,7 @@ public class DataHandling {
                     inner = (CArray) ct;
                 }
             }
-            String name = ((CArrayReference) arrayAndIndex).name.getName();
-            env.GetVarList().set(new IVariable(name, (CArray) ((CArrayReference) arrayAndIndex).getInternalArray(), t));
+            env.GetVarList().setValue(((CArrayReference) arrayAndIndex).name, (CArray) ((CArrayReference) arrayAndIndex).getInternalArray());
             return new IVariable("=anon", ival, t);
         }
 
@@ -200,10 +200,12 @@ public class DataHandling {
             if (!(counter instanceof IVariable)) {
                 throw new ConfigRuntimeException("First parameter of for must be an ivariable", ExceptionType.CastException, t);
             }
+            FlowControl flow = env.GetFlowControl();
             int _continue = 0;
             while (true) {
+                ExecutionBudget.Checkpoint(env);
                 boolean cond = Static.getBoolean(parent.seval(condition, env));
-                if (cond == false) {
+                if (cond == false || flow.isPending()) {
                     break;
                 }
                 if (_continue >= 1) {
@@ -211,19 +213,15 @@ public class DataHandling {
                     parent.eval(expression, env);
                     continue;
                 }
-                try {
-                    parent.eval(runnable, env);
-                } catch (LoopBreakException e) {
-                    int num = e.getTimes();
-                    if (num > 1) {
-                        e.setTimes(--num);
-                        throw e;
+                parent.eval(runnable, env);
+                if (flow.isPending()) {
+                    if (flow.getType() == FlowControl.Type.CONTINUE) {
+                        _continue = flow.getTimes() - 1;
+                        flow.clear();
+                    } else {
+                        flow.exitLoop();
+                        return new CVoid(t);
                     }
-                    return new CVoid(t);
-                } catch (LoopContinueException e) {
-                    _continue = e.getTimes() - 1;
-                    parent.eval(expression, env);
-                    continue;
                 }
                 parent.eval(expression, env);
             }
@@ -283,44 +281,51 @@ public class DataHandling {
 
             Construct arr = that.seval(array, env);
             Construct iv = that.eval(ivar, env);
+            FlowControl flow = env.GetFlowControl();
 
             if (arr instanceof CArray) {
                 if (iv instanceof IVariable) {
                     CArray one = (CArray) arr;
                     IVariable two = (IVariable) iv;
-                    if (!one.inAssociativeMode()) {
-                        for (int i = 0; i < one.size(); i++) {
-                            env.GetVarList().set(new IVariable(two.getName(), one.get(i, t), t));
-                            try {
-                                that.eval(code, env);
-                            } catch (LoopBreakException e) {
-                                int num = e.getTimes();
-                                if (num > 1) {
-                                    e.setTimes(--num);
-                                    throw e;
+                    CArray.Cursor cursor = one.cursor(t);
+                    while (cursor.next()) {
+                        ExecutionBudget.Checkpoint(env);
+                        env.GetVarList().setValue(two, cursor.value());
+                        that.eval(code, env);
+                        if (flow.isPending()) {
+                            if (flow.getType() == FlowControl.Type.CONTINUE) {
+                                //Skip the elements that were continued past
+                                for (int i = 1; i < flow.getTimes(); i++) {
+                                    cursor.next();
                                 }
+                                flow.clear();
+                            } else {
+                                flow.exitLoop();
                                 return new CVoid(t);
-                            } catch (LoopContinueException e) {
-                                i += e.getTimes() - 1;
-                                continue;
                             }
                         }
-                    } else {
-                        for (int i = 0; i < one.size(); i++) {
-                            String index = one.keySet().toArray(new String[]{})[i];
-                            env.GetVarList().set(new IVariable(two.getName(), one.get(index, t), t));
-                            try {
-                                that.eval(code, env);
-                            } catch (LoopBreakException e) {
-                                int num = e.getTimes();
-                                if (num > 1) {
-                                    e.setTimes(--num);
-                                    throw e;
+                    }
+                } else {
+                    throw new ConfigRuntimeException("Parameter 2 of foreach must be an ivariable", ExceptionType.CastException, t);
+                }
+            } else if (arr instanceof Iterable) {
+                //Sets, ranked maps and deques, which are walked as they were when the loop started
+                if (iv instanceof IVariable) {
+                    IVariable two = (IVariable) iv;
+                    Iterator<Construct> it = ((Iterable<Construct>) arr).iterator();
+                    while (it.hasNext()) {
+                        ExecutionBudget.Checkpoint(env);
+                        env.GetVarList().setValue(two, it.next());
+                        that.eval(code, env);
+                        if (flow.isPending()) {
+                            if (flow.getType() == FlowControl.Type.CONTINUE) {
+                                for (int i = 1; i < flow.getTimes() && it.hasNext(); i++) {
+                                    it.next();
                                 }
+                                flow.clear();
+                            } else {
+                                flow.exitLoop();
                                 return new CVoid(t);
-                            } catch (LoopContinueException e) {
-                                i += e.getTimes() - 1;
-                                continue;
                             }
                         }
                     }
@@ -328,7 +333,7 @@ public class DataHandling {
                     throw new ConfigRuntimeException("Parameter 2 of foreach must be an ivariable", ExceptionType.CastException, t);
                 }
             } else {
-                throw new ConfigRuntimeException("Parameter 1 of foreach must be an array", ExceptionType.CastException, t);
+                throw new ConfigRuntimeException("Parameter 1 of foreach must be an array, a set, a ranked map or a deque", ExceptionType.CastException, t);
             }
 
             return new CVoid(t);
@@ -339,7 +344,9 @@ public class DataHandling {
         }
 
         public String docs() {
-            return "void {array, ivar, code} Walks through array, setting ivar equal to each element in the array, then running code.";
+            return "void {array, ivar, code} Walks through array, setting ivar equal to each element in the array, then running code."
+                    + " A set or a deque may be given instead of an array, in which case ivar is set to each value in it (front first,"
+                    + " for a deque), or a ranked map, in which case ivar is set to each key, lowest score first.";
         }
 
         public boolean isRestricted() {
@@ -411,7 +418,8 @@ public class DataHandling {
             if (args.length == 1) {
                 num = (int) Static.getInt(args[0]);
             }
-            throw new LoopBreakException(num);
+            env.GetFlowControl().doBreak(num);
+            return new CVoid(t);
         }
     }
 
@@ -460,7 +468,8 @@ public class DataHandling {
             if (args.length == 1) {
                 num = (int) Static.getInt(args[0]);
             }
-            throw new LoopContinueException(num);
+            env.GetFlowControl().doContinue(num);
+            return new CVoid(t);
         }
     }
 
@@ -503,7 +512,7 @@ public class DataHandling {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
-            return new CBoolean(!(args[0] instanceof CArray), t);
+            return new CBoolean(!(args[0] instanceof CArray || args[0] instanceof Iterable), t);
         }
     }
 
@@ -935,7 +944,8 @@ public class DataHandling {
 
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             Construct ret = (args.length == 1 ? args[0] : new CVoid(t));
-            throw new FunctionReturnException(ret);
+            env.GetFlowControl().doReturn(ret);
+            return new CVoid(t);
         }
     }
 
@@ -1049,8 +1059,11 @@ public class DataHandling {
             for (int i = 0; i < nodes.length; i++) {
                 args[i] = parent.seval(nodes[i], env);
             }
+            if (env.GetFlowControl().isPending()) {
+                return new CVoid(t);
+            }
             
-            Procedure proc = env.GetProcs().get(args[0].val());
+            Procedure proc = env.GetProc(args[0].val());
             if (proc != null) {
                 List<Construct> vars = new ArrayList<Construct>(Arrays.asList(args));
                 vars.remove(0);
@@ -1105,7 +1118,7 @@ public class DataHandling {
         }
 
         public Construct exec(Target t, Env env, Construct... args) {
-            return new CBoolean(env.GetProcs().get(args[0].val()) == null ? false : true, t);
+            return new CBoolean(env.GetProc(args[0].val()) == null ? false : true, t);
         }
     }
 
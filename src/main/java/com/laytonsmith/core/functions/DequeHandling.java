@@ -0,0 +1,392 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.functions;
+
+import com.laytonsmith.core.CHVersion;
+import com.laytonsmith.core.Env;
+import com.laytonsmith.core.Static;
+import com.laytonsmith.core.api;
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+
+/**
+ *
+ * @author Layton
+ */
+public class DequeHandling {
+    public static String docs(){
+        return "This class contains functions that provide a way to manipulate deques. A deque (double ended queue) is a list"
+                + " that values can be added to or removed from at either end, in the same amount of time no matter how long it"
+                + " is. A deque may be given a capacity, in which case adding a value to a full deque drops the value at the other"
+                + " end, so it always holds the most recently added values. To create a deque, use the <code>deque</code> function.";
+    }
+
+    /**
+     * Returns the argument as a deque, or throws a CastException.
+     * @param c
+     * @param function
+     * @param t
+     * @return
+     */
+    private static CDeque GetDeque(Construct c, String function, Target t){
+        if(c instanceof CDeque){
+            return (CDeque)c;
+        }
+        throw new ConfigRuntimeException("Expecting a deque for " + function + ", but got " + c.val(), ExceptionType.CastException, t);
+    }
+
+    @api public static class deque extends AbstractFunction{
+
+        public String getName() {
+            return "deque";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0, 1};
+        }
+
+        public String docs() {
+            return "deque {[capacity]} Creates a new, empty deque. If capacity is given, and is more than 0, the deque holds at most"
+                    + " that many values, and adding a value to a full deque drops the value at the other end.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.RangeException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            int capacity = 0;
+            if(args.length == 1){
+                long c = Static.getInt(args[0]);
+                if(c < 0 || c > Integer.MAX_VALUE){
+                    throw new ConfigRuntimeException("The capacity of a deque must be from 0 to " + Integer.MAX_VALUE, ExceptionType.RangeException, t);
+                }
+                capacity = (int)c;
+            }
+            return new CDeque(capacity, t);
+        }
+
+    }
+
+    @api public static class deque_push extends AbstractFunction{
+
+        public String getName() {
+            return "deque_push";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2};
+        }
+
+        public String docs() {
+            return "mixed {deque, value} Adds the value to the back of the deque. If the deque was full, the value at the front is"
+                    + " dropped and returned, otherwise null is returned.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            Construct dropped = GetDeque(args[0], getName(), t).pushBack(args[1]);
+            return dropped == null ? new CNull(t) : dropped;
+        }
+
+    }
+
+    @api public static class deque_push_front extends AbstractFunction{
+
+        public String getName() {
+            return "deque_push_front";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2};
+        }
+
+        public String docs() {
+            return "mixed {deque, value} Adds the value to the front of the deque. If the deque was full, the value at the back is"
+                    + " dropped and returned, otherwise null is returned.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            Construct dropped = GetDeque(args[0], getName(), t).pushFront(args[1]);
+            return dropped == null ? new CNull(t) : dropped;
+        }
+
+    }
+
+    @api public static class deque_pop extends AbstractFunction{
+
+        public String getName() {
+            return "deque_pop";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{1};
+        }
+
+        public String docs() {
+            return "mixed {deque} Removes and returns the value at the back of the deque. If the deque is empty,"
+                    + " an IndexOverflowException is thrown.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.IndexOverflowException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            Construct c = GetDeque(args[0], getName(), t).popBack();
+            if(c == null){
+                throw new ConfigRuntimeException("The deque is empty", ExceptionType.IndexOverflowException, t);
+            }
+            return c;
+        }
+
+    }
+
+    @api public static class deque_pop_front extends AbstractFunction{
+
+        public String getName() {
+            return "deque_pop_front";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{1};
+        }
+
+        public String docs() {
+            return "mixed {deque} Removes and returns the value at the front of the deque. If the deque is empty,"
+                    + " an IndexOverflowException is thrown.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.IndexOverflowException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            Construct c = GetDeque(args[0], getName(), t).popFront();
+            if(c == null){
+                throw new ConfigRuntimeException("The deque is empty", ExceptionType.IndexOverflowException, t);
+            }
+            return c;
+        }
+
+    }
+
+    @api public static class deque_get extends AbstractFunction{
+
+        public String getName() {
+            return "deque_get";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2};
+        }
+
+        public String docs() {
+            return "mixed {deque, index} Returns the value at the given index, without removing it. Index 0 is the front of the deque,"
+                    + " and like array indexes, negative indexes count back from the end, so -1 is the back of the deque.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.IndexOverflowException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            CDeque deque = GetDeque(args[0], getName(), t);
+            long index = Static.getInt(args[1]);
+            if(index < 0){
+                index = deque.size() + index;
+            }
+            if(index < 0 || index >= deque.size()){
+                throw new ConfigRuntimeException("The index " + args[1].val() + " is out of bounds", ExceptionType.IndexOverflowException, t);
+            }
+            return deque.get((int)index);
+        }
+
+    }
+
+    @api public static class deque_size extends AbstractFunction{
+
+        public String getName() {
+            return "deque_size";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{1};
+        }
+
+        public String docs() {
+            return "int {deque} Returns the number of values in the deque.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            return new CInt(GetDeque(args[0], getName(), t).size(), t);
+        }
+
+    }
+
+    @api public static class deque_values extends AbstractFunction{
+
+        public String getName() {
+            return "deque_values";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{1};
+        }
+
+        public String docs() {
+            return "array {deque} Returns the values in the deque as a normal array, front first.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            return GetDeque(args[0], getName(), t).toArray(t);
+        }
+
+    }
+}
@@ -84,8 +84,8 @@ public class EventBinding {
                     throw new ConfigRuntimeException("The custom parameters must be ivariables", ExceptionType.CastException, t);
                 }
                 IVariable cur = (IVariable)var;
-                ((IVariable)var).setIval(env.GetVarList().get(cur.getName(), cur.getTarget()).ival());
-                custom_params.set((IVariable)var);
+                //Set by name, so that the handler's frame takes on the handler's slots, not ours
+                custom_params.set(new IVariable(cur.getName(), env.GetVarList().getValue(cur), t));
             }
             Env newEnv = env;
             try{
@@ -130,4 +130,23 @@ public interface Function extends Documentation {
      * functions. If they shouldn't show up in the normal API documentation, return false.
      */
     public boolean appearInDocumentation();
+    
+    /**
+     * If a function is pure, that is, its return value depends only on its arguments, and
+     * it has no side effects, it may return true here. If so, and all the arguments to a call are
+     * constants, the compiler will run the function once, at compile time, and replace the call with
+     * the result. Functions that throw an exception for a given set of arguments are simply left
+     * alone, so the exception still happens at runtime.
+     * @return 
+     */
+    public boolean canOptimize();
+    
+    /**
+     * If canOptimize returns true, this is called by the compiler with the constant arguments,
+     * and should return the same thing exec would. There is no environment at compile time.
+     * @param t
+     * @param args
+     * @return 
+     */
+    public Construct optimize(Target t, Construct... args) throws ConfigRuntimeException;
 }
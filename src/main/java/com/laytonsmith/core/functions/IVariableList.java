@@ -4,28 +4,164 @@
  */
 package com.laytonsmith.core.functions;
 
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Construct;
 import com.laytonsmith.core.constructs.IVariable;
 import com.laytonsmith.core.constructs.Target;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
 /**
- *
+ * A frame of local variables. The compiler gives each variable in a compilation unit (a
+ * script, procedure, event handler or closure) a slot in the unit's {@link SlotTable},
+ * and the values are stored at those indexes in an array, so the interpreter never needs
+ * to hash the name. A frame is sized to its own unit, which it takes on the first time
+ * compiled code uses it. Variables that the unit has no slot for, which happens when code
+ * compiled separately, for instance by include or eval, runs in the frame, or when a
+ * variable is set by name, are kept in a map instead. Cloning a frame doesn't copy it;
+ * the values are shared until one of the frames is written to.
  * @author Layton
  */
 public class IVariableList {
-    Map<String, IVariable> varList = new HashMap<String, IVariable>();
-    
+
+    /**
+     * The slots of the unit this frame belongs to, or null if no compiled code has used it yet.
+     */
+    private SlotTable slots;
+    private Construct[] frame;
+    /**
+     * The variables that don't have a slot in this frame's unit. Null until there are any.
+     */
+    private Map<String, Construct> named;
+    private boolean shared = false;
+
+    public IVariableList(){
+        this(null);
+    }
+
+    /**
+     * Creates an empty frame for the given unit.
+     * @param slots
+     */
+    public IVariableList(SlotTable slots){
+        this.slots = slots;
+        this.frame = new Construct[slots == null ? 0 : slots.size()];
+    }
+
+    private IVariableList(SlotTable slots, Construct[] frame, Map<String, Construct> named){
+        this.slots = slots;
+        this.frame = frame;
+        this.named = named;
+        this.shared = true;
+    }
+
+    /**
+     * Returns the slot the variable is stored in in this frame, or -1 if it is kept by name.
+     */
+    private int slotOf(IVariable var){
+        SlotTable s = var.getSlotTable();
+        if(s != null){
+            if(s == slots){
+                return var.getSlot();
+            }
+            if(slots == null || s.extendsTable(slots)){
+                //This is the first compiled code to use this frame, or a closure
+                //running in a copy of the frame it was created in
+                adopt(s);
+                return var.getSlot();
+            }
+            if(slots.extendsTable(s)){
+                return var.getSlot();
+            }
+        }
+        return slots == null ? -1 : slots.get(var.getName());
+    }
+
+    /**
+     * Makes this frame a frame of the given unit, whose table must extend the current one,
+     * if there is one. Any variables kept by name that the unit has slots for are moved into them.
+     */
+    private void adopt(SlotTable s){
+        frame = Arrays.copyOf(frame, s.size());
+        slots = s;
+        if(named != null){
+            if(shared){
+                named = new HashMap<String, Construct>(named);
+            }
+            Iterator<Map.Entry<String, Construct>> it = named.entrySet().iterator();
+            while(it.hasNext()){
+                Map.Entry<String, Construct> e = it.next();
+                int slot = s.get(e.getKey());
+                if(slot != -1){
+                    frame[slot] = e.getValue();
+                    it.remove();
+                }
+            }
+        }
+        shared = false;
+    }
+
+    /**
+     * Returns the value of the given variable. If the variable hasn't been set yet, it
+     * is set to an empty string.
+     * @param var
+     * @return
+     */
+    public Construct getValue(IVariable var){
+        int slot = slotOf(var);
+        Construct c = slot == -1 ? (named == null ? null : named.get(var.getName())) : frame[slot];
+        if(c == null){
+            c = new CString("", var.getTarget());
+            put(slot, var.getName(), c);
+        }
+        return c;
+    }
+
+    public void setValue(IVariable var, Construct value){
+        put(slotOf(var), var.getName(), value);
+    }
+
+    private void put(int slot, String name, Construct value){
+        if(shared){
+            unshare();
+        }
+        if(slot != -1){
+            frame[slot] = value;
+        } else {
+            if(named == null){
+                named = new HashMap<String, Construct>();
+            }
+            named.put(name, value);
+        }
+    }
+
+    private void unshare(){
+        frame = frame.clone();
+        if(named != null){
+            named = new HashMap<String, Construct>(named);
+        }
+        shared = false;
+    }
+
     public void set(IVariable v){
-        varList.put(v.getName(), v);
+        setValue(v, v.ival());
     }
-    
+
+    /**
+     * Looks up a variable by name. This is slower than getValue, and should only be
+     * used when the name isn't known until runtime.
+     * @param name
+     * @param t
+     * @return
+     */
     public IVariable get(String name, Target t){
-        if(!varList.containsKey(name)){
-            this.set(new IVariable(name, t));
-        }
-        return varList.get(name);
+        IVariable v = new IVariable(name, t);
+        v.setIval(getValue(v));
+        return v;
     }
 
     @Override
@@ -33,30 +169,38 @@ public class IVariableList {
         StringBuilder b = new StringBuilder();
         b.append("[");
         boolean first = true;
-        for(Map.Entry<String, IVariable> entry : varList.entrySet()){
-            IVariable iv = entry.getValue();
+        for(String name : keySet()){
             if(first){
                 first = false;
             } else {
                 b.append(", ");
             }
-            b.append(iv.getName()).append(":").append("(").append(iv.ival().getClass().getSimpleName()).append(")").append(iv.ival().val());
+            Construct c = get(name, Target.UNKNOWN).ival();
+            b.append(name).append(":").append("(").append(c.getClass().getSimpleName()).append(")").append(c.val());
         }
         b.append("]");
         return b.toString();
     }
-    
+
     @Override
     public IVariableList clone(){
-        IVariableList clone = new IVariableList();
-        clone.varList = new HashMap<String, IVariable>(varList);
-        return clone;
+        shared = true;
+        return new IVariableList(slots, frame, named);
     }
 
     //package private, only the reflection package should be accessing this anyways
     Set<String> keySet() {
-        return varList.keySet();
+        Set<String> keys = new LinkedHashSet<String>();
+        for(int i = 0; i < frame.length; i++){
+            if(frame[i] != null){
+                keys.add(slots.name(i));
+            }
+        }
+        if(named != null){
+            keys.addAll(named.keySet());
+        }
+        return keys;
     }
-    
-    
+
+
 }
@@ -14,8 +14,6 @@ import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import com.sk89q.worldedit.expression.Expression;
 import com.sk89q.worldedit.expression.ExpressionException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -71,6 +69,11 @@ public class Math {
         public Boolean runAsync(){
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class subtract extends AbstractFunction{
@@ -118,6 +121,11 @@ public class Math {
         public Boolean runAsync(){
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class multiply extends AbstractFunction{
@@ -165,6 +173,11 @@ public class Math {
         public Boolean runAsync(){
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class divide extends AbstractFunction{
@@ -212,6 +225,11 @@ public class Math {
         public Boolean runAsync(){
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class mod extends AbstractFunction{
@@ -253,6 +271,11 @@ public class Math {
         public Boolean runAsync(){
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class pow extends AbstractFunction{
@@ -294,6 +317,11 @@ public class Math {
         public Boolean runAsync(){
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
     
     @api public static class inc extends AbstractFunction{
@@ -309,24 +337,23 @@ public class Math {
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                Construct ival = env.GetVarList().getValue(cur);
                 Construct newVal;
                 long value = 1;
                 if(args.length == 2){
                     if(args[1] instanceof IVariable){
                         IVariable cur2 = (IVariable)args[1];
-                        args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                        args[1] = env.GetVarList().getValue(cur2);
                     }
                     value = Static.getInt(args[1]);
                 }
-                if(Static.anyDoubles(v.ival())){
-                    newVal = new CDouble(Static.getDouble(v.ival()) + value, t);
+                if(Static.anyDoubles(ival)){
+                    newVal = new CDouble(Static.getDouble(ival) + value, t);
                 } else {
-                    newVal = new CInt(Static.getInt(v.ival()) + value, t);
+                    newVal = new CInt(Static.getInt(ival) + value, t);
                 }
-                v = new IVariable(v.getName(), newVal, t);
-                env.GetVarList().set(v);
-                return v;
+                env.GetVarList().setValue(cur, newVal);
+                return new IVariable(cur.getName(), newVal, t);
             }
             throw new ConfigRuntimeException("inc expects argument 1 to be an ivar", 
                     ExceptionType.CastException, t);
@@ -369,29 +396,28 @@ public class Math {
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                Construct ival = env.GetVarList().getValue(cur);
                 Construct newVal;
                 long value = 1;
                 if(args.length == 2){
                     if(args[1] instanceof IVariable){
                         IVariable cur2 = (IVariable)args[1];
-                        args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                        args[1] = env.GetVarList().getValue(cur2);
                     }
                     value = Static.getInt(args[1]);
                 }
-                if(Static.anyDoubles(v.ival())){
-                    newVal = new CDouble(Static.getDouble(v.ival()) + value, t);
+                if(Static.anyDoubles(ival)){
+                    newVal = new CDouble(Static.getDouble(ival) + value, t);
                 } else {
-                    newVal = new CInt(Static.getInt(v.ival()) + value, t);
+                    newVal = new CInt(Static.getInt(ival) + value, t);
                 }
                 Construct oldVal = null;
                 try {
-                    oldVal = v.ival().clone();
+                    oldVal = ival.clone();
                 } catch (CloneNotSupportedException ex) {
                     Logger.getLogger(Math.class.getName()).log(Level.SEVERE, null, ex);
                 }
-                v = new IVariable(v.getName(), newVal, t);
-                env.GetVarList().set(v);
+                env.GetVarList().setValue(cur, newVal);
                 return oldVal;
             }
             throw new ConfigRuntimeException("inc expects argument 1 to be an ivar", 
@@ -436,24 +462,23 @@ public class Math {
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                Construct ival = env.GetVarList().getValue(cur);
                 long value = 1;
                 if(args.length == 2){
                     if(args[1] instanceof IVariable){
                         IVariable cur2 = (IVariable)args[1];
-                        args[1] = env.GetVarList().get(cur.getName(), cur.getTarget());
+                        args[1] = env.GetVarList().getValue(cur);
                     }
                     value = Static.getInt(args[1]);
                 }
                 Construct newVal;
-                if(Static.anyDoubles(v.ival())){
-                    newVal = new CDouble(Static.getDouble(v.ival()) - value, t);
+                if(Static.anyDoubles(ival)){
+                    newVal = new CDouble(Static.getDouble(ival) - value, t);
                 } else {
-                    newVal = new CInt(Static.getInt(v.ival()) - value, t);
+                    newVal = new CInt(Static.getInt(ival) - value, t);
                 }
-                v = new IVariable(v.getName(), newVal, t);
-                env.GetVarList().set(v);
-                return v;
+                env.GetVarList().setValue(cur, newVal);
+                return new IVariable(cur.getName(), newVal, t);
             }
             throw new ConfigRuntimeException("dec expects argument 1 to be an ivar", 
                     ExceptionType.CastException, t);
@@ -496,29 +521,28 @@ public class Math {
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                Construct ival = env.GetVarList().getValue(cur);
                 Construct newVal;
                 long value = 1;
                 if(args.length == 2){
                     if(args[1] instanceof IVariable){
                         IVariable cur2 = (IVariable)args[1];
-                        args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                        args[1] = env.GetVarList().getValue(cur2);
                     }
                     value = Static.getInt(args[1]);
                 }
-                if(Static.anyDoubles(v.ival())){
-                    newVal = new CDouble(Static.getDouble(v.ival()) - value, t);
+                if(Static.anyDoubles(ival)){
+                    newVal = new CDouble(Static.getDouble(ival) - value, t);
                 } else {
-                    newVal = new CInt(Static.getInt(v.ival()) - value, t);
+                    newVal = new CInt(Static.getInt(ival) - value, t);
                 }
                 Construct oldVal = null;
                 try {
-                    oldVal = v.ival().clone();
+                    oldVal = ival.clone();
                 } catch (CloneNotSupportedException ex) {
                     Logger.getLogger(Math.class.getName()).log(Level.SEVERE, null, ex);
                 }
-                v = new IVariable(v.getName(), newVal, t);
-                env.GetVarList().set(v);
+                env.GetVarList().setValue(cur, newVal);
                 return oldVal;
             }
             throw new ConfigRuntimeException("inc expects argument 1 to be an ivar", 
@@ -652,6 +676,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             double d = Static.getDouble(args[0]);
             return new CDouble(java.lang.Math.abs(d), t);
@@ -695,6 +724,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CInt((long)java.lang.Math.floor(Static.getNumber(args[0])), t);
         }
@@ -737,6 +771,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CInt((long)java.lang.Math.ceil(Static.getNumber(args[0])), t);
         }
@@ -782,6 +821,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             double d = Static.getNumber(args[0]);
             if(d < 0){
@@ -834,20 +878,17 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             if(args.length == 0){
                 throw new ConfigRuntimeException("You must send at least one parameter to min", 
                         ExceptionType.InsufficientArgumentsException, t);
             }
-            double lowest = Double.POSITIVE_INFINITY;
-            List<Construct> list = new ArrayList<Construct>();
-            recList(list, args);
-            for(Construct c : list){
-                double d = Static.getNumber(c);
-                if(d < lowest){
-                    lowest = d;
-                }
-            }
+            double lowest = lowest(Double.POSITIVE_INFINITY, args);
             if(lowest == (long)lowest){
                 return new CInt((long)lowest, t);
             } else {
@@ -855,17 +896,30 @@ public class Math {
             }
         }
         
-        public List<Construct> recList(List<Construct> list, Construct ... args){
+        private double lowest(double lowest, Construct ... args){
             for(Construct c : args){
                 if(c instanceof CArray){
-                    for(int i = 0; i < ((CArray)c).size(); i++){
-                        recList(list, ((CArray)c).get(i, Target.UNKNOWN));
+                    CArray ca = (CArray)c;
+                    boolean packed = ca.isPacked();
+                    for(int i = 0; i < ca.size(); i++){
+                        if(packed){
+                            //Only numbers in here, so they can be read straight out
+                            double d = ca.getNumber(i, Target.UNKNOWN);
+                            if(d < lowest){
+                                lowest = d;
+                            }
+                        } else {
+                            lowest = lowest(lowest, ca.get(i, Target.UNKNOWN));
+                        }
                     }
                 } else {
-                    list.add(c);
+                    double d = Static.getNumber(c);
+                    if(d < lowest){
+                        lowest = d;
+                    }
                 }
             }
-            return list;
+            return lowest;
         }
         
     }
@@ -907,20 +961,17 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             if(args.length == 0){
                 throw new ConfigRuntimeException("You must send at least one parameter to max", 
                         ExceptionType.InsufficientArgumentsException, t);
             }
-            double highest = Double.NEGATIVE_INFINITY;
-            List<Construct> list = new ArrayList<Construct>();
-            recList(list, args);
-            for(Construct c : list){
-                double d = Static.getNumber(c);
-                if(d > highest){
-                    highest = d;
-                }
-            }
+            double highest = highest(Double.NEGATIVE_INFINITY, args);
             if(highest == (long)highest){
                 return new CInt((long)highest, t);
             } else {
@@ -928,17 +979,30 @@ public class Math {
             }
         }
         
-        public List<Construct> recList(List<Construct> list, Construct ... args){
+        private double highest(double highest, Construct ... args){
             for(Construct c : args){
                 if(c instanceof CArray){
-                    for(int i = 0; i < ((CArray)c).size(); i++){
-                        recList(list, ((CArray)c).get(i, Target.UNKNOWN));
+                    CArray ca = (CArray)c;
+                    boolean packed = ca.isPacked();
+                    for(int i = 0; i < ca.size(); i++){
+                        if(packed){
+                            //Only numbers in here, so they can be read straight out
+                            double d = ca.getNumber(i, Target.UNKNOWN);
+                            if(d > highest){
+                                highest = d;
+                            }
+                        } else {
+                            highest = highest(highest, ca.get(i, Target.UNKNOWN));
+                        }
                     }
                 } else {
-                    list.add(c);
+                    double d = Static.getNumber(c);
+                    if(d > highest){
+                        highest = d;
+                    }
                 }
             }
-            return list;
+            return highest;
         }
         
     }
@@ -979,6 +1043,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.sin(Static.getNumber(args[0])), t);
         }
@@ -1021,6 +1090,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.cos(Static.getNumber(args[0])), t);
         }
@@ -1063,6 +1137,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.tan(Static.getNumber(args[0])), t);
         }
@@ -1105,6 +1184,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.asin(Static.getNumber(args[0])), t);
         }
@@ -1147,6 +1231,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.acos(Static.getNumber(args[0])), t);
         }
@@ -1189,6 +1278,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.atan(Static.getNumber(args[0])), t);
         }
@@ -1231,6 +1325,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.toRadians(Static.getNumber(args[0])), t);
         }
@@ -1273,6 +1372,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.toDegrees(Static.getNumber(args[0])), t);
         }
@@ -1319,6 +1423,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CDouble(java.lang.Math.atan2(Static.getNumber(args[0]), Static.getNumber(args[1])), t);
         }
@@ -1361,6 +1470,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
             return new CInt(java.lang.Math.round(Static.getNumber(args[0])), t);
         }
@@ -1472,6 +1586,11 @@ public class Math {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             if(args[0] instanceof CInt){
                 return new CInt(-(Static.getInt(args[0])), t);
@@ -585,6 +585,98 @@ public class Meta {
         
     }
     
+    @api public static class clear_permission_cache extends AbstractFunction{
+
+        public String getName() {
+            return "clear_permission_cache";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0, 1};
+        }
+
+        public String docs() {
+            return "void {[player]} Permission checks for functions and aliases are cached per player, and the cache is normally only cleared"
+                    + " when a player joins or quits, or the aliases are reloaded. If permissions are changed while a player is online, this"
+                    + " can be used to make them take effect immediately. If player is given, only that player's cached permissions are cleared,"
+                    + " otherwise everyone's are.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{};
+        }
+
+        public boolean isRestricted() {
+            return true;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            if(args.length == 1){
+                PermissionCache.Clear(args[0].val());
+            } else {
+                PermissionCache.ClearAll();
+            }
+            return new CVoid(t);
+        }
+        
+    }
+    
+    @api public static class permission_cache_stats extends AbstractFunction{
+
+        public String getName() {
+            return "permission_cache_stats";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0};
+        }
+
+        public String docs() {
+            return "array {} Returns an associative array with the number of permission checks that were answered from the permission cache"
+                    + " (hits), and the number that had to be passed to the permissions system (misses), since the server started.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{};
+        }
+
+        public boolean isRestricted() {
+            return true;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            CArray ret = new CArray(t);
+            ret.set("hits", new CInt(PermissionCache.Hits(), t));
+            ret.set("misses", new CInt(PermissionCache.Misses(), t));
+            return ret;
+        }
+        
+    }
+    
     @api public static class get_cmd extends AbstractFunction{
 
         public String getName() {
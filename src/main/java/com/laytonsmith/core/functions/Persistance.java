@@ -6,6 +6,7 @@ package com.laytonsmith.core.functions;
 
 import com.laytonsmith.core.CHVersion;
 import com.laytonsmith.core.Env;
+import com.laytonsmith.core.PersistanceCache;
 import com.laytonsmith.core.Static;
 import com.laytonsmith.core.api;
 import com.laytonsmith.core.constructs.*;
@@ -46,11 +47,13 @@ public class Persistance {
         public String docs() {
             return "void {key[, namespace, ...], value} Allows you to store a value, which can then be retrieved later. key must be a string containing"
                     + " only letters, numbers, underscores. Periods may also be used, but they form a namespace, and have special meaning."
-                    + " (See get_values())";
+                    + " (See get_values()) If the value is written out straight away, which is the case with the log persistance engine, or if the"
+                    + " persistance-flush-interval preference is 0, an IOException is thrown if that fails. Otherwise, the value is written out"
+                    + " in the background, and any failure is only logged to the console.";
         }
         
         public ExceptionType[] thrown(){
-            return new ExceptionType[]{ExceptionType.FormatException};
+            return new ExceptionType[]{ExceptionType.FormatException, ExceptionType.IOException};
         }
 
         public boolean isRestricted() {
@@ -69,9 +72,9 @@ public class Persistance {
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             String key = GetNamespace(args, args.length - 1, getName(), t);
-            String value = null;
+            byte[] value = null;
             try{
-                value = Construct.json_encode(args[args.length - 1], t);
+                value = ConstructCodec.Encode(args[args.length - 1], t);
             } catch(MarshalException e){
                 throw new ConfigRuntimeException(e.getMessage(), t);
             }
@@ -89,12 +92,15 @@ public class Persistance {
                             ExceptionType.FormatException, t);
                 }
             }
-            Static.getPersistance().setValue(new String[]{"storage", key}, value);
             try {
-                Static.getPersistance().save();
+                //storeValue takes care of writing the change out
+                Static.getPersistance().storeValue(new String[]{"storage", key}, value);
             } catch (Exception ex) {
                 Logger.getLogger(Persistance.class.getName()).log(Level.SEVERE, null, ex);
-                throw new ConfigRuntimeException(ex.getMessage(), null, t, ex);
+                throw new ConfigRuntimeException(ex.getMessage(), ExceptionType.IOException, t, ex);
+            } finally {
+                //The value is changed in memory even if writing it out failed
+                PersistanceCache.Invalidate(key);
             }
             return new CVoid(t);
         }
@@ -141,21 +147,23 @@ public class Persistance {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {            
-            Object o;
+            String key = GetNamespace(args, null, getName(), t);
+            Construct c = PersistanceCache.Get(key);
+            if(c != null){
+                return c;
+            }
+            long generation = PersistanceCache.Generation();
+            Object obj = Static.getPersistance().getValue(new String[]{"storage", key});
+            if(obj == null){
+                return new CNull(t);
+            }
             try {
-                Object obj = Static.getPersistance().getValue(new String[]{"storage", GetNamespace(args, null, getName(), t)});
-                if(obj == null){
-                    return new CNull(t);
-                }
-                o = Construct.json_decode(obj.toString(), t);
+                c = ConstructCodec.Read(obj, t);
             } catch (MarshalException ex) {
                 throw new ConfigRuntimeException(ex.getMessage(), t);
             }
-            try{
-                return (Construct)o;
-            } catch(ClassCastException e){
-                return new CNull(t);
-            }
+            PersistanceCache.Put(key, c, generation);
+            return c;
         }
         public Boolean runAsync(){
             //Because we do IO
@@ -205,13 +213,18 @@ public class Persistance {
             List<String> keyChain = new ArrayList<String>();
             keyChain.add("storage");
             keyChain.addAll(Arrays.asList(GetNamespace(args, null, getName(), t).split("\\.")));
+            long generation = PersistanceCache.Generation();
             List<Map.Entry<String, Object>> list = p.getNamespaceValues(keyChain.toArray(new String[]{}));
             CArray ca = new CArray(t);
             for(Map.Entry<String, Object> e : list){
                 try {
                     String key = ((String)e.getKey()).replaceFirst("storage\\.", ""); //Get that junk out of here
-                    ca.set(new CString(key, t), 
-                            Construct.json_decode(e.getValue().toString(), t));
+                    Construct c = PersistanceCache.Get(key);
+                    if(c == null){
+                        c = ConstructCodec.Read(e.getValue(), t);
+                        PersistanceCache.Put(key, c, generation);
+                    }
+                    ca.set(new CString(key, t), c);
                 } catch (MarshalException ex) {
                     Logger.getLogger(Persistance.class.getName()).log(Level.SEVERE, null, ex);
                 }
@@ -302,7 +315,9 @@ public class Persistance {
         }
 
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
-            Static.getPersistance().setValue(new String[]{"storage", GetNamespace(args, null, getName(), t)}, null);
+            String key = GetNamespace(args, null, getName(), t);
+            Static.getPersistance().setValue(new String[]{"storage", key}, null);
+            PersistanceCache.Invalidate(key);
             return new CVoid(t);
         }
         
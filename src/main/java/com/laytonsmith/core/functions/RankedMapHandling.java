@@ -0,0 +1,397 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.functions;
+
+import com.laytonsmith.core.CHVersion;
+import com.laytonsmith.core.Env;
+import com.laytonsmith.core.Static;
+import com.laytonsmith.core.api;
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+
+/**
+ *
+ * @author Layton
+ */
+public class RankedMapHandling {
+    public static String docs(){
+        return "This class contains functions that provide a way to manipulate ranked maps. A ranked map holds a numeric score"
+                + " for each key, and is always kept sorted by score, so it can be used for things like leaderboards without"
+                + " having to sort anything. Keys with the same score are sorted by key. Ranks start at 0, for the lowest score."
+                + " To create a ranked map, use the <code>rankedmap</code> function. A ranked map can be stored with store_value.";
+    }
+
+    /**
+     * Returns the argument as a ranked map, or throws a CastException.
+     * @param c
+     * @param function
+     * @param t
+     * @return
+     */
+    private static CRankedMap GetRankedMap(Construct c, String function, Target t){
+        if(c instanceof CRankedMap){
+            return (CRankedMap)c;
+        }
+        throw new ConfigRuntimeException("Expecting a ranked map for " + function + ", but got " + c.val(), ExceptionType.CastException, t);
+    }
+
+    @api public static class rankedmap extends AbstractFunction{
+
+        public String getName() {
+            return "rankedmap";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0, 1};
+        }
+
+        public String docs() {
+            return "rankedmap {[array]} Creates a new ranked map. If an associative array is given, its keys and scores are"
+                    + " put in the map.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            CRankedMap map = new CRankedMap(t);
+            if(args.length == 1){
+                if(!(args[0] instanceof CArray)){
+                    throw new ConfigRuntimeException("Expecting an array for rankedmap, but got " + args[0].val(), ExceptionType.CastException, t);
+                }
+                CArray.Cursor cursor = ((CArray)args[0]).cursor(t);
+                while(cursor.next()){
+                    map.put(cursor.key(), cursor.value());
+                }
+            }
+            return map;
+        }
+
+    }
+
+    @api public static class rankedmap_put extends AbstractFunction{
+
+        public String getName() {
+            return "rankedmap_put";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{3};
+        }
+
+        public String docs() {
+            return "mixed {map, key, score} Sets the score of the key, and returns its old score, or null if it wasn't in the map.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            Construct old = GetRankedMap(args[0], getName(), t).put(args[1].val(), args[2]);
+            return old == null ? new CNull(t) : old;
+        }
+
+    }
+
+    @api public static class rankedmap_get extends AbstractFunction{
+
+        public String getName() {
+            return "rankedmap_get";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2};
+        }
+
+        public String docs() {
+            return "mixed {map, key} Returns the score of the key, or null if it isn't in the map.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            Construct score = GetRankedMap(args[0], getName(), t).get(args[1].val());
+            return score == null ? new CNull(t) : score;
+        }
+
+    }
+
+    @api public static class rankedmap_remove extends AbstractFunction{
+
+        public String getName() {
+            return "rankedmap_remove";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2};
+        }
+
+        public String docs() {
+            return "mixed {map, key} Removes the key from the map, and returns its score, or null if it wasn't in the map.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            Construct old = GetRankedMap(args[0], getName(), t).remove(args[1].val());
+            return old == null ? new CNull(t) : old;
+        }
+
+    }
+
+    @api public static class rankedmap_size extends AbstractFunction{
+
+        public String getName() {
+            return "rankedmap_size";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{1};
+        }
+
+        public String docs() {
+            return "int {map} Returns the number of keys in the map.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            return new CInt(GetRankedMap(args[0], getName(), t).size(), t);
+        }
+
+    }
+
+    @api public static class rankedmap_rank extends AbstractFunction{
+
+        public String getName() {
+            return "rankedmap_rank";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2, 3};
+        }
+
+        public String docs() {
+            return "mixed {map, key, [highestFirst]} Returns the rank of the key, or null if it isn't in the map. Ranks start at 0,"
+                    + " for the lowest score, unless highestFirst is true, in which case they start at 0 for the highest score.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            CRankedMap map = GetRankedMap(args[0], getName(), t);
+            int rank = map.rank(args[1].val());
+            if(rank == -1){
+                return new CNull(t);
+            }
+            if(args.length == 3 && Static.getBoolean(args[2])){
+                rank = map.size() - 1 - rank;
+            }
+            return new CInt(rank, t);
+        }
+
+    }
+
+    @api public static class rankedmap_at extends AbstractFunction{
+
+        public String getName() {
+            return "rankedmap_at";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2};
+        }
+
+        public String docs() {
+            return "string {map, rank} Returns the key with the given rank. Ranks start at 0, for the lowest score, and like array"
+                    + " indexes, negative ranks count back from the end, so -1 is the key with the highest score.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.IndexOverflowException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            CRankedMap map = GetRankedMap(args[0], getName(), t);
+            long rank = Static.getInt(args[1]);
+            if(rank < 0){
+                rank = map.size() + rank;
+            }
+            if(rank < 0 || rank >= map.size()){
+                throw new ConfigRuntimeException("The rank " + args[1].val() + " is out of bounds", ExceptionType.IndexOverflowException, t);
+            }
+            return new CString(map.at((int)rank), t);
+        }
+
+    }
+
+    @api public static class rankedmap_range extends AbstractFunction{
+
+        public String getName() {
+            return "rankedmap_range";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{3};
+        }
+
+        public String docs() {
+            return "array {map, min, max} Returns an array of the keys whose score is from min to max (inclusive), lowest score first.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            CRankedMap map = GetRankedMap(args[0], getName(), t);
+            CArray keys = new CArray(t);
+            for(String key : map.range(Static.getNumber(args[1]), Static.getNumber(args[2]))){
+                keys.push(new CString(key, t));
+            }
+            return keys;
+        }
+
+    }
+}
@@ -513,8 +513,27 @@ public class Sandbox {
 
         @Override
         public Construct execs(Target t, Env env, Script parent, GenericTreeNode<Construct>... nodes) {
+            List<GenericTreeNode<Construct>> list = rewrite(new ArrayList<GenericTreeNode<Construct>>(Arrays.asList(nodes)), t);
+            if (list.size() == 1) {
+                //We condensed down to the point that we no longer need to concat
+                return parent.eval(list.get(0), env);
+            }
+            StringHandling.sconcat sc = new StringHandling.sconcat();
+            return sc.execs(t, env, parent, list.toArray(new GenericTreeNode[]{}));
+        }
+
+        /**
+         * Converts the symbols in the list into their function equivalents, taking operator
+         * precedence into account. The list is modified in place, and returned. If it ends
+         * up with only one node, the autoconcat isn't needed at all, otherwise the remaining
+         * nodes should be passed to sconcat. Since this only depends on the structure of the tree,
+         * the compiler uses it to do the rewrite once, ahead of time.
+         * @param list
+         * @param t
+         * @return 
+         */
+        public static List<GenericTreeNode<Construct>> rewrite(List<GenericTreeNode<Construct>> list, Target t) {
             //If any of our nodes are CSymbols, we have different behavior
-            List<GenericTreeNode<Construct>> list = new ArrayList<GenericTreeNode<Construct>>(Arrays.asList(nodes));
             boolean inSymbolMode = false; //catching this can save Xn
 
             //postfix
@@ -695,12 +714,7 @@ public class Sandbox {
                     }
                 }
             }
-            if (list.size() == 1) {
-                //We condensed down to the point that we no longer need to concat
-                return parent.eval(list.get(0), env);
-            }
-            StringHandling.sconcat sc = new StringHandling.sconcat();
-            return sc.execs(t, env, parent, list.toArray(new GenericTreeNode[]{}));
+            return list;
         }
 
         public String docs() {
@@ -7,6 +7,7 @@ package com.laytonsmith.core.functions;
 import com.laytonsmith.abstraction.StaticLayer;
 import com.laytonsmith.core.CHVersion;
 import com.laytonsmith.core.Env;
+import com.laytonsmith.core.ExecutionBudget;
 import com.laytonsmith.core.Static;
 import com.laytonsmith.core.api;
 import com.laytonsmith.core.constructs.*;
@@ -129,6 +130,8 @@ public class Scheduling {
         public String docs() {
             return "void {seconds} Sleeps the script for the specified number of seconds, up to the maximum time limit defined in the preferences file."
                     + " Seconds may be a double value, so 0.5 would be half a second."
+                    + " If the script has an execution budget (see the execution-budget preference), the script is paused instead, and the server"
+                    + " carries on in the meantime, which also works in the main server thread."
                     + " PLEASE NOTE: Sleep times are NOT very accurate, and should not be relied on for preciseness.";
         }
         
@@ -152,7 +155,12 @@ public class Scheduling {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
-            if (Thread.currentThread().getName().equals("Server thread")) {
+            if (ExecutionBudget.Sleep(env, (long)(Static.getNumber(args[0]) * 1000))) {
+                //A budgeted script gives the server its thread back while it sleeps
+                return new CVoid(t);
+            }
+            //A script thread only runs while the server thread waits for it
+            if (Thread.currentThread().getName().equals("Server thread") || ExecutionBudget.IsScriptThread()) {
                 throw new ConfigRuntimeException("sleep() cannot be run in the main server thread", 
                         null, t);
             }
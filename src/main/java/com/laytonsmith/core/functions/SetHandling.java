@@ -0,0 +1,443 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.functions;
+
+import com.laytonsmith.core.CHVersion;
+import com.laytonsmith.core.Env;
+import com.laytonsmith.core.api;
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+
+/**
+ *
+ * @author Layton
+ */
+public class SetHandling {
+    public static String docs(){
+        return "This class contains functions that provide a way to manipulate sets. A set holds each value at most once, and"
+                + " checking whether or not a value is in a set takes the same amount of time no matter how big the set is."
+                + " Values are the same if equals() says they are, so 1, '1' and 1.0 are all the same value. Arrays can't be put"
+                + " in a set. To create a set, use the <code>hashset</code> function.";
+    }
+
+    /**
+     * Returns the argument as a set, or throws a CastException.
+     * @param c
+     * @param function
+     * @param t
+     * @return
+     */
+    private static CSet GetSet(Construct c, String function, Target t){
+        if(c instanceof CSet){
+            return (CSet)c;
+        }
+        throw new ConfigRuntimeException("Expecting a set for " + function + ", but got " + c.val(), ExceptionType.CastException, t);
+    }
+
+    @api public static class hashset extends AbstractFunction{
+
+        public String getName() {
+            return "hashset";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{Integer.MAX_VALUE};
+        }
+
+        public String docs() {
+            return "set {[values...]} Creates a new set, containing the given values. If any of the values are arrays, the values in"
+                    + " the array are added, rather than the array itself, so hashset(array(1, 2)) is the same as hashset(1, 2).";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            CSet set = new CSet(t);
+            for(Construct arg : args){
+                if(arg instanceof CArray){
+                    CArray.Cursor cursor = ((CArray)arg).cursor(t);
+                    while(cursor.next()){
+                        set.add(cursor.value());
+                    }
+                } else {
+                    set.add(arg);
+                }
+            }
+            return set;
+        }
+
+    }
+
+    @api public static class hashset_add extends AbstractFunction{
+
+        public String getName() {
+            return "hashset_add";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{Integer.MAX_VALUE};
+        }
+
+        public String docs() {
+            return "boolean {set, value, [values...]} Adds the values to the set. Returns true if any of the values weren't already"
+                    + " in the set.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.InsufficientArgumentsException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            if(args.length < 2){
+                throw new ConfigRuntimeException("hashset_add must be called with at least two parameters", ExceptionType.InsufficientArgumentsException, t);
+            }
+            CSet set = GetSet(args[0], getName(), t);
+            boolean added = false;
+            for(int i = 1; i < args.length; i++){
+                added = set.add(args[i]) || added;
+            }
+            return new CBoolean(added, t);
+        }
+
+    }
+
+    @api public static class hashset_remove extends AbstractFunction{
+
+        public String getName() {
+            return "hashset_remove";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2};
+        }
+
+        public String docs() {
+            return "boolean {set, value} Removes the value from the set. Returns true if it was in the set.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            return new CBoolean(GetSet(args[0], getName(), t).remove(args[1]), t);
+        }
+
+    }
+
+    @api public static class hashset_contains extends AbstractFunction{
+
+        public String getName() {
+            return "hashset_contains";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{2};
+        }
+
+        public String docs() {
+            return "boolean {set, value} Returns true if the value is in the set.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            return new CBoolean(GetSet(args[0], getName(), t).contains(args[1]), t);
+        }
+
+    }
+
+    @api public static class hashset_size extends AbstractFunction{
+
+        public String getName() {
+            return "hashset_size";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{1};
+        }
+
+        public String docs() {
+            return "int {set} Returns the number of values in the set.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            return new CInt(GetSet(args[0], getName(), t).size(), t);
+        }
+
+    }
+
+    @api public static class hashset_values extends AbstractFunction{
+
+        public String getName() {
+            return "hashset_values";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{1};
+        }
+
+        public String docs() {
+            return "array {set} Returns the values in the set as a normal array, in the order they were added.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            return GetSet(args[0], getName(), t).toArray(t);
+        }
+
+    }
+
+    @api public static class hashset_union extends AbstractFunction{
+
+        public String getName() {
+            return "hashset_union";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{Integer.MAX_VALUE};
+        }
+
+        public String docs() {
+            return "set {set1, set2, [setN...]} Returns a new set, containing every value that is in any of the given sets.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.InsufficientArgumentsException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            if(args.length < 2){
+                throw new ConfigRuntimeException("hashset_union must be called with at least two parameters", ExceptionType.InsufficientArgumentsException, t);
+            }
+            CSet set = new CSet(t);
+            for(Construct arg : args){
+                set.addAll(GetSet(arg, getName(), t));
+            }
+            return set;
+        }
+
+    }
+
+    @api public static class hashset_intersect extends AbstractFunction{
+
+        public String getName() {
+            return "hashset_intersect";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{Integer.MAX_VALUE};
+        }
+
+        public String docs() {
+            return "set {set1, set2, [setN...]} Returns a new set, containing only the values that are in all of the given sets.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.InsufficientArgumentsException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            if(args.length < 2){
+                throw new ConfigRuntimeException("hashset_intersect must be called with at least two parameters", ExceptionType.InsufficientArgumentsException, t);
+            }
+            CSet set = new CSet(t);
+            set.addAll(GetSet(args[0], getName(), t));
+            for(int i = 1; i < args.length; i++){
+                set.retainAll(GetSet(args[i], getName(), t));
+            }
+            return set;
+        }
+
+    }
+
+    @api public static class hashset_difference extends AbstractFunction{
+
+        public String getName() {
+            return "hashset_difference";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{Integer.MAX_VALUE};
+        }
+
+        public String docs() {
+            return "set {set1, set2, [setN...]} Returns a new set, containing the values in set1 that aren't in any of the other sets.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.CastException, ExceptionType.InsufficientArgumentsException};
+        }
+
+        public boolean isRestricted() {
+            return false;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            if(args.length < 2){
+                throw new ConfigRuntimeException("hashset_difference must be called with at least two parameters", ExceptionType.InsufficientArgumentsException, t);
+            }
+            CSet set = new CSet(t);
+            set.addAll(GetSet(args[0], getName(), t));
+            for(int i = 1; i < args.length; i++){
+                set.removeAll(GetSet(args[i], getName(), t));
+            }
+            return set;
+        }
+
+    }
+}
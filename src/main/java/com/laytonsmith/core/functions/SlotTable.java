@@ -0,0 +1,94 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.functions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The variable slots of one compilation unit, that is, a script, a procedure, an event
+ * handler or a closure. The compiler gives each variable name in the unit a slot, and
+ * the unit's frames are arrays with one entry per slot. A table isn't changed once the
+ * unit has been compiled.
+ *
+ * A closure runs in a copy of the frame it was created in, so its table extends the
+ * table of the code around it: it has all of that table's slots, at the same indexes,
+ * followed by the slots of the variables that only the closure uses.
+ * @author Layton
+ */
+public final class SlotTable {
+
+    private final SlotTable enclosing;
+    private final Map<String, Integer> slots;
+    private final List<String> names;
+
+    public SlotTable(){
+        this.enclosing = null;
+        this.slots = new HashMap<String, Integer>();
+        this.names = new ArrayList<String>();
+    }
+
+    /**
+     * Creates a table for a closure, which starts with all the slots of the enclosing
+     * table. The enclosing table must not be added to afterwards.
+     * @param enclosing
+     */
+    public SlotTable(SlotTable enclosing){
+        this.enclosing = enclosing;
+        this.slots = new HashMap<String, Integer>(enclosing.slots);
+        this.names = new ArrayList<String>(enclosing.names);
+    }
+
+    /**
+     * Returns the slot of the variable with the given name, giving it a new one if the
+     * name isn't in the table yet. Only the compiler should add to a table.
+     * @param name
+     * @return
+     */
+    public int add(String name){
+        Integer slot = slots.get(name);
+        if(slot == null){
+            slot = names.size();
+            slots.put(name, slot);
+            names.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot of the variable with the given name, or -1 if it doesn't have one.
+     * @param name
+     * @return
+     */
+    public int get(String name){
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public String name(int slot){
+        return names.get(slot);
+    }
+
+    public int size(){
+        return names.size();
+    }
+
+    /**
+     * Returns true if this table is the given table, or extends it, in which case the
+     * slots of the given table mean the same thing in this one.
+     * @param table
+     * @return
+     */
+    public boolean extendsTable(SlotTable table){
+        for(SlotTable t = this; t != null; t = t.enclosing){
+            if(t == table){
+                return true;
+            }
+        }
+        return false;
+    }
+}
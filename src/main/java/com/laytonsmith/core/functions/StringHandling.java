@@ -140,6 +140,11 @@ public class StringHandling {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
 
     @api
@@ -226,6 +231,27 @@ public class StringHandling {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
+        @Override
+        public Construct optimize(Target t, Construct... args) {
+            if(args.length > 0 && args[0] instanceof CLabel){
+                //The compiler never sends labels, since they aren't constants
+                throw new ConfigRuntimeException("Cannot optimize a label", t);
+            }
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < args.length; i++) {
+                if (i > 0) {
+                    b.append(" ");
+                }
+                b.append(args[i].val());
+            }
+            return new CString(b.toString(), t);
+        }
         
         @Override
         public boolean useSpecialExec() {
@@ -344,6 +370,11 @@ public class StringHandling {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
 
     @api
@@ -443,6 +474,11 @@ public class StringHandling {
         public Boolean runAsync() {
             return null;
         }
+
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
     }
 
     @api
@@ -483,6 +519,11 @@ public class StringHandling {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             if (args[0] instanceof CArray) {
                 return new CInt(((CArray) args[0]).size(), t);
@@ -530,6 +571,11 @@ public class StringHandling {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             return new CString(args[0].val().toUpperCase(), t);
         }
@@ -573,6 +619,11 @@ public class StringHandling {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             return new CString(args[0].val().toLowerCase(), t);
         }
@@ -619,6 +670,11 @@ public class StringHandling {
             return null;
         }
 
+        @Override
+        public boolean canOptimize() {
+            return true;
+        }
+
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
             try {
                 String s = args[0].val();
@@ -5,20 +5,26 @@
 package com.laytonsmith.tools;
 
 import com.laytonsmith.PureUtilities.FileUtility;
+import com.laytonsmith.PureUtilities.LogPersistance;
 import com.laytonsmith.PureUtilities.Persistance;
+import com.laytonsmith.PureUtilities.SQLPersistance;
 import com.laytonsmith.PureUtilities.SerializedPersistance;
 import com.laytonsmith.PureUtilities.TermColors.SYS;
 import static com.laytonsmith.PureUtilities.TermColors.*;
 import com.laytonsmith.core.Env;
 import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.Prefs;
 import com.laytonsmith.core.Static;
 import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.ConstructCodec;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.MarshalException;
 import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.regex.Matcher;
@@ -255,17 +261,16 @@ public class Manager {
             pl(RED + "That value is not set!");
             return true;
         }
-        pl(CYAN + key + ":" + WHITE + db.getValue(new String[]{key}));
+        pl(CYAN + key + ":" + WHITE + Display(db.getValue(new String[]{key})));
         return true;
     }
     
     public static boolean doAddEdit(String key, String valueScript){
         try {
             Construct c = MethodScriptCompiler.execute(MethodScriptCompiler.compile(MethodScriptCompiler.lex(valueScript, null)), new Env(), null, null);
-            String value = Construct.json_encode(c, Target.UNKNOWN);
-            pl(CYAN + "Adding: " + WHITE + value);
+            pl(CYAN + "Adding: " + WHITE + Construct.json_encode(c, Target.UNKNOWN));
             Persistance db = GetDB();
-            db.setValue(new String[]{key}, value);
+            db.setValue(new String[]{key}, ConstructCodec.Encode(c, Target.UNKNOWN));
             db.save();
             return true;
         } catch (Exception ex) {
@@ -292,20 +297,39 @@ public class Manager {
     
     public static void print(String [] args) {
         Map data = null;
-        if (GetDB() instanceof SerializedPersistance) {
-            File db = new File("CommandHelper/persistance.ser");
-            if (!db.exists()) {
-                pl("Looks like you haven't used your persistance file yet.");
-                return;
-            }
-            SerializedPersistance sp = new SerializedPersistance(db, null);
+        Persistance p = GetDB();
+        if (!(p instanceof SerializedPersistance)) {
             try {
-                sp.load();
+                p.load();
             } catch (Exception ex) {
                 pl(RED + ex.getMessage());
+                return;
             }
-            data = sp.rawData();
+            pl();
+            if (args[0].equals("")) {
+                p.printValues(System.out);
+            } else {
+                List<Map.Entry<String, Object>> values = p.getNamespaceValues(new String[]{args[0]});
+                for (Map.Entry<String, Object> e : values) {
+                    pl(CYAN + e.getKey() + ": " + WHITE + Display(e.getValue()));
+                }
+                pl(BLUE + values.size() + " items found");
+            }
+            p.close();
+            return;
+        }
+        File db = new File("CommandHelper/persistance.ser");
+        if (!db.exists()) {
+            pl("Looks like you haven't used your persistance file yet.");
+            return;
+        }
+        SerializedPersistance sp = (SerializedPersistance) p;
+        try {
+            sp.load();
+        } catch (Exception ex) {
+            pl(RED + ex.getMessage());
         }
+        data = sp.rawData();
         pl();
         if (data != null) {
             int count = 0;
@@ -316,7 +340,7 @@ public class Manager {
                         continue;
                     }
                 }
-                pl(CYAN + key.toString() + ": " + WHITE + data.get(key).toString());
+                pl(CYAN + key.toString() + ": " + WHITE + Display(data.get(key)));
                 count++;
             }
             pl(BLUE + count + " items found");
@@ -412,9 +436,44 @@ public class Manager {
         }
     }
     
+    /**
+     * Returns a value from the database as text. Values stored by scripts are shown as
+     * JSON, and anything else, such as aliases, is shown as is.
+     * @param value
+     * @return
+     */
+    private static String Display(Object value){
+        if(value instanceof byte[]){
+            try {
+                return Construct.json_encode(ConstructCodec.Decode((byte[]) value, Target.UNKNOWN), Target.UNKNOWN);
+            } catch (MarshalException ex) {
+                return RED + ex.getMessage();
+            }
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Opens the database with the engine the plugin is set to use, which is chosen with the
+     * persistance-engine preference.
+     * @return
+     */
     public static Persistance GetDB(){
-        //Figure out what engine they're using
-        //For now, it's obviously SerializedPersistance
+        String engine = "serialization";
+        try {
+            File prefsFile = new File("CommandHelper/preferences.txt");
+            if (prefsFile.exists()) {
+                Static.getPreferences().init(prefsFile);
+            }
+            engine = Prefs.PersistanceEngine();
+        } catch (IOException ex) {
+            pl(RED + ex.getMessage());
+        }
+        if (engine.equalsIgnoreCase("log")) {
+            return new LogPersistance(new File("CommandHelper/persistance"), new File("CommandHelper/persistance.ser"));
+        } else if (engine.equalsIgnoreCase("sqlite")) {
+            return new SQLPersistance(new File("CommandHelper/persistance.db"), new File("CommandHelper/persistance.ser"));
+        }
         return new SerializedPersistance(new File("CommandHelper/persistance.ser"), null);
     }
 
@@ -0,0 +1,158 @@
+package com.laytonsmith.PureUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author layton
+ */
+public class LogPersistanceTest {
+
+    private File dir;
+
+    public LogPersistanceTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("persistance", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        for(File f : dir.listFiles()){
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testValuesSurviveReload() {
+        LogPersistance p = new LogPersistance(dir);
+        p.setValue(new String[]{"storage", "a"}, "1");
+        p.setValue(new String[]{"storage", "b"}, "2");
+        assertEquals("1", p.setValue(new String[]{"storage", "a"}, "3"));
+        p.setValue(new String[]{"storage", "b"}, null);
+        p.setValue(new String[]{"user", "x", "aliases", "1"}, "/test");
+        p.close();
+        LogPersistance reloaded = new LogPersistance(dir);
+        assertEquals("3", reloaded.getValue(new String[]{"storage", "a"}));
+        assertNull(reloaded.getValue(new String[]{"storage", "b"}));
+        assertTrue(reloaded.isNamespaceSet(new String[]{"user", "x"}));
+        assertFalse(reloaded.isNamespaceSet(new String[]{"user", "xy"}));
+        assertEquals(1, reloaded.getNamespaceValues(new String[]{"storage"}).size());
+        reloaded.close();
+    }
+
+    @Test
+    public void testTornWriteIsDiscarded() throws IOException {
+        LogPersistance p = new LogPersistance(dir);
+        p.setValue(new String[]{"a"}, "1");
+        p.setValue(new String[]{"b"}, "2");
+        p.close();
+        //Cut the last record short, as if the server died while writing it
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.setLength(raf.length() - 1);
+        raf.close();
+        LogPersistance reloaded = new LogPersistance(dir);
+        assertEquals("1", reloaded.getValue(new String[]{"a"}));
+        assertNull(reloaded.getValue(new String[]{"b"}));
+        reloaded.setValue(new String[]{"c"}, "3");
+        reloaded.close();
+        reloaded = new LogPersistance(dir);
+        assertEquals("3", reloaded.getValue(new String[]{"c"}));
+        reloaded.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testCompaction() throws InterruptedException {
+        LogPersistance p = new LogPersistance(dir);
+        StringBuilder b = new StringBuilder();
+        for(int i = 0; i < 1000; i++){
+            b.append("x");
+        }
+        String big = b.toString();
+        for(int i = 0; i < 5000; i++){
+            p.setValue(new String[]{"key" + (i % 10)}, big + i);
+        }
+        p.close();
+        long size = 0;
+        for(File f : dir.listFiles()){
+            size += f.length();
+        }
+        //5000 records of about 1k each were written, but only 10 are live
+        assertTrue("The log wasn't compacted, it is " + size + " bytes", size < 3 * 1024 * 1024);
+        LogPersistance reloaded = new LogPersistance(dir);
+        for(int i = 0; i < 10; i++){
+            assertEquals(big + (4990 + i), reloaded.getValue(new String[]{"key" + i}));
+        }
+        reloaded.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testCompactedSegmentReplacesOlderOnes() throws IOException {
+        //A segment with a value that was deleted, as if the server had stopped after a
+        //compaction renamed its new segment in, but before it deleted the old ones
+        File other = new File(dir, "other");
+        LogPersistance q = new LogPersistance(other);
+        q.setValue(new String[]{"gone"}, "1");
+        q.close();
+        LogPersistance p = new LogPersistance(dir);
+        p.setValue(new String[]{"gone"}, "1");
+        p.setValue(new String[]{"gone"}, null);
+        StringBuilder b = new StringBuilder();
+        for(int i = 0; i < 1000; i++){
+            b.append("x");
+        }
+        for(int i = 0; i < 5000; i++){
+            p.setValue(new String[]{"key" + (i % 10)}, b.toString());
+        }
+        p.close();
+        assertFalse(new File(dir, "00000001.log").exists());
+        assertTrue(new File(other, "00000001.log").renameTo(new File(dir, "00000000.log")));
+        other.delete();
+        LogPersistance reloaded = new LogPersistance(dir);
+        assertNull(reloaded.getValue(new String[]{"gone"}));
+        assertEquals(b.toString(), reloaded.getValue(new String[]{"key0"}));
+        reloaded.close();
+        assertFalse(new File(dir, "00000000.log").exists());
+    }
+
+    @Test
+    public void testSegmentMovedAsideIsRestored() {
+        LogPersistance p = new LogPersistance(dir);
+        p.setValue(new String[]{"a"}, "1");
+        p.close();
+        //As if the server stopped between moving the segment aside and renaming its compacted copy in
+        assertTrue(new File(dir, "00000001.log").renameTo(new File(dir, "00000001.log.old")));
+        LogPersistance reloaded = new LogPersistance(dir);
+        assertEquals("1", reloaded.getValue(new String[]{"a"}));
+        reloaded.close();
+        assertFalse(new File(dir, "00000001.log.old").exists());
+    }
+
+    @Test
+    public void testMigration() {
+        File ser = new File(dir, "persistance.ser");
+        SerializedPersistance old = new SerializedPersistance(ser);
+        old.setValue(new String[]{"storage", "a"}, "1");
+        LogPersistance p = new LogPersistance(new File(dir, "log"), ser);
+        assertEquals("1", p.getValue(new String[]{"storage", "a"}));
+        assertFalse(ser.exists());
+        assertTrue(new File(dir, "persistance.ser.migrated").exists());
+        p.close();
+        for(File f : new File(dir, "log").listFiles()){
+            f.delete();
+        }
+        new File(dir, "log").delete();
+    }
+}
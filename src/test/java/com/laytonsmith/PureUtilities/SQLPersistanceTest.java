@@ -0,0 +1,90 @@
+package com.laytonsmith.PureUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author layton
+ */
+public class SQLPersistanceTest {
+
+    private File db;
+
+    public SQLPersistanceTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        boolean haveDriver;
+        try {
+            Class.forName("org.sqlite.JDBC");
+            haveDriver = true;
+        } catch (ClassNotFoundException ex) {
+            haveDriver = false;
+        }
+        Assume.assumeTrue(haveDriver);
+        db = File.createTempFile("persistance", ".db");
+        db.delete();
+    }
+
+    @After
+    public void tearDown() {
+        if (db != null) {
+            db.delete();
+        }
+    }
+
+    @Test
+    public void testValuesSurviveReload() {
+        SQLPersistance p = new SQLPersistance(db, null);
+        p.setValue(new String[]{"storage", "a"}, "1");
+        p.setValue(new String[]{"storage", "b"}, new byte[]{1, 2});
+        assertEquals("1", p.setValue(new String[]{"storage", "a"}, "3"));
+        p.setValue(new String[]{"user", "x"}, "2");
+        p.setValue(new String[]{"user", "x"}, null);
+        p.close();
+        SQLPersistance reloaded = new SQLPersistance(db, null);
+        assertEquals("3", reloaded.getValue(new String[]{"storage", "a"}));
+        assertArrayEquals(new byte[]{1, 2}, (byte[]) reloaded.getValue(new String[]{"storage", "b"}));
+        assertNull(reloaded.getValue(new String[]{"user", "x"}));
+        assertFalse(reloaded.isNamespaceSet(new String[]{"user"}));
+        reloaded.close();
+    }
+
+    @Test
+    public void testNamespaceValues() {
+        SQLPersistance p = new SQLPersistance(db, null);
+        p.setValue(new String[]{"user", "x", "aliases", "1"}, "/a");
+        p.setValue(new String[]{"user", "x", "aliases", "2"}, "/b");
+        p.setValue(new String[]{"user", "xy", "aliases", "1"}, "/c");
+        p.setValue(new String[]{"storage", "x"}, "1");
+        //Changes that haven't been written out yet are seen too
+        p.setFlushInterval(60000);
+        p.setValue(new String[]{"user", "x", "aliases", "1"}, null);
+        p.setValue(new String[]{"user", "x", "aliases", "3"}, "/d");
+        p.setValue(new String[]{"user", "x", "other"}, "/e");
+        List<Map.Entry<String, Object>> values = p.getNamespaceValues(new String[]{"user", "x"});
+        assertEquals(3, values.size());
+        assertEquals("user.x.aliases.2", values.get(0).getKey());
+        assertEquals("user.x.aliases.3", values.get(1).getKey());
+        assertEquals("/d", values.get(1).getValue());
+        assertEquals("user.x.other", values.get(2).getKey());
+        assertTrue(p.isNamespaceSet(new String[]{"user", "x", "aliases"}));
+        p.setValue(new String[]{"user", "x", "aliases", "2"}, null);
+        p.setValue(new String[]{"user", "x", "aliases", "3"}, null);
+        assertFalse(p.isNamespaceSet(new String[]{"user", "x", "aliases"}));
+        p.close();
+        SQLPersistance reloaded = new SQLPersistance(db, null);
+        assertEquals(1, reloaded.getNamespaceValues(new String[]{"user", "x"}).size());
+        assertEquals(1, reloaded.getNamespaceValues(new String[]{"user", "xy"}).size());
+        reloaded.close();
+    }
+}
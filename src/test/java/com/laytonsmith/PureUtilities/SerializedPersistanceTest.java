@@ -0,0 +1,111 @@
+package com.laytonsmith.PureUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author layton
+ */
+public class SerializedPersistanceTest {
+
+    private File db;
+
+    public SerializedPersistanceTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        db = File.createTempFile("persistance", ".ser");
+        db.delete();
+    }
+
+    @After
+    public void tearDown() {
+        db.delete();
+    }
+
+    @Test
+    public void testWriteThrough() {
+        SerializedPersistance p = new SerializedPersistance(db);
+        p.setValue(new String[]{"storage", "a"}, "1");
+        assertTrue(db.exists());
+        assertEquals("1", new SerializedPersistance(db).getValue(new String[]{"storage", "a"}));
+        assertFalse(new File(db.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testStoreValueReportsFailures() throws Exception {
+        //The database's directory is a file, so it can't be written
+        File file = File.createTempFile("persistance", ".dir");
+        try {
+            SerializedPersistance p = new SerializedPersistance(new File(file, "persistance.ser"));
+            try {
+                p.storeValue(new String[]{"storage", "a"}, "1");
+                fail("The write should have failed");
+            } catch (IOException e) {
+                //Good
+            }
+            //The change is still made in memory
+            assertEquals("1", p.getValue(new String[]{"storage", "a"}));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testWriteBehind() throws InterruptedException {
+        SerializedPersistance p = new SerializedPersistance(db);
+        p.setFlushInterval(1000);
+        for(int i = 0; i < 100; i++){
+            p.setValue(new String[]{"storage", "a"}, Integer.toString(i));
+        }
+        //Nothing is written until the interval has passed
+        assertFalse(db.exists());
+        assertEquals("99", p.getValue(new String[]{"storage", "a"}));
+        while(!db.exists()){
+            Thread.sleep(50);
+        }
+        assertEquals("99", new SerializedPersistance(db).getValue(new String[]{"storage", "a"}));
+        p.close();
+    }
+
+    @Test
+    public void testCloseWritesChanges() {
+        SerializedPersistance p = new SerializedPersistance(db);
+        p.setFlushInterval(60000);
+        p.setValue(new String[]{"storage", "a"}, "1");
+        p.setValue(new String[]{"storage", "b"}, "2");
+        p.setValue(new String[]{"storage", "a"}, null);
+        p.close();
+        SerializedPersistance reloaded = new SerializedPersistance(db);
+        assertNull(reloaded.getValue(new String[]{"storage", "a"}));
+        assertEquals("2", reloaded.getValue(new String[]{"storage", "b"}));
+    }
+
+    @Test
+    public void testNamespaces() {
+        SerializedPersistance p = new SerializedPersistance(db);
+        p.setValue(new String[]{"player", "stats"}, "0");
+        p.setValue(new String[]{"player", "stats", "kills"}, "1");
+        p.setValue(new String[]{"player", "stats", "deaths"}, "2");
+        p.setValue(new String[]{"player", "statsx", "kills"}, "3");
+        p.setValue(new String[]{"player", "other"}, "4");
+        List<Map.Entry<String, Object>> values = p.getNamespaceValues(new String[]{"player", "stats"});
+        assertEquals(3, values.size());
+        assertEquals("player.stats", values.get(0).getKey());
+        assertEquals("player.stats.deaths", values.get(1).getKey());
+        assertEquals("player.stats.kills", values.get(2).getKey());
+        assertTrue(p.isNamespaceSet(new String[]{"player", "statsx"}));
+        assertFalse(p.isNamespaceSet(new String[]{"player", "stat"}));
+        p.setValue(new String[]{"player", "statsx", "kills"}, null);
+        assertFalse(p.isNamespaceSet(new String[]{"player", "statsx"}));
+        assertEquals(1, new SerializedPersistance(db).getNamespaceValues(new String[]{"player", "other"}).size());
+    }
+}
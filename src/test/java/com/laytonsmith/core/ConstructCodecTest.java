@@ -0,0 +1,131 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.MarshalException;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class ConstructCodecTest {
+
+    Target t = Target.UNKNOWN;
+
+    public ConstructCodecTest() {
+    }
+
+    private Construct RoundTrip(Construct c) throws MarshalException {
+        return ConstructCodec.Decode(ConstructCodec.Encode(c, t), t);
+    }
+
+    @Test
+    public void testScalars() throws MarshalException {
+        for(long l : new long[]{0, 1, -1, 63, -64, 300, Long.MAX_VALUE, Long.MIN_VALUE}){
+            Construct c = RoundTrip(new CInt(l, t));
+            assertTrue(c instanceof CInt);
+            assertEquals(l, ((CInt) c).getInt());
+        }
+        Construct d = RoundTrip(new CDouble(-2.5, t));
+        assertTrue(d instanceof CDouble);
+        assertEquals(-2.5, ((CDouble) d).getDouble(), 0);
+        assertEquals("héllo ☃", RoundTrip(new CString("héllo ☃", t)).val());
+        assertTrue(RoundTrip(new CString("1", t)) instanceof CString);
+        assertTrue(((CBoolean) RoundTrip(new CBoolean(true, t))).getBoolean());
+        assertFalse(((CBoolean) RoundTrip(new CBoolean(false, t))).getBoolean());
+        assertTrue(RoundTrip(new CNull(t)) instanceof CNull);
+        assertEquals("", RoundTrip(new CVoid(t)).val());
+        //Small ints take a single byte
+        assertEquals(3, ConstructCodec.Encode(new CInt(-5, t), t).length);
+    }
+
+    @Test
+    public void testArrays() throws MarshalException {
+        CArray inner = new CArray(t, new CInt(1, t), new CDouble(1.5, t));
+        CArray assoc = new CArray(t);
+        assoc.set("0", "zero");
+        assoc.set("a", inner);
+        assoc.set("b", new CNull(t));
+        Construct c = RoundTrip(new CArray(t, assoc, new CString("x", t), new CBoolean(false, t)));
+        assertEquals("{{0: zero, a: {1, 1.5}, b: null}, x, false}", c.val());
+        assertTrue(((CArray) ((CArray) c).get(0, t)).inAssociativeMode());
+        assertFalse(((CArray) c).inAssociativeMode());
+    }
+
+    @Test
+    public void testContainers() throws MarshalException {
+        assertEquals("{a, 1}", RoundTrip(new CSet(t, new CString("a", t), new CInt(1, t))).val());
+        CRankedMap map = new CRankedMap(t);
+        map.put("a", new CInt(5, t));
+        map.put("b", new CDouble(1.5, t));
+        assertEquals("{b: 1.5, a: 5}", RoundTrip(map).val());
+        CDeque deque = new CDeque(3, t);
+        deque.pushBack(new CInt(1, t));
+        deque.pushBack(new CArray(t, new CInt(2, t)));
+        CDeque decoded = (CDeque) RoundTrip(deque);
+        assertEquals("{1, {2}}", decoded.val());
+        assertEquals(3, decoded.capacity());
+    }
+
+    @Test
+    public void testReadsJson() throws MarshalException {
+        assertEquals("{a: 1, b: {2, 3}}", ConstructCodec.Read("{\"a\":1,\"b\":[2,3]}", t).val());
+        assertEquals("{a: 1, b: {2, 3}}", ConstructCodec.Read(ConstructCodec.Encode(ConstructCodec.Read("{\"a\":1,\"b\":[2,3]}", t), t), t).val());
+    }
+
+    @Test
+    public void testBadData() throws MarshalException {
+        CArray assoc = new CArray(t);
+        assoc.set("a", new CArray(t, new CDouble(1.5, t), new CString("x", t)));
+        byte[] b = ConstructCodec.Encode(assoc, t);
+        for(int i = 0; i < b.length; i++){
+            try {
+                ConstructCodec.Decode(Arrays.copyOf(b, i), t);
+                fail("Decoding " + i + " bytes should have failed");
+            } catch (MarshalException e) {
+                //Good
+            }
+        }
+    }
+
+    @Test
+    public void testCacheReturnsCopies() {
+        CArray inner = new CArray(t, new CInt(1, t));
+        CArray outer = new CArray(t, inner, new CInt(2, t));
+        PersistanceCache.ClearAll();
+        PersistanceCache.Put("test.copies", outer, PersistanceCache.Generation());
+        inner.push(new CInt(3, t));
+        CArray first = (CArray) PersistanceCache.Get("test.copies");
+        assertEquals("{{1}, 2}", first.val());
+        ((CArray) first.get(0, t)).push(new CInt(4, t));
+        first.push(new CInt(5, t));
+        assertEquals("{{1}, 2}", PersistanceCache.Get("test.copies").val());
+
+        PersistanceCache.Put("test.flat", new CArray(t, new CInt(1, t)), PersistanceCache.Generation());
+        ((CArray) PersistanceCache.Get("test.flat")).push(new CInt(2, t));
+        assertEquals("{1}", PersistanceCache.Get("test.flat").val());
+
+        PersistanceCache.Put("test.sets", new CArray(t, new CSet(t, new CInt(1, t))), PersistanceCache.Generation());
+        ((CSet) ((CArray) PersistanceCache.Get("test.sets")).get(0, t)).add(new CInt(2, t));
+        assertEquals("{{1}}", PersistanceCache.Get("test.sets").val());
+    }
+
+    @Test
+    public void testCacheIsInvalidated() {
+        PersistanceCache.ClearAll();
+        long generation = PersistanceCache.Generation();
+        PersistanceCache.Put("test.a", new CInt(1, t), generation);
+        assertEquals("1", PersistanceCache.Get("test.a").val());
+        PersistanceCache.Invalidate("test.a");
+        assertNull(PersistanceCache.Get("test.a"));
+        //A value read before the write mustn't be cached after it
+        PersistanceCache.Put("test.a", new CInt(1, t), generation);
+        assertNull(PersistanceCache.Get("test.a"));
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.Target;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class EnvTest {
+
+    @Test
+    public void testCloneIsIndependent() throws CloneNotSupportedException {
+        Env env = new Env();
+        env.SetFlag("flag", true);
+        env.SetCustom("custom", "value");
+        env.GetProcs().put("_proc", null);
+        env.GetVarList().set(new IVariable("@var", new CString("one", Target.UNKNOWN), Target.UNKNOWN));
+
+        Env clone = env.clone();
+        assertEquals(Boolean.TRUE, clone.GetFlag("flag"));
+        assertEquals("value", clone.GetCustom("custom"));
+        assertTrue(clone.GetProcs().containsKey("_proc"));
+        assertEquals("one", clone.GetVarList().get("@var", Target.UNKNOWN).ival().val());
+
+        clone.SetFlag("flag", false);
+        clone.SetCustom("custom", "changed");
+        clone.GetProcs().put("_other", null);
+        clone.GetVarList().set(new IVariable("@var", new CString("two", Target.UNKNOWN), Target.UNKNOWN));
+        assertEquals(Boolean.TRUE, env.GetFlag("flag"));
+        assertEquals("value", env.GetCustom("custom"));
+        assertFalse(env.GetProcs().containsKey("_other"));
+        assertEquals("one", env.GetVarList().get("@var", Target.UNKNOWN).ival().val());
+
+        env.ClearFlag("flag");
+        env.GetVarList().set(new IVariable("@var", new CString("three", Target.UNKNOWN), Target.UNKNOWN));
+        assertEquals(Boolean.FALSE, clone.GetFlag("flag"));
+        assertEquals("two", clone.GetVarList().get("@var", Target.UNKNOWN).ival().val());
+    }
+}
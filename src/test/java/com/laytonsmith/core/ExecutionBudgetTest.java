@@ -0,0 +1,169 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core;
+
+import com.laytonsmith.abstraction.Convertor;
+import com.laytonsmith.abstraction.StaticLayer;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs budgeted scripts against a fake scheduler, where the test thread plays the part of
+ * the server thread, and each call to Tick runs whatever was scheduled.
+ * @author Layton
+ */
+public class ExecutionBudgetTest {
+
+    private Field convertorField;
+    private Object oldConvertor;
+    private final LinkedList<Runnable> scheduled = new LinkedList<Runnable>();
+    private final List<Long> delays = new ArrayList<Long>();
+
+    @Before
+    public void setUp() throws Exception {
+        Convertor fake = mock(Convertor.class);
+        when(fake.SetFutureRunnable(anyLong(), any(Runnable.class))).thenAnswer(new Answer<Integer>() {
+
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                synchronized(scheduled){
+                    delays.add((Long) invocation.getArguments()[0]);
+                    scheduled.add((Runnable) invocation.getArguments()[1]);
+                }
+                return 0;
+            }
+        });
+        convertorField = StaticLayer.class.getDeclaredField("convertor");
+        convertorField.setAccessible(true);
+        oldConvertor = convertorField.get(null);
+        convertorField.set(null, fake);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        convertorField.set(null, oldConvertor);
+    }
+
+    /**
+     * Runs the next scheduled task, as the server would on a later tick.
+     * @return false if nothing was scheduled
+     */
+    private boolean Tick(){
+        Runnable r;
+        synchronized(scheduled){
+            r = scheduled.poll();
+        }
+        if(r == null){
+            return false;
+        }
+        r.run();
+        return true;
+    }
+
+    @Test(timeout = 10000)
+    public void testPausedLoopResumes() {
+        final Env env = new Env();
+        final int[] count = new int[]{0};
+        final boolean[] done = new boolean[]{false};
+        //With a budget of a nanosecond, every checkpoint uses it up
+        ExecutionBudget.Run(1, env, new Runnable() {
+
+            public void run() {
+                for(int i = 0; i < 5; i++){
+                    count[0]++;
+                    ExecutionBudget.Checkpoint(env);
+                }
+                done[0] = true;
+            }
+        });
+        assertFalse(done[0]);
+        assertEquals(1, count[0]);
+        int ticks = 0;
+        while(Tick()){
+            ticks++;
+        }
+        assertTrue(done[0]);
+        assertEquals(5, count[0]);
+        assertEquals(5, ticks);
+    }
+
+    @Test(timeout = 10000)
+    public void testSleepPausesScript() {
+        final Env env = new Env();
+        final boolean[] slept = new boolean[]{false};
+        final boolean[] done = new boolean[]{false};
+        ExecutionBudget.Run(1000000000L, env, new Runnable() {
+
+            public void run() {
+                slept[0] = ExecutionBudget.Sleep(env, 250);
+                done[0] = true;
+            }
+        });
+        assertFalse(done[0]);
+        assertEquals(Long.valueOf(250), delays.get(0));
+        while(Tick());
+        assertTrue(slept[0]);
+        assertTrue(done[0]);
+        //Outside of a budgeted script, sleep can't pause anything
+        assertFalse(ExecutionBudget.Sleep(new Env(), 250));
+    }
+
+    @Test(timeout = 10000)
+    public void testNestedUnbudgetedRunIsSynchronous() {
+        final Env env = new Env();
+        final Env inner = new Env();
+        final int[] count = new int[]{0};
+        final boolean[] done = new boolean[]{false};
+        ExecutionBudget.Run(1, env, new Runnable() {
+
+            public void run() {
+                ExecutionBudget.Run(0, inner, new Runnable() {
+
+                    public void run() {
+                        for(int i = 0; i < 5; i++){
+                            count[0]++;
+                            ExecutionBudget.Checkpoint(inner);
+                        }
+                    }
+                });
+                done[0] = true;
+            }
+        });
+        assertEquals(5, count[0]);
+        assertTrue(done[0]);
+        assertNull(inner.GetExecutionBudget());
+        assertFalse(Tick());
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorInFirstSliceReachesCaller() {
+        try {
+            ExecutionBudget.Run(1000000000L, new Env(), new Runnable() {
+
+                public void run() {
+                    throw new ConfigRuntimeException("Thrown from the script", ExceptionType.FormatException, Target.UNKNOWN);
+                }
+            });
+            fail("The exception should have been thrown to the caller");
+        } catch (ConfigRuntimeException e) {
+            assertEquals("Thrown from the script", e.getMessage());
+        }
+        assertFalse(Tick());
+    }
+}
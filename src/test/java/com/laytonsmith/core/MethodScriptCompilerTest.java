@@ -6,12 +6,19 @@ package com.laytonsmith.core;
 
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.abstraction.MCServer;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.IVariable;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.constructs.Token;
 import com.laytonsmith.core.constructs.Variable;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.testing.StaticTest;
 import static com.laytonsmith.testing.StaticTest.SRun;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -145,6 +152,48 @@ public class MethodScriptCompilerTest {
     @Test public void testCompile14() throws ConfigCompileException{
         MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg(('hi'))", null));
     }
+    
+    @Test public void testCompileBindsFunctions() throws ConfigCompileException{
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg(_proc())", null));
+        CFunction p = (CFunction) tree.getChildAt(0).getData();
+        CFunction msg = (CFunction) tree.getChildAt(0).getChildAt(0).getData();
+        CFunction proc = (CFunction) tree.getChildAt(0).getChildAt(0).getChildAt(0).getData();
+        assertTrue(p.isBound());
+        assertTrue(p.useSpecialExec());
+        assertTrue(msg.isBound());
+        assertEquals("msg", msg.getFunction().getName());
+        assertTrue(proc.isProcedure());
+        assertNull(proc.getFunction());
+    }
+    
+    @Test public void testCompileRewritesAutoconcat() throws ConfigCompileException{
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg(@a + @b * 3)", null));
+        GenericTreeNode<Construct> add = tree.getChildAt(0).getChildAt(0).getChildAt(0);
+        assertEquals("add", add.getData().val());
+        assertEquals("multiply", add.getChildAt(1).getData().val());
+        tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("cc(1 + 2)", null));
+        assertEquals("__autoconcat__", tree.getChildAt(0).getChildAt(0).getChildAt(0).getData().val());
+    }
+    
+    @Test public void testCompileOptimizesConstants() throws ConfigCompileException{
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg(1 + 2 * 3)", null));
+        GenericTreeNode<Construct> arg = tree.getChildAt(0).getChildAt(0).getChildAt(0);
+        assertTrue(arg.getData() instanceof CInt);
+        assertEquals("7", arg.getData().val());
+        tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("if(1 == 2, msg('no'), msg(@a))", null));
+        GenericTreeNode<Construct> msg = tree.getChildAt(0).getChildAt(0);
+        assertEquals("msg", msg.getData().val());
+        assertTrue(msg.getChildAt(0).getData() instanceof IVariable);
+        tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg(add('a', 1))", null));
+        assertEquals("add", tree.getChildAt(0).getChildAt(0).getChildAt(0).getData().val());
+    }
+    
+    @Test public void testExecuteOptimizedIfelse() throws ConfigCompileException{
+        SRun("assign(@a, 2) ifelse(false, msg('a'), equals(@a, 2), msg('b'), true, msg('c'), msg('d'))", fakePlayer);
+        verify(fakePlayer).sendMessage("b");
+        SRun("ifelse(false, msg('a'), true, msg('c'), msg('d'))", fakePlayer);
+        verify(fakePlayer).sendMessage("c");
+    }
 
     @Test
     public void testExecute1() throws ConfigCompileException {
@@ -621,6 +670,40 @@ public class MethodScriptCompilerTest {
     @Test public void testParenthesisAfterQuotedString() throws ConfigCompileException{
         assertEquals("2 + 2 is 4", SRun("'2 + 2 is' (2 + 2)", fakePlayer));
     }
+
+    /**
+     * Runs the script the way an alias or the interpreter does, with the procs from the auto includes.
+     */
+    private String RunWithAutoIncludes(String script) throws ConfigCompileException{
+        Env e = new Env();
+        e.SetPlayer(fakePlayer);
+        MethodScriptCompiler.registerAutoIncludes(e, null);
+        return MethodScriptCompiler.execute(MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, null)), e, null, null).val();
+    }
+
+    @Test public void testAutoIncludesRunOnce() throws ConfigCompileException, IOException{
+        //Included files have to be inside the base-dir
+        File include = File.createTempFile("auto_include", ".ms", new File("."));
+        try {
+            FileWriter w = new FileWriter(include);
+            w.write("export('autoinclude.runs', add(import('autoinclude.runs'), 1))\n"
+                    + "proc(_autoinclude, @a, return(concat('included ', @a)))");
+            w.close();
+            SRun("export('autoinclude.runs', 0)", null);
+            MethodScriptCompiler.compileAutoIncludes(Arrays.asList(include));
+            assertEquals("1", SRun("import('autoinclude.runs')", null));
+            assertEquals("included 1", RunWithAutoIncludes("_autoinclude(1)"));
+            assertEquals("included 2", RunWithAutoIncludes("_autoinclude(2)"));
+            //The procs are shared, but the include itself isn't run again
+            assertEquals("1", SRun("import('autoinclude.runs')", null));
+            //Until the aliases are reloaded
+            MethodScriptCompiler.compileAutoIncludes(Arrays.asList(include));
+            assertEquals("2", SRun("import('autoinclude.runs')", null));
+        } finally {
+            MethodScriptCompiler.compileAutoIncludes(null);
+            include.delete();
+        }
+    }
     
     
 }
@@ -0,0 +1,73 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core;
+
+import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import static com.laytonsmith.testing.StaticTest.*;
+import com.sk89q.wepif.PermissionsResolverManager;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author Layton
+ */
+public class PermissionCacheTest {
+
+    public PermissionCacheTest() {
+    }
+
+    @Before
+    public void setUp() {
+        PermissionCache.ClearAll();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        long hits = PermissionCache.Hits();
+        long misses = PermissionCache.Misses();
+        assertNull(PermissionCache.Get("player", "msg", null));
+        PermissionCache.Put("player", "msg", null, true);
+        PermissionCache.Put("player", "msg", "/label", false);
+        assertEquals(Boolean.TRUE, PermissionCache.Get("player", "msg", null));
+        assertEquals(Boolean.FALSE, PermissionCache.Get("player", "msg", "/label"));
+        assertNull(PermissionCache.Get("player", "die", null));
+        assertNull(PermissionCache.Get("other", "msg", null));
+        assertEquals(hits + 2, PermissionCache.Hits());
+        assertEquals(misses + 3, PermissionCache.Misses());
+    }
+
+    @Test
+    public void testClear() {
+        PermissionCache.Put("player", "msg", null, true);
+        PermissionCache.Put("other", "msg", null, true);
+        PermissionCache.Clear("player");
+        assertNull(PermissionCache.Get("player", "msg", null));
+        assertEquals(Boolean.TRUE, PermissionCache.Get("other", "msg", null));
+        PermissionCache.ClearAll();
+        assertNull(PermissionCache.Get("other", "msg", null));
+    }
+
+    @Test
+    public void testPermissionsPluginIsOnlyAskedOnce() {
+        MCPlayer player = GetOnlinePlayer();
+        when(player.isOp()).thenReturn(false);
+        PermissionsResolverManager perms = mock(PermissionsResolverManager.class);
+        when(perms.hasPermission("wraithguard01", "ch.func.use.msg")).thenReturn(true);
+        CommandHelperPlugin.perms = perms;
+        Env env = new Env();
+        env.SetPlayer(player);
+        assertTrue(Static.hasCHPermission("msg", env));
+        assertTrue(Static.hasCHPermission("msg", env));
+        verify(perms, times(1)).hasPermission("wraithguard01", "ch.func.use.msg");
+        //Once the player's decisions are forgotten, the permissions plugin is asked again
+        PermissionCache.Clear("wraithguard01");
+        assertTrue(Static.hasCHPermission("msg", env));
+        verify(perms, times(2)).hasPermission("wraithguard01", "ch.func.use.msg");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.bytecode;
+
+import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.core.Env;
+import com.laytonsmith.core.GenericTreeNode;
+import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.testing.StaticTest;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author Layton
+ */
+public class BytecodeCompilerTest {
+
+    MCPlayer fakePlayer;
+    Env env = new Env();
+
+    @Before
+    public void setUp() {
+        fakePlayer = StaticTest.GetOnlinePlayer();
+        StaticTest.GetFakeServer();
+        env.SetPlayer(fakePlayer);
+    }
+
+    @Test
+    public void testCompile() throws ConfigCompileException {
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(
+                "assign(@a, 2) for(assign(@i, 0), lt(@i, 3), inc(@i), assign(@a, multiply(@a, add(@i, 1)))) msg(@a)", null));
+        assertTrue(BytecodeCompiler.Compile(tree));
+        //msg is a normal function, so it should have been compiled
+        CFunction msg = (CFunction) tree.getChildAt(0).getChildAt(0).getChildAt(2).getData();
+        assertEquals("msg", msg.val());
+        assertNotNull(msg.getCompiled());
+        MethodScriptCompiler.execute(tree, env, null, null);
+        verify(fakePlayer).sendMessage("12");
+    }
+
+    @Test
+    public void testCompiledCodeIsNotShared() throws Exception {
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg(add(1, 2))", null));
+        assertTrue(BytecodeCompiler.Compile(tree));
+        CFunction msg = (CFunction) tree.getChildAt(0).getChildAt(0).getData();
+        assertNotSame(CompiledCode.class.getClassLoader(), msg.getCompiled().getClass().getClassLoader());
+        assertNull(msg.clone().getCompiled());
+    }
+
+    @Test
+    public void testBreakInArguments() throws ConfigCompileException {
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(
+                "for(assign(@i, 0), lt(@i, 3), inc(@i), msg(concat(@i, if(equals(@i, 1), break(), 'x'))))", null));
+        assertTrue(BytecodeCompiler.Compile(tree));
+        MethodScriptCompiler.execute(tree, env, null, null);
+        verify(fakePlayer).sendMessage("0x");
+        verify(fakePlayer, times(1)).sendMessage(anyString());
+    }
+
+    @Test
+    public void testNothingToCompile() throws ConfigCompileException {
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("'string'", null));
+        assertFalse(BytecodeCompiler.Compile(tree));
+    }
+}
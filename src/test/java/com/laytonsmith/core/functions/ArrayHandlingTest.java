@@ -185,6 +185,15 @@ public class ArrayHandlingTest {
         assertEquals("{}", SRun("range(1, 0)", fakePlayer));
     }
 
+    @Test(timeout = 10000)
+    public void testLargeRange() throws ConfigCompileException {
+        assertEquals("2000000000", SRun("array_size(range(2000000000))", fakePlayer));
+        assertEquals("1999999999", SRun("range(2000000000)[-1]", fakePlayer));
+        assertEquals("{15, 20, 25}", SRun("range(0, 30, 5)[3..-1]", fakePlayer));
+        assertEquals("{10, 7, 4, 1}", SRun("range(10, 0, -3)", fakePlayer));
+        assertEquals("{0, 1, 5, 3}", SRun("g(assign(@r, range(4)) array_set(@r, 2, 5)) @r", fakePlayer));
+    }
+
     @Test
     public void testArraySliceAndNegativeIndexes() throws ConfigCompileException {
         assertEquals("{a, b}", SRun("array(a, b, c, d, e)[..1]", null));
@@ -201,6 +210,22 @@ public class ArrayHandlingTest {
         assertEquals("{}", SRun("array(1)[1..-1]", null));
     }
 
+    @Test(timeout = 10000)
+    public void testArrayKeysAreInOrder() throws ConfigCompileException {
+        assertEquals("{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11}", SRun("array_keys(range(12, 24))", fakePlayer));
+        assertEquals("12 13 14 15 16 17 18 19 20 21 22 23", SRun("array_implode(range(12, 24))", fakePlayer));
+    }
+
+    @Test
+    public void testArraySliceIsIndependent() throws ConfigCompileException {
+        assertEquals("{1, 9, 3, 4} {2, 3, 5}", SRun("g(assign(@a, array(1, 2, 3, 4)) assign(@s, @a[1..2])"
+                + " array_set(@a, 1, 9) array_push(@s, 5)) @a @s", null));
+        assertEquals("{a, b, c} {z, c}", SRun("g(assign(@a, array(a, b, c)) assign(@s, @a[1..])"
+                + " array_set(@s, 0, z)) @a @s", null));
+        assertEquals("{{1}, b} {{2}, b}", SRun("g(assign(@a, array(array(1), b)) assign(@s, @a[0..1])"
+                + " array_set(@s[0], 0, 2)) @a @s", null));
+    }
+
     @Test(timeout = 10000)
     public void testArrayMergeNormal() throws ConfigCompileException {
         assertEquals("{1, 2, 3, 4, 5, {6, 7}}", SRun("array_merge(array(1, 2, 3), array(4, 5, array(6, 7)))", fakePlayer));
@@ -122,6 +122,23 @@ public class DataHandlingTest {
         verify(fakePlayer).sendMessage("{1, 2}");
     }
 
+    @Test(timeout = 10000)
+    public void testForeachAssociative() throws ConfigCompileException {
+        String config = "/for = >>>\n"
+                + " assign(@array, array(a: 1, b: 2, c: 3, d: 4, e: 5))\n"
+                + " assign(@array2, array())"
+                + " foreach(@array, @i,\n"
+                + "     if(equals(@i, 1), array_remove(@array, 'c'))"
+                + "     if(equals(@i, 2), continue(2))"
+                + "     array_set(@array, 'f', 6)"
+                + "     array_push(@array2, @i)\n"
+                + " )\n"
+                + " msg(@array2)\n"
+                + "<<<\n";
+        SRun(config, fakePlayer);
+        verify(fakePlayer).sendMessage("{1, 5}");
+    }
+
     @Test(timeout = 10000)
     public void testCallProcIsProc() throws ConfigCompileException {
         when(fakePlayer.isOp()).thenReturn(true);
@@ -221,6 +238,25 @@ public class DataHandlingTest {
         verify(fakePlayer).sendMessage("{j:0, j:1}");
     }
 
+    @Test(timeout = 10000)
+    public void testReturnFromLoop() throws ConfigCompileException {
+        String config = "/return = >>>\n"
+                + " proc(_find, @needle,\n"
+                + "     foreach(array(1, 2, 3, 4), @i,\n"
+                + "         for(assign(@j, 0), lt(@j, 5), inc(@j),\n"
+                + "             if(equals(@i, @needle), return(concat('found ', @i)))\n"
+                + "         )\n"
+                + "     )\n"
+                + "     return('missing')\n"
+                + " )\n"
+                + " msg(_find(3))\n"
+                + " msg(_find(5))\n"
+                + "<<<\n";
+        SRun(config, fakePlayer);
+        verify(fakePlayer).sendMessage("found 3");
+        verify(fakePlayer).sendMessage("missing");
+    }
+
     @Test(timeout = 10000)
     public void testInclude() throws ConfigCompileException, IOException {
         String script =
@@ -373,4 +409,18 @@ public class DataHandlingTest {
                 + "msg(@value)", fakePlayer);
         verify(fakePlayer).sendMessage("{Hello World}");
     }
+
+    @Test(timeout = 10000)
+    public void testProcVariablesAreLocal() throws ConfigCompileException {
+        when(fakePlayer.isOp()).thenReturn(true);
+        SRun("assign(@a, 'outer')\n"
+                + "proc(_p, @a, assign(@b, 'default'),\n"
+                + "    assign(@c, closure(@d, msg(@a @b @d)))\n"
+                + "    execute('closure', @c)\n"
+                + ")\n"
+                + "_p('proc')\n"
+                + "msg(@a)", fakePlayer);
+        verify(fakePlayer).sendMessage("proc default closure");
+        verify(fakePlayer).sendMessage("outer");
+    }
 }
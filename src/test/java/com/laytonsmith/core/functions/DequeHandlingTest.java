@@ -0,0 +1,96 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.functions;
+
+import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.MarshalException;
+import com.laytonsmith.testing.StaticTest;
+import static com.laytonsmith.testing.StaticTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class DequeHandlingTest {
+
+    MCPlayer fakePlayer;
+
+    public DequeHandlingTest() {
+    }
+
+    @Before
+    public void setUp() {
+        fakePlayer = StaticTest.GetOnlinePlayer();
+    }
+
+    @Test(timeout = 10000)
+    public void testDocs() {
+        TestClassDocs(DequeHandling.docs(), DequeHandling.class);
+    }
+
+    @Test
+    public void testDequeFunctions() throws ConfigCompileException {
+        assertEquals("{0, 1, 2} 3", SRun("g(assign(@d, deque()) deque_push(@d, 1) deque_push(@d, 2) deque_push_front(@d, 0)) @d deque_size(@d)", fakePlayer));
+        assertEquals("2 0 {1}", SRun("g(assign(@d, deque()) deque_push(@d, 0) deque_push(@d, 1) deque_push(@d, 2)"
+                + " assign(@b, deque_pop(@d)) assign(@f, deque_pop_front(@d))) @b @f @d", fakePlayer));
+        assertEquals("a c", SRun("g(assign(@d, deque()) deque_push(@d, a) deque_push(@d, b) deque_push(@d, c)) deque_get(@d, 0) deque_get(@d, -1)", fakePlayer));
+        assertEquals("abc", SRun("g(assign(@d, deque()) deque_push(@d, a) deque_push(@d, b) deque_push(@d, c)"
+                + " assign(@s, '') foreach(@d, @v, assign(@s, concat(@s, @v)))) @s", fakePlayer));
+    }
+
+    @Test
+    public void testCapacityDropsOldest() throws ConfigCompileException {
+        assertEquals("2 {3, 4, 5}", SRun("g(assign(@d, deque(3)) for(assign(@i, 0), lt(@i, 5), inc(@i), deque_push(@d, @i))"
+                + " assign(@r, deque_push(@d, 5))) @r @d", fakePlayer));
+        assertEquals("c {z, a}", SRun("g(assign(@d, deque(2)) deque_push(@d, a) deque_push(@d, b) deque_push(@d, c)"
+                + " deque_pop_front(@d) assign(@r, deque_push_front(@d, a)) assign(@r, deque_push_front(@d, z))) @r @d", fakePlayer));
+    }
+
+    @Test
+    public void testDequeInArrayIsCopied() throws ConfigCompileException {
+        assertEquals("{{1}, 2} {{1, 5}, 2}", SRun("g(assign(@a, array(deque(), 2)) deque_push(@a[0], 1) assign(@b, @a[0..1])"
+                + " deque_push(@b[0], 5)) @a @b", fakePlayer));
+        assertEquals("{{1}, 2} {{1, 5}, 2}", SRun("g(assign(@a, array(deque(), 2)) deque_push(@a[0], 1) assign(@b, @a[])"
+                + " deque_push(@b[0], 5)) @a @b", fakePlayer));
+    }
+
+    @Test
+    public void testRingBufferWrapsAround() {
+        CDeque deque = new CDeque(0, Target.UNKNOWN);
+        for(int i = 0; i < 100; i++){
+            deque.pushBack(new CInt(i, Target.UNKNOWN));
+            if(i % 3 == 0){
+                deque.popFront();
+            }
+            deque.pushFront(new CInt(-i, Target.UNKNOWN));
+        }
+        CArray values = deque.toArray(Target.UNKNOWN);
+        assertEquals(deque.size(), values.size());
+        for(int i = 0; i < deque.size(); i++){
+            assertEquals(values.get(i, Target.UNKNOWN).val(), deque.get(i).val());
+        }
+        assertEquals("-99", deque.get(0).val());
+        assertEquals("99", deque.get(deque.size() - 1).val());
+    }
+
+    @Test
+    public void testDequeJson() throws MarshalException {
+        CDeque deque = new CDeque(2, Target.UNKNOWN);
+        deque.pushBack(new CString("a", Target.UNKNOWN));
+        deque.pushBack(new CInt(1, Target.UNKNOWN));
+        String json = Construct.json_encode(deque, Target.UNKNOWN);
+        assertEquals("{\"@type\":\"deque\",\"values\":[\"a\",1],\"capacity\":2}", json);
+        Construct c = Construct.json_decode(json, Target.UNKNOWN);
+        assertTrue(c instanceof CDeque);
+        assertEquals("{a, 1}", c.val());
+        assertEquals(2, ((CDeque) c).capacity());
+    }
+}
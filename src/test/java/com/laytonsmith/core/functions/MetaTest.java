@@ -9,9 +9,11 @@ import com.laytonsmith.abstraction.MCServer;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
 import com.laytonsmith.core.Env;
 import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.PermissionCache;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import static com.laytonsmith.testing.StaticTest.*;
 import com.sk89q.wepif.PermissionsResolverManager;
+import static org.junit.Assert.*;
 import org.junit.*;
 import static org.mockito.Mockito.*;
 
@@ -70,6 +72,23 @@ public class MetaTest {
         SRun("assign(@e, 'msg(\\'Hello World!\\')') eval(@e)", fakePlayer);
         verify(fakePlayer).sendMessage("Hello World!");
     }
+
+    @Test public void testClearPermissionCache() throws ConfigCompileException{
+        PermissionCache.Put("wraithguard02", "msg", null, true);
+        PermissionCache.Put("wraithguard03", "msg", null, true);
+        SRun("clear_permission_cache('wraithguard02')", fakePlayer);
+        assertNull(PermissionCache.Get("wraithguard02", "msg", null));
+        assertEquals(Boolean.TRUE, PermissionCache.Get("wraithguard03", "msg", null));
+        SRun("clear_permission_cache()", fakePlayer);
+        assertNull(PermissionCache.Get("wraithguard03", "msg", null));
+    }
+
+    @Test public void testPermissionCacheStats() throws ConfigCompileException{
+        PermissionCache.Get("wraithguard02", "msg", null);
+        long hits = PermissionCache.Hits();
+        long misses = PermissionCache.Misses();
+        assertEquals("{hits: " + hits + ", misses: " + misses + "}", SRun("permission_cache_stats()", fakePlayer));
+    }
     //:( I can't get this to work right, because AlwaysOpPlayer is different than
     //fakePlayer, so I can't get my test to activate when the function is called.
 //    @Test(timeout=10000)
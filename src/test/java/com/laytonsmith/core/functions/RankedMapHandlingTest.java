@@ -0,0 +1,107 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.functions;
+
+import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.MarshalException;
+import com.laytonsmith.testing.StaticTest;
+import static com.laytonsmith.testing.StaticTest.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class RankedMapHandlingTest {
+
+    MCPlayer fakePlayer;
+
+    public RankedMapHandlingTest() {
+    }
+
+    @Before
+    public void setUp() {
+        fakePlayer = StaticTest.GetOnlinePlayer();
+    }
+
+    @Test(timeout = 10000)
+    public void testDocs() {
+        TestClassDocs(RankedMapHandling.docs(), RankedMapHandling.class);
+    }
+
+    @Test
+    public void testRankedMapFunctions() throws ConfigCompileException {
+        assertEquals("{c: 1, a: 5, b: 10}", SRun("rankedmap(array(a: 5, b: 10, c: 1))", fakePlayer));
+        assertEquals("5 {a: 3, c: 4, b: 10}", SRun("g(assign(@m, rankedmap(array(a: 5, b: 10, c: 4)))"
+                + " assign(@o, rankedmap_put(@m, a, 3))) @o @m", fakePlayer));
+        assertEquals("2 0 b c", SRun("g(assign(@m, rankedmap(array(a: 5, b: 10, c: 1))))"
+                + " rankedmap_rank(@m, b) rankedmap_rank(@m, b, true) rankedmap_at(@m, -1) rankedmap_at(@m, 0)", fakePlayer));
+        assertEquals("{a, b}", SRun("rankedmap_range(rankedmap(array(a: 5, b: 10, c: 1, d: 11)), 5, 10)", fakePlayer));
+        assertEquals("null 1 {b: 2}", SRun("g(assign(@m, rankedmap(array(a: 1, b: 2))) assign(@r, rankedmap_remove(@m, a)))"
+                + " rankedmap_get(@m, a) @r @m", fakePlayer));
+        assertEquals("cab", SRun("g(assign(@s, '') foreach(rankedmap(array(a: 5, b: 10, c: 1)), @k, assign(@s, concat(@s, @k)))) @s", fakePlayer));
+    }
+
+    @Test
+    public void testRankedMapInArrayIsCopied() throws ConfigCompileException {
+        assertEquals("{{}, 2} {{x: 5}, 2}", SRun("g(assign(@a, array(rankedmap(), 2)) assign(@b, @a[0..1])"
+                + " rankedmap_put(@b[0], x, 5)) @a @b", fakePlayer));
+        assertEquals("{{}, 2} {{x: 5}, 2}", SRun("g(assign(@a, array(rankedmap(), 2)) assign(@b, @a[])"
+                + " rankedmap_put(@b[0], x, 5)) @a @b", fakePlayer));
+    }
+
+    @Test
+    public void testRanksStayInOrder() {
+        final CRankedMap map = new CRankedMap(Target.UNKNOWN);
+        Random r = new Random(0);
+        for(int i = 0; i < 1000; i++){
+            String key = Integer.toString(r.nextInt(500));
+            if(r.nextInt(4) == 0){
+                map.remove(key);
+            } else {
+                map.put(key, new CInt(r.nextInt(100), Target.UNKNOWN));
+            }
+        }
+        List<String> keys = new ArrayList<String>();
+        for(Construct key : map){
+            keys.add(key.val());
+        }
+        assertEquals(map.size(), keys.size());
+        List<String> sorted = new ArrayList<String>(keys);
+        Collections.sort(sorted, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                int c = Long.valueOf(((CInt) map.get(o1)).getInt()).compareTo(((CInt) map.get(o2)).getInt());
+                return c != 0 ? c : o1.compareTo(o2);
+            }
+        });
+        assertEquals(sorted, keys);
+        for(int i = 0; i < keys.size(); i++){
+            assertEquals(keys.get(i), map.at(i));
+            assertEquals(i, map.rank(keys.get(i)));
+        }
+    }
+
+    @Test
+    public void testRankedMapJson() throws MarshalException {
+        CRankedMap map = new CRankedMap(Target.UNKNOWN);
+        map.put("a", new CInt(5, Target.UNKNOWN));
+        map.put("b", new CDouble(1.5, Target.UNKNOWN));
+        String json = Construct.json_encode(map, Target.UNKNOWN);
+        assertEquals("{\"@type\":\"rankedmap\",\"values\":[[\"b\",1.5],[\"a\",5]]}", json);
+        Construct c = Construct.json_decode(json, Target.UNKNOWN);
+        assertTrue(c instanceof CRankedMap);
+        assertEquals("{b: 1.5, a: 5}", c.val());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.laytonsmith.core.functions;
+
+import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.MarshalException;
+import com.laytonsmith.testing.StaticTest;
+import static com.laytonsmith.testing.StaticTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class SetHandlingTest {
+
+    MCPlayer fakePlayer;
+
+    public SetHandlingTest() {
+    }
+
+    @Before
+    public void setUp() {
+        fakePlayer = StaticTest.GetOnlinePlayer();
+    }
+
+    @Test(timeout = 10000)
+    public void testDocs() {
+        TestClassDocs(SetHandling.docs(), SetHandling.class);
+    }
+
+    @Test
+    public void testSetUsesEquals() throws ConfigCompileException {
+        assertEquals("{1, a, true, false}", SRun("hashset(1, '1', 1.0, a, true, false, true)", fakePlayer));
+        assertEquals("true", SRun("hashset_contains(hashset(array(1, 2)), '2.0')", fakePlayer));
+        assertEquals("false", SRun("hashset_contains(hashset(1), true)", fakePlayer));
+    }
+
+    @Test
+    public void testSetFunctions() throws ConfigCompileException {
+        assertEquals("true false {1, 2, 3} 3", SRun("g(assign(@s, hashset(1, 2)) assign(@a, hashset_add(@s, 3))"
+                + " assign(@b, hashset_add(@s, 1))) @a @b @s hashset_size(@s)", fakePlayer));
+        assertEquals("true {2}", SRun("g(assign(@s, hashset(1, 2)) assign(@r, hashset_remove(@s, 1))) @r @s", fakePlayer));
+        assertEquals("{1, 2, 3}", SRun("hashset_union(hashset(1, 2), hashset(2, 3))", fakePlayer));
+        assertEquals("{2}", SRun("hashset_intersect(hashset(1, 2), hashset(2, 3))", fakePlayer));
+        assertEquals("{1}", SRun("hashset_difference(hashset(1, 2), hashset(2, 3))", fakePlayer));
+        assertEquals("{a, b}", SRun("hashset_values(hashset(a, b, a))", fakePlayer));
+        assertEquals("6", SRun("g(assign(@t, 0) foreach(hashset(1, 2, 3), @v, assign(@t, add(@t, @v)))) @t", fakePlayer));
+    }
+
+    @Test
+    public void testSetInArrayChanges() throws ConfigCompileException {
+        assertEquals("{{}} {{1}}", SRun("g(assign(@a, array(hashset())) assign(@b, sconcat(@a)) hashset_add(@a[0], 1)) @b @a", fakePlayer));
+    }
+
+    @Test
+    public void testSetInArrayIsCopied() throws ConfigCompileException {
+        assertEquals("{{1}, 2} {{1, 5}, 2}", SRun("g(assign(@a, array(hashset(1), 2)) assign(@b, @a[0..1]) hashset_add(@b[0], 5)) @a @b", fakePlayer));
+        assertEquals("{{1}, 2} {{1, 5}, 2}", SRun("g(assign(@a, array(hashset(1), 2)) assign(@b, @a[]) hashset_add(@b[0], 5)) @a @b", fakePlayer));
+    }
+
+    @Test
+    public void testSetJson() throws MarshalException {
+        CSet set = new CSet(Target.UNKNOWN, new CInt(1, Target.UNKNOWN), new CString("a", Target.UNKNOWN));
+        String json = Construct.json_encode(set, Target.UNKNOWN);
+        assertEquals("{\"@type\":\"set\",\"values\":[1,\"a\"]}", json);
+        Construct c = Construct.json_decode(json, Target.UNKNOWN);
+        assertTrue(c instanceof CSet);
+        assertEquals("{1, a}", c.val());
+        c = Construct.json_decode(Construct.json_encode(new CArray(Target.UNKNOWN, set), Target.UNKNOWN), Target.UNKNOWN);
+        assertTrue(((CArray) c).get(0, Target.UNKNOWN) instanceof CSet);
+    }
+}
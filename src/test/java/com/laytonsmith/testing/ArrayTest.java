@@ -355,5 +355,56 @@ public class ArrayTest {
         verify(fakePlayer).sendMessage("67890");
         verify(fakePlayer).sendMessage("there");
     }
+    
+    @Test public void testNestedArrayStringUpdates() throws ConfigCompileException{
+        SRun("assign(@inner, array(1))"
+                + "assign(@outer, array(@inner))"
+                + "msg(@outer)"
+                + "array_push(@inner, 2)"
+                + "msg(@outer)"
+                + "array_set(@outer[0], 0, 3)"
+                + "msg(@outer)", fakePlayer);
+        verify(fakePlayer).sendMessage("{{1}}");
+        verify(fakePlayer).sendMessage("{{1, 2}}");
+        verify(fakePlayer).sendMessage("{{3, 2}}");
+    }
+    
+    @Test public void testAssociativePushAfterRemove() throws ConfigCompileException{
+        SRun("assign(@array, array(a: 1, 5: 2))"
+                + "array_push(@array, 3)"
+                + "msg(@array)"
+                + "array_remove(@array, 6)"
+                + "array_remove(@array, 5)"
+                + "array_push(@array, 4)"
+                + "msg(@array)", fakePlayer);
+        verify(fakePlayer).sendMessage("{5: 2, 6: 3, a: 1}");
+        verify(fakePlayer).sendMessage("{1: 4, a: 1}");
+    }
+    
+    @Test public void testCopiedInnerArraysAreIndependent() throws ConfigCompileException{
+        SRun("assign(@array, array(x: array(1, 2), y: 3))"
+                + "assign(@copy, @array[])"
+                + "array_push(@copy[x], 3)"
+                + "msg(@array)"
+                + "msg(@copy)"
+                + "array_push(@array[x], 4)"
+                + "array_set(@copy, y, 5)"
+                + "msg(@array)"
+                + "msg(@copy)", fakePlayer);
+        verify(fakePlayer).sendMessage("{x: {1, 2}, y: 3}");
+        verify(fakePlayer).sendMessage("{x: {1, 2, 3}, y: 3}");
+        verify(fakePlayer).sendMessage("{x: {1, 2, 4}, y: 3}");
+        verify(fakePlayer).sendMessage("{x: {1, 2, 3}, y: 5}");
+    }
+    
+    @Test public void testNumericArrayChangesToMixed() throws ConfigCompileException{
+        SRun("assign(@array, array(1, 2, 3))"
+                + "msg(max(@array))"
+                + "array_push(@array, 'x')"
+                + "array_set(@array, 0, 1.5)"
+                + "msg(@array)", fakePlayer);
+        verify(fakePlayer).sendMessage("3");
+        verify(fakePlayer).sendMessage("{1.5, 2, 3, x}");
+    }
 
 }
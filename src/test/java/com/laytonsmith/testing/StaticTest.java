@@ -172,15 +172,7 @@ public class StaticTest {
                         }
                     } //else it's uncatchable, which while it probably shouldn't happen often, it can.
                 } catch (Throwable e) {
-                    if (e instanceof LoopBreakException && !f.getName().equals("break")) {
-                        fail("Only break() can throw LoopBreakExceptions");
-                    }
-                    if (e instanceof LoopContinueException && !f.getName().equals("continue")) {
-                        fail("Only continue() can throw LoopContinueExceptions");
-                    }
-                    if (e instanceof FunctionReturnException && !f.getName().equals("return")) {
-                        fail("Only return() can throw FunctionReturnExceptions");
-                    }
+                    //Anything else is due to the random arguments
                 }
             }
         }